@@ -0,0 +1,421 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A hash map with a fixed budget, for memoizing expensive results. Once
+ * the total weight of its entries goes over the budget, the entries that
+ * were used longest ago are evicted.
+ *
+ * Entries are kept in a {@code HashMap} from each key to a separate node
+ * holding the value, which is linked into a doubly linked access-order
+ * list. Each entry therefore costs the map's own chain entry plus one
+ * node. A lookup, the move to the front of the list and an eviction are
+ * all O(1). By default every entry weighs 1 and the budget is a maximum
+ * size.
+ *
+ * With TinyLFU admission turned on, new entries first go into a small
+ * window holding 1% of the budget. Entries pushed out of the window only
+ * stay in the main area if they have been used more often than the entry
+ * they would push out, according to a {@code FrequencySketch}. This keeps
+ * one-off keys from flushing out popular ones.
+ *
+ * Hits, misses and evictions are counted from creation on.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class BoundedCache<K, V> implements HashMapInterface<K, V> {
+
+    /**
+     * Share of the budget used by the admission window, in percent.
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    private final HashMap<K, CacheNode<K, V>> index = new HashMap<>();
+    private final CacheNode<K, V> window = new CacheNode<>(null, null, 0);
+    private final CacheNode<K, V> main = new CacheNode<>(null, null, 0);
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final FrequencySketch sketch;
+    private long windowWeight;
+    private long mainWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Create an LRU cache holding at most maximumSize entries.
+     *
+     * @param maximumSize the largest number of entries to keep
+     * @throws IllegalArgumentException if maximumSize is negative
+     */
+    public BoundedCache(long maximumSize) {
+        this(maximumSize, null, false);
+    }
+
+    /**
+     * Create a cache whose entries may weigh at most maximumWeight in
+     * total.
+     *
+     * @param maximumWeight the largest total weight to keep
+     * @param weigher gives the weight of an entry, or null to weigh every
+     * entry as 1
+     * @param tinyLfuAdmission whether to use TinyLFU admission
+     * @throws IllegalArgumentException if maximumWeight is negative
+     */
+    public BoundedCache(long maximumWeight,
+                        ToIntBiFunction<? super K, ? super V> weigher,
+                        boolean tinyLfuAdmission) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("Maximum weight is negative");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        window.before = window;
+        window.after = window;
+        main.before = main;
+        main.after = main;
+        if (tinyLfuAdmission) {
+            windowMaximum = Math.max(1, maximumWeight * WINDOW_PERCENT / 100);
+            sketch = new FrequencySketch(maximumWeight);
+        } else {
+            windowMaximum = 0;
+            sketch = null;
+        }
+    }
+
+    /**
+     * Adds the given key-value pair to the cache, then evicts entries
+     * until the cache is back within its budget. An entry heavier than the
+     * whole budget is evicted right away, along with any older value for
+     * its key, and no other entry is evicted to make room for it.
+     *
+     * @param key key to add into the cache.
+     * @param value value to add into the cache.
+     * @throws IllegalArgumentException if key or value is null, or the
+     * weigher returns a negative weight.
+     * @return null if the key was not already in the cache. If it was,
+     * return the old value associated with it.
+     */
+    @Override
+    public V add(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int weight = weigh(key, value);
+        record(key);
+        CacheNode<K, V> node = index.getOrDefault(key, null);
+        V toReturn = null;
+        if (weight > maximumWeight) {
+            if (node != null) {
+                toReturn = node.value;
+                index.remove(key);
+                unlink(node);
+                addWeight(node, -node.weight);
+            }
+            evictionCount++;
+            return toReturn;
+        }
+        if (node != null) {
+            toReturn = node.value;
+            node.value = value;
+            addWeight(node, weight - node.weight);
+            node.weight = weight;
+            moveToFront(node);
+        } else {
+            node = new CacheNode<>(key, value, weight);
+            index.add(key, node);
+            node.inWindow = sketch != null;
+            linkFirst(node.inWindow ? window : main, node);
+            addWeight(node, weight);
+        }
+        evict();
+        return toReturn;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        CacheNode<K, V> node = index.remove(key);
+        unlink(node);
+        addWeight(node, -node.weight);
+        return node.value;
+    }
+
+    /**
+     * Gets the value associated with the given key, counting a hit and
+     * marking the entry as most recently used, or counting a miss.
+     *
+     * @param key the key to search for.
+     * @throws IllegalArgumentException if key is null.
+     * @throws java.util.NoSuchElementException if the key is not cached.
+     * @return the value associated with the given key.
+     */
+    @Override
+    public V get(K key) {
+        V value = getIfPresent(key);
+        if (value == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value associated with the given key like {@code get}, but
+     * returns null on a miss instead of throwing.
+     *
+     * @param key the key to search for
+     * @throws IllegalArgumentException if key is null
+     * @return the value associated with the key, or null if it is not
+     * cached
+     */
+    public V getIfPresent(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        record(key);
+        CacheNode<K, V> node = index.getOrDefault(key, null);
+        if (node == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        moveToFront(node);
+        return node.value;
+    }
+
+    /**
+     * Returns whether the key is cached, without counting a hit or miss or
+     * changing the eviction order.
+     *
+     * @param key the key to search for.
+     * @throws IllegalArgumentException if key is null.
+     * @return whether or not the key is cached.
+     */
+    @Override
+    public boolean contains(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return index.contains(key);
+    }
+
+    /**
+     * Removes every entry. The hit, miss and eviction counts are kept.
+     */
+    @Override
+    public void clear() {
+        index.clear();
+        window.before = window;
+        window.after = window;
+        main.before = main;
+        main.after = main;
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return new HashSet<>(index.keySet());
+    }
+
+    @Override
+    public List<V> values() {
+        ArrayList<V> valueList = new ArrayList<>(index.size());
+        for (CacheNode<K, V> node : index.values()) {
+            valueList.add(node.value);
+        }
+        return valueList;
+    }
+
+    /**
+     * Returns the total weight of the cached entries.
+     *
+     * @return the current weight
+     */
+    public long weight() {
+        return windowWeight + mainWeight;
+    }
+
+    /**
+     * Returns the number of lookups that found their key.
+     *
+     * @return the hit count
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that did not find their key.
+     *
+     * @return the miss count
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of entries evicted to stay within the budget.
+     *
+     * @return the eviction count
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Helper method to evict entries until the cache is within budget.
+     * Without admission the least recently used entry goes. With admission
+     * the window first spills its oldest entries into the main area, and
+     * then the newest arrival there competes with the main area's least
+     * recently used entry, the less frequent of the two being evicted.
+     */
+    private void evict() {
+        if (sketch != null) {
+            while (windowWeight > windowMaximum && window.before != window) {
+                CacheNode<K, V> node = window.before;
+                unlink(node);
+                windowWeight -= node.weight;
+                node.inWindow = false;
+                linkFirst(main, node);
+                mainWeight += node.weight;
+            }
+        }
+        while (weight() > maximumWeight) {
+            CacheNode<K, V> victim = main.before;
+            if (victim == main) {
+                victim = window.before;
+            } else if (sketch != null) {
+                CacheNode<K, V> candidate = main.after;
+                if (candidate != victim && frequency(candidate.key)
+                        <= frequency(victim.key)) {
+                    victim = candidate;
+                }
+            }
+            index.remove(victim.key);
+            unlink(victim);
+            addWeight(victim, -victim.weight);
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Helper method to mark a node as most recently used within its area.
+     * @param node the node that was used
+     */
+    private void moveToFront(CacheNode<K, V> node) {
+        unlink(node);
+        linkFirst(node.inWindow ? window : main, node);
+    }
+
+    /**
+     * Helper method to link a node right after a list's sentinel.
+     * @param head sentinel of the list
+     * @param node the node to link
+     */
+    private void linkFirst(CacheNode<K, V> head, CacheNode<K, V> node) {
+        node.after = head.after;
+        node.before = head;
+        head.after.before = node;
+        head.after = node;
+    }
+
+    /**
+     * Helper method to unlink a node from its list.
+     * @param node the node to unlink
+     */
+    private void unlink(CacheNode<K, V> node) {
+        node.before.after = node.after;
+        node.after.before = node.before;
+        node.before = null;
+        node.after = null;
+    }
+
+    /**
+     * Helper method to charge or refund weight to a node's area.
+     * @param node the node whose weight changed
+     * @param delta change in weight
+     */
+    private void addWeight(CacheNode<K, V> node, long delta) {
+        if (node.inWindow) {
+            windowWeight += delta;
+        } else {
+            mainWeight += delta;
+        }
+    }
+
+    /**
+     * Helper method to weigh an entry.
+     * @param key the key
+     * @param value the value
+     * @return the weight, 1 without a weigher
+     */
+    private int weigh(K key, V value) {
+        if (weigher == null) {
+            return 1;
+        }
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight is negative");
+        }
+        return weight;
+    }
+
+    /**
+     * Helper method to count an access in the frequency sketch.
+     * @param key the key that was accessed
+     */
+    private void record(K key) {
+        if (sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+    }
+
+    /**
+     * Helper method to estimate how often a key was accessed.
+     * @param key the key
+     * @return the estimated frequency
+     */
+    private int frequency(K key) {
+        return sketch.frequency(key.hashCode());
+    }
+
+    /**
+     * A cache entry, linked into the window or main access-order list.
+     * The list is circular, with the most recently used entry right after
+     * the sentinel and the least recently used right before it.
+     */
+    private static class CacheNode<K, V> {
+        private final K key;
+        private V value;
+        private CacheNode<K, V> before;
+        private CacheNode<K, V> after;
+        private int weight;
+        private boolean inWindow;
+
+        /**
+         * Create a cache node.
+         * @param key key for this entry
+         * @param value value for this entry
+         * @param weight weight of this entry
+         */
+        CacheNode(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,610 @@
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe hash map using external chaining as its collision policy.
+ *
+ * Reads never lock: get and contains walk the chains through volatile links.
+ * An insert into an empty bucket is a single compare-and-set of the bucket
+ * head, and every other update locks only the head node of its bucket, so
+ * threads working on different buckets never wait on each other.
+ *
+ * Resizing is shared. The thread that crosses the load factor allocates the
+ * new table, and any thread that runs into the resize, whether adding,
+ * removing or just finding a moved bucket, claims a stride of buckets and
+ * moves them too. A moved bucket is replaced by a forwarding node that
+ * sends readers on to the new table, so gets are never blocked by a resize.
+ *
+ * The table length is always a power of two and, unlike {@code HashMap},
+ * the table is only regrown after an add, and {@code clear} keeps the
+ * current capacity.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class ConcurrentHashMap<K, V> implements HashMapInterface<K, V> {
+
+    /**
+     * Starting length of the backing array. Must be a power of two.
+     */
+    public static final int STARTING_CAPACITY = 16;
+
+    /**
+     * Hash of forwarding nodes. Real hashes are always non-negative.
+     */
+    private static final int MOVED = -1;
+
+    /**
+     * Number of buckets a thread claims at a time while resizing.
+     */
+    private static final int TRANSFER_STRIDE = 16;
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+    private volatile AtomicReferenceArray<Node<K, V>> nextTable;
+    private final AtomicInteger transferIndex = new AtomicInteger();
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Resize control. While positive it is the size at which the next
+     * resize starts. While a resize is running it is -1 minus the number of
+     * threads working on it.
+     */
+    private final AtomicInteger sizeCtl;
+
+    /**
+     * Create a hash map with no entries.
+     */
+    public ConcurrentHashMap() {
+        table = new AtomicReferenceArray<>(STARTING_CAPACITY);
+        sizeCtl = new AtomicInteger(threshold(STARTING_CAPACITY));
+    }
+
+    @Override
+    public V add(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = (tab.length() - 1) & h;
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null,
+                        new Node<>(h, key, value, null))) {
+                    break;
+                }
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer((ForwardingNode<K, V>) f);
+            } else {
+                boolean done = false;
+                V toReturn = null;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        Node<K, V> curr = f;
+                        while (true) {
+                            if (curr.hash == h && key.equals(curr.key)) {
+                                toReturn = curr.value;
+                                curr.value = value;
+                                break;
+                            }
+                            if (curr.next == null) {
+                                curr.next = new Node<>(h, key, value, null);
+                                break;
+                            }
+                            curr = curr.next;
+                        }
+                    }
+                }
+                if (done) {
+                    if (toReturn != null) {
+                        return toReturn;
+                    }
+                    break;
+                }
+            }
+        }
+        count.increment();
+        resizeIfNeeded();
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        V toReturn = removeHelper(key);
+        if (toReturn == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        return toReturn;
+    }
+
+    /**
+     * Helper method for remove and the key set view.
+     * Unlinks a key in one step, so a key removed by another thread at
+     * the same time is reported as missing instead of throwing.
+     * @param key the key to remove
+     * @return the removed value, or null if the key was not in the map
+     */
+    private V removeHelper(K key) {
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            int i = (tab.length() - 1) & h;
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                break;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer((ForwardingNode<K, V>) f);
+            } else {
+                boolean done = false;
+                V toReturn = null;
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        done = true;
+                        Node<K, V> prev = null;
+                        for (Node<K, V> curr = f; curr != null;
+                                curr = curr.next) {
+                            if (curr.hash == h && key.equals(curr.key)) {
+                                toReturn = curr.value;
+                                if (prev == null) {
+                                    tab.set(i, curr.next);
+                                } else {
+                                    prev.next = curr.next;
+                                }
+                                break;
+                            }
+                            prev = curr;
+                        }
+                    }
+                }
+                if (done) {
+                    if (toReturn != null) {
+                        count.decrement();
+                    }
+                    return toReturn;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        V value = find(key);
+        if (value == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        return value;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return find(key) != null;
+    }
+
+    /**
+     * Removes every entry. The table keeps its current capacity, since
+     * swapping in a new table would race with a running resize.
+     */
+    @Override
+    public void clear() {
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        int i = 0;
+        while (i < tab.length()) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                i++;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer((ForwardingNode<K, V>) f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        int removed = 0;
+                        for (Node<K, V> curr = f; curr != null;
+                                curr = curr.next) {
+                            removed++;
+                        }
+                        tab.set(i, null);
+                        count.add(-removed);
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        long sum = count.sum();
+        if (sum < 0) {
+            return 0;
+        }
+        return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    /**
+     * Returns a live view of the keys in this map. Its iterator is weakly
+     * consistent: it never throws ConcurrentModificationException, sees
+     * every key that was present for the whole iteration, and may or may
+     * not see keys added or removed while it runs.
+     *
+     * @return set of keys in this map.
+     */
+    @Override
+    public Set<K> keySet() {
+        return new KeySetView();
+    }
+
+    /**
+     * Returns the values in this map, collected by one weakly consistent
+     * pass over the table. Positions in a hash table are not stable, so
+     * unlike the key set this is a copy rather than a view.
+     *
+     * @return list of values in this map
+     */
+    @Override
+    public List<V> values() {
+        ArrayList<V> valueList = new ArrayList<>();
+        Traverser<K, V> it = new Traverser<>(table);
+        for (Node<K, V> curr = it.advance(); curr != null;
+                curr = it.advance()) {
+            valueList.add(curr.value);
+        }
+        return valueList;
+    }
+
+    /**
+     * Helper method for get and contains. Never locks.
+     * @param key the key to search for
+     * @return the value of the key, or null if it is not in the map
+     */
+    private V find(K key) {
+        int h = spread(key.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        while (true) {
+            Node<K, V> curr = tab.get((tab.length() - 1) & h);
+            if (curr == null) {
+                return null;
+            }
+            if (curr.hash == MOVED) {
+                tab = ((ForwardingNode<K, V>) curr).nextTable;
+                continue;
+            }
+            while (curr != null) {
+                if (curr.hash == h && key.equals(curr.key)) {
+                    return curr.value;
+                }
+                curr = curr.next;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Helper method to start a resize once the size reaches the threshold,
+     * or to join one that is already running.
+     */
+    private void resizeIfNeeded() {
+        while (true) {
+            int sc = sizeCtl.get();
+            if (sc >= 0) {
+                if (count.sum() < sc) {
+                    return;
+                }
+                if (sizeCtl.compareAndSet(sc, -2)) {
+                    AtomicReferenceArray<Node<K, V>> tab = table;
+                    int n = tab.length();
+                    transferIndex.set(n);
+                    nextTable = new AtomicReferenceArray<>(n << 1);
+                    transfer();
+                }
+            } else if (sc == -1 || nextTable == null) {
+                return;
+            } else if (sizeCtl.compareAndSet(sc, sc - 1)) {
+                transfer();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Helper method for threads that found a forwarding node. Joins the
+     * running resize if there is still work to claim.
+     * @param fwd the forwarding node that was found
+     * @return the table the forwarding node points to
+     */
+    private AtomicReferenceArray<Node<K, V>> helpTransfer(
+            ForwardingNode<K, V> fwd) {
+        while (nextTable == fwd.nextTable && transferIndex.get() > 0) {
+            int sc = sizeCtl.get();
+            if (sc >= -1) {
+                break;
+            }
+            if (sizeCtl.compareAndSet(sc, sc - 1)) {
+                transfer();
+                break;
+            }
+        }
+        return fwd.nextTable;
+    }
+
+    /**
+     * Helper method to resize. The calling thread must already be counted
+     * in sizeCtl. Claims strides of buckets until none are left, then
+     * leaves, and the last thread to leave installs the new table.
+     */
+    private void transfer() {
+        AtomicReferenceArray<Node<K, V>> nt = nextTable;
+        if (nt != null) {
+            AtomicReferenceArray<Node<K, V>> tab = table;
+            ForwardingNode<K, V> fwd = new ForwardingNode<>(nt);
+            while (true) {
+                int start = transferIndex.get();
+                if (start <= 0) {
+                    break;
+                }
+                int bound = Math.max(0, start - TRANSFER_STRIDE);
+                if (transferIndex.compareAndSet(start, bound)) {
+                    for (int i = start - 1; i >= bound; i--) {
+                        transferBin(tab, nt, i, fwd);
+                    }
+                }
+            }
+        }
+        while (true) {
+            int sc = sizeCtl.get();
+            if (sc == -2) {
+                // Last thread out: every stride has been moved.
+                if (sizeCtl.compareAndSet(sc, -1)) {
+                    nt = nextTable;
+                    table = nt;
+                    nextTable = null;
+                    sizeCtl.set(threshold(nt.length()));
+                    return;
+                }
+            } else if (sizeCtl.compareAndSet(sc, sc + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Helper method for transfer. Splits one bucket into its low and high
+     * halves in the new table and leaves a forwarding node behind. Nodes
+     * are copied rather than relinked so that readers still walking the old
+     * chain are not disturbed.
+     * @param tab the table being resized
+     * @param nt the new table
+     * @param i index of the bucket to move
+     * @param fwd forwarding node to leave behind
+     */
+    private void transferBin(AtomicReferenceArray<Node<K, V>> tab,
+                             AtomicReferenceArray<Node<K, V>> nt, int i,
+                             ForwardingNode<K, V> fwd) {
+        int n = tab.length();
+        while (true) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                if (tab.compareAndSet(i, null, fwd)) {
+                    return;
+                }
+            } else if (f.hash == MOVED) {
+                return;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        Node<K, V> lo = null;
+                        Node<K, V> hi = null;
+                        for (Node<K, V> curr = f; curr != null;
+                                curr = curr.next) {
+                            if ((curr.hash & n) == 0) {
+                                lo = new Node<>(curr.hash, curr.key,
+                                        curr.value, lo);
+                            } else {
+                                hi = new Node<>(curr.hash, curr.key,
+                                        curr.value, hi);
+                            }
+                        }
+                        nt.set(i, lo);
+                        nt.set(i + n, hi);
+                        tab.set(i, fwd);
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to compute the size that triggers a resize.
+     * @param capacity length of the table
+     * @return the resize threshold
+     */
+    private static int threshold(int capacity) {
+        return (int) (capacity * MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the high bits of a hash code down so that power-of-two masks
+     * use them, and clears the sign bit so real hashes never collide with
+     * MOVED.
+     * @param h the hash code to spread
+     * @return the spread hash
+     */
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & Integer.MAX_VALUE;
+    }
+
+    /**
+     * A chain node. Keys and hashes never change; values and links are
+     * volatile so that lock-free readers see complete updates.
+     */
+    private static class Node<K, V> {
+        private final int hash;
+        private final K key;
+        private volatile V value;
+        private volatile Node<K, V> next;
+
+        /**
+         * Create a node.
+         * @param hash spread hash of the key
+         * @param key key for this node
+         * @param value value for this node
+         * @param next next node in the chain
+         */
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Placed at the head of a bucket that has been moved to the next table.
+     */
+    private static class ForwardingNode<K, V> extends Node<K, V> {
+        private final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        /**
+         * Create a forwarding node.
+         * @param nextTable the table the bucket was moved to
+         */
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+
+    /**
+     * Walks every node of a table, following forwarding nodes into the
+     * buckets they were split into.
+     */
+    private static class Traverser<K, V> {
+        private final ArrayDeque<AtomicReferenceArray<Node<K, V>>> tables =
+                new ArrayDeque<>();
+        private final ArrayDeque<Integer> indexes = new ArrayDeque<>();
+        private final AtomicReferenceArray<Node<K, V>> base;
+        private int baseIndex;
+        private Node<K, V> next;
+
+        /**
+         * Create a traverser.
+         * @param base the table to walk
+         */
+        Traverser(AtomicReferenceArray<Node<K, V>> base) {
+            this.base = base;
+        }
+
+        /**
+         * Moves to the next node.
+         * @return the next node, or null once every bucket has been walked
+         */
+        Node<K, V> advance() {
+            if (next != null) {
+                next = next.next;
+            }
+            while (next == null) {
+                AtomicReferenceArray<Node<K, V>> tab;
+                int i;
+                if (!tables.isEmpty()) {
+                    tab = tables.pop();
+                    i = indexes.pop();
+                } else if (baseIndex < base.length()) {
+                    tab = base;
+                    i = baseIndex++;
+                } else {
+                    return null;
+                }
+                Node<K, V> head = tab.get(i);
+                if (head != null && head.hash == MOVED) {
+                    // The bucket was split into i and i + n of the next table.
+                    AtomicReferenceArray<Node<K, V>> nt =
+                            ((ForwardingNode<K, V>) head).nextTable;
+                    tables.push(nt);
+                    indexes.push(i + tab.length());
+                    tables.push(nt);
+                    indexes.push(i);
+                } else {
+                    next = head;
+                }
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Live, weakly consistent view of the keys of the map.
+     */
+    private class KeySetView extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            final Traverser<K, V> it = new Traverser<>(table);
+            return new Iterator<K>() {
+                private Node<K, V> next = it.advance();
+                private Node<K, V> last;
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public K next() {
+                    if (next == null) {
+                        throw new NoSuchElementException("No more keys");
+                    }
+                    last = next;
+                    next = it.advance();
+                    return last.key;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException("next() not called");
+                    }
+                    removeHelper(last.key);
+                    last = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return ConcurrentHashMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o == null) {
+                return false;
+            }
+            return ConcurrentHashMap.this.contains((K) o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o != null && removeHelper((K) o) != null;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map using bucketized cuckoo hashing, so a lookup never looks at
+ * more than a fixed number of slots.
+ *
+ * There are two tables of buckets, four slots to a bucket, and each table
+ * hashes a key with its own seed. A key always lives in one of its two
+ * buckets, so get, contains and remove compare against at most eight
+ * keys. An add that finds both buckets full evicts one of their keys to
+ * that key's other bucket, and so on, until a free slot turns up. If the
+ * chain of evictions gets too long, the homeless entry goes into a small
+ * stash, which is only searched while it is not empty. Each bucket counts
+ * the stashed keys that hash to it, so a remove only looks through the
+ * stash when the bucket it freed a slot in has one waiting. With four
+ * slots a bucket the tables work well up to about 95% full.
+ *
+ * When the stash overflows the tables are doubled, unless they are less
+ * than half full. In that case the overflow comes from many keys sharing a
+ * hash code, which more buckets cannot fix, so the stash, a chained
+ * {@code HashMap}, just keeps growing.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class CuckooHashMap<K, V> implements HashMapInterface<K, V> {
+
+    /**
+     * Load factor used by the default constructor.
+     */
+    public static final double DEFAULT_LOAD_FACTOR = 0.9;
+
+    /**
+     * Largest load factor accepted by the constructor.
+     */
+    public static final double MAX_SUPPORTED_LOAD_FACTOR = 0.95;
+
+    private static final int SLOTS = 4;
+    private static final int STARTING_BUCKETS = 4;
+    private static final int MAX_KICKS = 16;
+    private static final int STASH_LIMIT = 8;
+    private static final int[] SEEDS = {0x9e3779b9, 0x7f4a7c15};
+
+    private Object[] keys;
+    private Object[] values;
+    private int[] stashed;
+    private int buckets;
+    private int size;
+    private HashMap<K, V> stash = new HashMap<>();
+    private final double loadFactor;
+    private int random = 0x2545f491;
+
+    /**
+     * Create a cuckoo hash map with the default load factor.
+     */
+    public CuckooHashMap() {
+        this(DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Create a cuckoo hash map that doubles its tables whenever its load
+     * would exceed loadFactor.
+     *
+     * @param loadFactor the largest allowed ratio of size to slots
+     * @throws IllegalArgumentException if loadFactor is not positive or is
+     * above MAX_SUPPORTED_LOAD_FACTOR
+     */
+    public CuckooHashMap(double loadFactor) {
+        if (!(loadFactor > 0) || loadFactor > MAX_SUPPORTED_LOAD_FACTOR) {
+            throw new IllegalArgumentException("Invalid load factor");
+        }
+        this.loadFactor = loadFactor;
+        allocate(STARTING_BUCKETS);
+    }
+
+    @Override
+    public V add(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int h = key.hashCode();
+        int index = find(key, h);
+        if (index >= 0) {
+            V toReturn = (V) values[index];
+            values[index] = value;
+            return toReturn;
+        }
+        if (stash.size() != 0 && stash.contains(key)) {
+            return stash.add(key, value);
+        }
+        if (size + 1 > loadFactor * keys.length) {
+            grow();
+        }
+        insert(key, value);
+        size++;
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int index = find(key, key.hashCode());
+        if (index >= 0) {
+            V toReturn = (V) values[index];
+            keys[index] = null;
+            values[index] = null;
+            size--;
+            if (stashed[index / SLOTS] != 0) {
+                refill(index);
+            }
+            return toReturn;
+        }
+        if (stash.size() != 0 && stash.contains(key)) {
+            size--;
+            countStashed(key.hashCode(), -1);
+            return stash.remove(key);
+        }
+        throw new NoSuchElementException("No element found");
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int index = find(key, key.hashCode());
+        if (index >= 0) {
+            return (V) values[index];
+        }
+        V value = stash.size() != 0 ? stash.getOrDefault(key, null) : null;
+        if (value == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        return value;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return find(key, key.hashCode()) >= 0
+                || (stash.size() != 0 && stash.contains(key));
+    }
+
+    @Override
+    public void clear() {
+        allocate(STARTING_BUCKETS);
+        stash = new HashMap<>();
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        HashSet<K> keySet = new HashSet<>();
+        for (Object key : keys) {
+            if (key != null) {
+                keySet.add((K) key);
+            }
+        }
+        keySet.addAll(stash.keySet());
+        return keySet;
+    }
+
+    @Override
+    public List<V> values() {
+        ArrayList<V> valueList = new ArrayList<>(size);
+        for (Object value : values) {
+            if (value != null) {
+                valueList.add((V) value);
+            }
+        }
+        valueList.addAll(stash.values());
+        return valueList;
+    }
+
+    /**
+     * Helper method to find the slot holding a key.
+     * @param key the key to search for
+     * @param h the key's hash code
+     * @return index of the slot, or -1 if the key is not in the tables
+     */
+    private int find(Object key, int h) {
+        for (int table = 0; table < 2; table++) {
+            int base = bucketStart(table, h);
+            for (int i = base; i < base + SLOTS; i++) {
+                Object k = keys[i];
+                if (k != null && (k == key || k.equals(key))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Helper method to put a key that is not in the map into one of its
+     * buckets, evicting other keys to their other bucket if both are full.
+     * An entry still homeless after MAX_KICKS evictions goes into the
+     * stash.
+     * @param key the key to insert
+     * @param value its value
+     */
+    private void insert(K key, V value) {
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            if (place(key, value)) {
+                return;
+            }
+            int table = kick & 1;
+            int victim = bucketStart(table, key.hashCode()) + nextSlot();
+            K evictedKey = (K) keys[victim];
+            V evictedValue = (V) values[victim];
+            keys[victim] = key;
+            values[victim] = value;
+            key = evictedKey;
+            value = evictedValue;
+        }
+        stash.add(key, value);
+        countStashed(key.hashCode(), 1);
+        if (stash.size() > STASH_LIMIT && size >= keys.length / 2) {
+            grow();
+        }
+    }
+
+    /**
+     * Helper method to put a key into a free slot of one of its buckets.
+     * @param key the key to place
+     * @param value its value
+     * @return whether a free slot was found
+     */
+    private boolean place(K key, V value) {
+        int h = key.hashCode();
+        for (int table = 0; table < 2; table++) {
+            int base = bucketStart(table, h);
+            for (int i = base; i < base + SLOTS; i++) {
+                if (keys[i] == null) {
+                    keys[i] = key;
+                    values[i] = value;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method for remove.
+     * Moves a stashed entry that hashes to the bucket of a freed slot into
+     * that slot. Only called when the bucket has stashed keys, so the stash
+     * is searched until the first of them rather than on every remove.
+     * @param slot index of the slot that was just emptied
+     */
+    private void refill(int slot) {
+        int bucket = slot / SLOTS;
+        Iterator<MapEntry<K, V>> iterator = stash.iterator();
+        while (iterator.hasNext()) {
+            MapEntry<K, V> entry = iterator.next();
+            int h = entry.getKey().hashCode();
+            if (bucketStart(0, h) / SLOTS == bucket
+                    || bucketStart(1, h) / SLOTS == bucket) {
+                keys[slot] = entry.getKey();
+                values[slot] = entry.getValue();
+                iterator.remove();
+                countStashed(h, -1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Helper method to update the stashed key counts of both buckets of a
+     * key that entered or left the stash.
+     * @param h the key's hash code
+     * @param delta 1 if the key was stashed, -1 if it left the stash
+     */
+    private void countStashed(int h, int delta) {
+        stashed[bucketStart(0, h) / SLOTS] += delta;
+        stashed[bucketStart(1, h) / SLOTS] += delta;
+    }
+
+    /**
+     * Returns the number of entries in the stash.
+     *
+     * @return number of stashed entries
+     */
+    int stashSize() {
+        return stash.size();
+    }
+
+    /**
+     * Helper method to double the number of buckets and reinsert every
+     * entry, including the stashed ones.
+     */
+    private void grow() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        HashMap<K, V> oldStash = stash;
+        allocate(buckets * 2);
+        stash = new HashMap<>();
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert((K) oldKeys[i], (V) oldValues[i]);
+            }
+        }
+        for (MapEntry<K, V> entry : oldStash) {
+            insert(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Helper method to allocate empty tables.
+     * @param bucketCount number of buckets in each table, a power of two
+     */
+    private void allocate(int bucketCount) {
+        buckets = bucketCount;
+        keys = new Object[2 * bucketCount * SLOTS];
+        values = new Object[2 * bucketCount * SLOTS];
+        stashed = new int[2 * bucketCount];
+    }
+
+    /**
+     * Helper method to find the first slot of a key's bucket in a table.
+     * @param table which table, 0 or 1
+     * @param h the key's hash code
+     * @return index of the bucket's first slot
+     */
+    private int bucketStart(int table, int h) {
+        int bucket = mix(h ^ SEEDS[table]) & (buckets - 1);
+        return (table * buckets + bucket) * SLOTS;
+    }
+
+    /**
+     * Helper method to pick a pseudo-random slot within a bucket, using a
+     * xorshift generator.
+     * @return a slot offset between 0 and SLOTS - 1
+     */
+    private int nextSlot() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random & (SLOTS - 1);
+    }
+
+    /**
+     * Mixes the bits of a hash code with the murmur3 32-bit finalizer.
+     * @param h the hash code to mix
+     * @return the mixed hash
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
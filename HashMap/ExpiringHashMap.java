@@ -0,0 +1,388 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A hash map whose entries expire a fixed time after they were added.
+ *
+ * Entries are kept in a {@code HashMap} from each key to a node that also
+ * sits in a hierarchical timing wheel. The wheel has five levels whose
+ * buckets cover about a second, a minute, an hour, a day and everything
+ * later. As time passes each bucket that has been passed over is emptied:
+ * its expired entries are removed and the rest cascade into finer
+ * buckets. Scheduling, cancelling and expiring an entry are all amortized
+ * O(1), and nothing ever scans the whole map.
+ *
+ * Every operation first advances the wheel to the current time. Lookups
+ * also check the entry's own deadline, so an entry is never returned after
+ * it expires even though the wheel only removes it at the end of its
+ * bucket. A background reaper can be started to advance the wheel while
+ * the map is idle. All methods are synchronized so the reaper can run
+ * alongside callers.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class ExpiringHashMap<K, V> implements HashMapInterface<K, V>,
+        AutoCloseable {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final int[] SHIFT = {30, 36, 42, 47, 49};
+
+    private final HashMap<K, ExpiringEntry<K, V>> index = new HashMap<>();
+    private final ExpiringEntry<K, V>[][] wheel;
+    private final long defaultTtl;
+    private final LongSupplier ticker;
+    private long nanos;
+    private ScheduledExecutorService reaper;
+
+    /**
+     * Create a hash map whose entries expire ttl after they are added.
+     *
+     * @param ttl time to live of an entry
+     * @param unit unit of ttl
+     * @throws IllegalArgumentException if ttl is not positive or unit is
+     * null
+     */
+    public ExpiringHashMap(long ttl, TimeUnit unit) {
+        this(ttl, unit, System::nanoTime);
+    }
+
+    /**
+     * Create a hash map whose entries expire ttl after they are added,
+     * reading the time from the given ticker.
+     *
+     * @param ttl time to live of an entry
+     * @param unit unit of ttl
+     * @param ticker source of the current time in nanoseconds
+     * @throws IllegalArgumentException if ttl is not positive or unit or
+     * ticker is null
+     */
+    public ExpiringHashMap(long ttl, TimeUnit unit, LongSupplier ticker) {
+        if (unit == null || ticker == null) {
+            throw new IllegalArgumentException("Unit or ticker is null");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Time to live is not positive");
+        }
+        this.defaultTtl = unit.toNanos(ttl);
+        this.ticker = ticker;
+        nanos = ticker.getAsLong();
+        wheel = new ExpiringEntry[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new ExpiringEntry[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                ExpiringEntry<K, V> sentinel = new ExpiringEntry<>(null, null);
+                sentinel.previous = sentinel;
+                sentinel.following = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Adds the given key-value pair, expiring after the map's default time
+     * to live. Replacing a value restarts the entry's time to live.
+     *
+     * @param key key to add into the hash map.
+     * @param value value to add into the hash map.
+     * @throws IllegalArgumentException if key or value is null.
+     * @return null if the key was not already in the map. If it was in the
+     * map, return the old value associated with it.
+     */
+    @Override
+    public synchronized V add(K key, V value) {
+        return add(key, value, defaultTtl, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds the given key-value pair, expiring after the given time to live.
+     *
+     * @param key key to add into the hash map
+     * @param value value to add into the hash map
+     * @param ttl time to live of this entry
+     * @param unit unit of ttl
+     * @throws IllegalArgumentException if key, value or unit is null, or
+     * ttl is not positive
+     * @return null if the key was not already in the map. If it was in the
+     * map, return the old value associated with it.
+     */
+    public synchronized V add(K key, V value, long ttl, TimeUnit unit) {
+        if (key == null || value == null || unit == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Time to live is not positive");
+        }
+        long now = advance();
+        ExpiringEntry<K, V> entry = liveEntry(key, now);
+        V toReturn = null;
+        if (entry != null) {
+            toReturn = entry.getValue();
+            entry.setValue(value);
+            unlink(entry);
+        } else {
+            entry = new ExpiringEntry<>(key, value);
+            index.add(key, entry);
+        }
+        entry.expiresAt = now + unit.toNanos(ttl);
+        schedule(entry);
+        return toReturn;
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        ExpiringEntry<K, V> entry = liveEntry(key, advance());
+        if (entry == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        index.remove(key);
+        unlink(entry);
+        return entry.getValue();
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        ExpiringEntry<K, V> entry = liveEntry(key, advance());
+        if (entry == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        return entry.getValue();
+    }
+
+    @Override
+    public synchronized boolean contains(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return liveEntry(key, advance()) != null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        index.clear();
+        for (ExpiringEntry<K, V>[] level : wheel) {
+            for (ExpiringEntry<K, V> sentinel : level) {
+                sentinel.previous = sentinel;
+                sentinel.following = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in the map. Expired entries are
+     * removed a bucket at a time, so this may still count entries that
+     * expired less than about a second ago.
+     *
+     * @return number of entries in the hash map.
+     */
+    @Override
+    public synchronized int size() {
+        advance();
+        return index.size();
+    }
+
+    @Override
+    public synchronized Set<K> keySet() {
+        long now = advance();
+        HashSet<K> keySet = new HashSet<>();
+        for (MapEntry<K, ExpiringEntry<K, V>> e : index) {
+            if (e.getValue().expiresAt - now > 0) {
+                keySet.add(e.getKey());
+            }
+        }
+        return keySet;
+    }
+
+    @Override
+    public synchronized List<V> values() {
+        long now = advance();
+        ArrayList<V> valueList = new ArrayList<>();
+        for (ExpiringEntry<K, V> entry : index.values()) {
+            if (entry.expiresAt - now > 0) {
+                valueList.add(entry.getValue());
+            }
+        }
+        return valueList;
+    }
+
+    /**
+     * Removes the entries whose buckets have expired. Every other method
+     * already does this; call it when the map sits idle to free memory.
+     */
+    public synchronized void cleanUp() {
+        advance();
+    }
+
+    /**
+     * Starts a single daemon thread that calls {@code cleanUp} at a fixed
+     * rate. Does nothing if the reaper is already running.
+     *
+     * @param period time between clean ups
+     * @param unit unit of period
+     * @throws IllegalArgumentException if period is not positive or unit is
+     * null
+     */
+    public synchronized void startReaper(long period, TimeUnit unit) {
+        if (unit == null || period <= 0) {
+            throw new IllegalArgumentException("Invalid reaper period");
+        }
+        if (reaper != null) {
+            return;
+        }
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ExpiringHashMap-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleAtFixedRate(this::cleanUp, period, period, unit);
+    }
+
+    /**
+     * Stops the background reaper, if it was started.
+     */
+    @Override
+    public synchronized void close() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+            reaper = null;
+        }
+    }
+
+    /**
+     * Helper method to look up an entry, removing it if it has expired.
+     * @param key the key to search for
+     * @param now the current time
+     * @return the live entry, or null if there is none
+     */
+    private ExpiringEntry<K, V> liveEntry(K key, long now) {
+        ExpiringEntry<K, V> entry = index.getOrDefault(key, null);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - now <= 0) {
+            index.remove(key);
+            unlink(entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Helper method to move the wheel to the current time. For each level,
+     * every bucket passed over since the last advance is emptied; expired
+     * entries are removed and the rest are scheduled again, which drops
+     * them into a finer level.
+     * @return the current time
+     */
+    private long advance() {
+        long previous = nanos;
+        long now = ticker.getAsLong();
+        nanos = now;
+        for (int i = 0; i < BUCKETS.length; i++) {
+            // A signed shift keeps ticks in order when the time crosses
+            // zero, which System.nanoTime is free to do.
+            long previousTicks = previous >> SHIFT[i];
+            long delta = (now >> SHIFT[i]) - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            int mask = BUCKETS[i] - 1;
+            int start = (int) (previousTicks & mask);
+            long steps = Math.min(delta + 1, BUCKETS[i]);
+            for (int j = start; j < start + steps; j++) {
+                expireBucket(wheel[i][j & mask], now);
+            }
+        }
+        return now;
+    }
+
+    /**
+     * Helper method for advance.
+     * Detaches a bucket's list and handles each of its entries.
+     * @param sentinel sentinel of the bucket
+     * @param now the current time
+     */
+    private void expireBucket(ExpiringEntry<K, V> sentinel, long now) {
+        ExpiringEntry<K, V> curr = sentinel.following;
+        sentinel.previous = sentinel;
+        sentinel.following = sentinel;
+        while (curr != sentinel) {
+            ExpiringEntry<K, V> next = curr.following;
+            curr.previous = null;
+            curr.following = null;
+            if (curr.expiresAt - now <= 0) {
+                index.remove(curr.getKey());
+            } else {
+                schedule(curr);
+            }
+            curr = next;
+        }
+    }
+
+    /**
+     * Helper method to link an entry into the bucket for its deadline, on
+     * the finest level whose span covers the remaining time.
+     * @param entry the entry to schedule
+     */
+    private void schedule(ExpiringEntry<K, V> entry) {
+        long delay = entry.expiresAt - nanos;
+        int level = BUCKETS.length - 1;
+        for (int i = 0; i < BUCKETS.length - 1; i++) {
+            if (delay < (1L << SHIFT[i + 1])) {
+                level = i;
+                break;
+            }
+        }
+        int bucket = (int) ((entry.expiresAt >> SHIFT[level])
+                & (BUCKETS[level] - 1));
+        ExpiringEntry<K, V> sentinel = wheel[level][bucket];
+        entry.following = sentinel;
+        entry.previous = sentinel.previous;
+        sentinel.previous.following = entry;
+        sentinel.previous = entry;
+    }
+
+    /**
+     * Helper method to unlink an entry from its bucket.
+     * @param entry the entry to unlink
+     */
+    private void unlink(ExpiringEntry<K, V> entry) {
+        if (entry.previous != null) {
+            entry.previous.following = entry.following;
+            entry.following.previous = entry.previous;
+            entry.previous = null;
+            entry.following = null;
+        }
+    }
+
+    /**
+     * An entry with a deadline, linked into one bucket of the wheel.
+     */
+    private static class ExpiringEntry<K, V> extends MapEntry<K, V> {
+        private long expiresAt;
+        private ExpiringEntry<K, V> previous;
+        private ExpiringEntry<K, V> following;
+
+        /**
+         * Create an expiring entry.
+         * @param key key for this entry
+         * @param value value for this entry
+         */
+        ExpiringEntry(K key, V value) {
+            super(key, value);
+        }
+    }
+}
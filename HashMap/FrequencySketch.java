@@ -0,0 +1,109 @@
+/**
+ * A count-min sketch of how often keys have been seen, used by
+ * {@code BoundedCache} to decide whether a new entry is worth evicting an
+ * older one for.
+ *
+ * Counters are 4 bits wide, sixteen to a long with one long per expected
+ * key, and each key is counted in four of them; its estimate is the
+ * smallest of the four. After a fixed number of increments every counter
+ * is halved, so the sketch follows recent popularity rather than all-time
+ * totals.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int[] SEEDS = {
+        0x97cb3127, 0xb1d05ce1, 0x6c6a2c8b, 0xe5bdbfd5
+    };
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Create a sketch sized for about the given number of distinct keys.
+     *
+     * @param expectedKeys number of keys the cache can hold
+     */
+    public FrequencySketch(long expectedKeys) {
+        long keys = Math.max(2, Math.min(expectedKeys, 1 << 26));
+        // One long, sixteen counters, per expected key.
+        table = new long[Integer.highestOneBit((int) keys - 1) << 1];
+        sampleSize = (int) Math.min(keys * 10, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Counts one more occurrence of a key.
+     *
+     * @param hash the key's hash code
+     */
+    public void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int counter = indexOf(hash, i);
+            added |= incrementAt(counter >>> 4, counter & 15);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of recent occurrences of a key.
+     *
+     * @param hash the key's hash code
+     * @return estimated frequency, at most 15
+     */
+    public int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int counter = indexOf(hash, i);
+            int count = (int) ((table[counter >>> 4]
+                    >>> ((counter & 15) << 2)) & 0xf);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Helper method to find one of the counters of a key.
+     * @param hash the key's hash code
+     * @param i which of the four counters
+     * @return the counter's position: long index times 16 plus nibble
+     */
+    private int indexOf(int hash, int i) {
+        int h = (hash ^ (hash >>> 16)) * SEEDS[i];
+        h ^= h >>> 15;
+        return h & (table.length * 16 - 1);
+    }
+
+    /**
+     * Helper method to increment one counter unless it is saturated.
+     * @param index index of the long holding the counter
+     * @param nibble position of the counter within the long
+     * @return whether the counter changed
+     */
+    private boolean incrementAt(int index, int nibble) {
+        int shift = nibble << 2;
+        long mask = 0xfL << shift;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << shift;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper method to age the sketch by halving every counter.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+}
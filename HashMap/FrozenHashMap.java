@@ -0,0 +1,393 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable hash map built once from a {@code HashMap} with
+ * {@code HashMap.freeze()}, for data that is read far more often than it
+ * is written.
+ *
+ * Keys and values sit in two flat arrays with exactly one slot per entry,
+ * and a minimal perfect hash function built with the CHD algorithm
+ * (Belazzougui, Botelho and Dietzfelbinger, "Hash, displace, and
+ * compress") sends every key to its own slot. The keys are first split
+ * into small groups by one hash. Going from the largest group down, each
+ * group gets the first displacement that sends all of its keys to free
+ * slots under a second hash, and groups of one key are pointed straight
+ * at a free slot. A lookup hashes the key twice, reads one displacement
+ * and compares against exactly one key. There are no per-entry nodes, so
+ * the map is also much smaller than the chained table it came from.
+ *
+ * The function is built from hash codes, so keys sharing a hash code
+ * cannot be told apart by it. All but one key of each such group are kept
+ * in a small chained overflow map, which is only searched when it exists.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public final class FrozenHashMap<K, V> implements HashMapInterface<K, V> {
+
+    /**
+     * Average number of keys in each group of the first hash.
+     */
+    private static final int KEYS_PER_BUCKET = 3;
+
+    /**
+     * Number of displacements tried for one group before starting over
+     * with a new seed.
+     */
+    private static final int MAX_DISPLACEMENT = 1 << 20;
+
+    /**
+     * Number of seeds tried before giving up.
+     */
+    private static final int MAX_ATTEMPTS = 16;
+
+    private static final int GOLDEN = 0x9e3779b9;
+
+    private final Object[] keys;
+    private final Object[] values;
+    private final int[] displacements;
+    private final int seed;
+    private final HashMap<K, V> overflow;
+    private final int size;
+
+    /**
+     * Builds a frozen copy of a map.
+     *
+     * @param source the map to copy
+     * @throws IllegalStateException if no perfect hash function could be
+     * found, which for distinct hash codes does not happen in practice
+     */
+    FrozenHashMap(HashMap<K, V> source) {
+        int total = source.size();
+        Object[] allKeys = new Object[total];
+        Object[] allValues = new Object[total];
+        long[] byHash = new long[total];
+        int count = 0;
+        for (MapEntry<K, V> entry : source) {
+            allKeys[count] = entry.getKey();
+            allValues[count] = entry.getValue();
+            byHash[count] = ((long) entry.getKey().hashCode() << 32) | count;
+            count++;
+        }
+        Arrays.sort(byHash);
+        int[] primary = new int[total];
+        int[] hashes = new int[total];
+        int n = 0;
+        HashMap<K, V> extra = null;
+        for (int i = 0; i < total; i++) {
+            int hash = (int) (byHash[i] >> 32);
+            int index = (int) byHash[i];
+            if (n > 0 && hashes[n - 1] == hash) {
+                if (extra == null) {
+                    extra = new HashMap<>();
+                }
+                extra.add((K) allKeys[index], (V) allValues[index]);
+            } else {
+                primary[n] = index;
+                hashes[n] = hash;
+                n++;
+            }
+        }
+        keys = new Object[n];
+        values = new Object[n];
+        int[] found = null;
+        int chosenSeed = 0;
+        for (int attempt = 0; found == null; attempt++) {
+            if (attempt == MAX_ATTEMPTS) {
+                throw new IllegalStateException(
+                        "Could not build a perfect hash function");
+            }
+            chosenSeed = mix(attempt * GOLDEN + 1);
+            found = buildHelper(chosenSeed, hashes, primary, n, allKeys,
+                    allValues);
+        }
+        displacements = found;
+        seed = chosenSeed;
+        overflow = extra;
+        size = total;
+    }
+
+    /**
+     * Always throws, since the map cannot be changed.
+     *
+     * @param key ignored
+     * @param value ignored
+     * @throws UnsupportedOperationException always
+     * @return never returns
+     */
+    @Override
+    public V add(K key, V value) {
+        throw new UnsupportedOperationException("Map is frozen");
+    }
+
+    /**
+     * Always throws, since the map cannot be changed.
+     *
+     * @param key ignored
+     * @throws UnsupportedOperationException always
+     * @return never returns
+     */
+    @Override
+    public V remove(K key) {
+        throw new UnsupportedOperationException("Map is frozen");
+    }
+
+    @Override
+    public V get(K key) {
+        V value = getOrDefault(key, null);
+        if (value == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value associated with the given key, or defaultValue if the
+     * key is not in the map.
+     *
+     * @param key the key to search for
+     * @param defaultValue the value to return on a miss, may be null
+     * @throws IllegalArgumentException if key is null
+     * @return the value associated with the key, or defaultValue
+     */
+    public V getOrDefault(K key, V defaultValue) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        if (keys.length != 0) {
+            int slot = slotFor(key.hashCode());
+            if (keys[slot].equals(key)) {
+                return (V) values[slot];
+            }
+        }
+        if (overflow != null) {
+            return overflow.getOrDefault(key, defaultValue);
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public boolean contains(K key) {
+        return getOrDefault(key, null) != null;
+    }
+
+    /**
+     * Always throws, since the map cannot be changed.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Map is frozen");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an unmodifiable set of the keys of this map.
+     *
+     * @return set of keys in this map
+     */
+    @Override
+    public Set<K> keySet() {
+        HashSet<K> keySet = new HashSet<>();
+        for (Object key : keys) {
+            keySet.add((K) key);
+        }
+        if (overflow != null) {
+            keySet.addAll(overflow.keySet());
+        }
+        return Collections.unmodifiableSet(keySet);
+    }
+
+    /**
+     * Returns an unmodifiable list of the values of this map.
+     *
+     * @return list of values in this map
+     */
+    @Override
+    public List<V> values() {
+        ArrayList<V> valueList = new ArrayList<>(size);
+        for (Object value : values) {
+            valueList.add((V) value);
+        }
+        if (overflow != null) {
+            valueList.addAll(overflow.values());
+        }
+        return Collections.unmodifiableList(valueList);
+    }
+
+    /**
+     * Helper method for the constructor.
+     * Tries to build the perfect hash function for one seed, filling the
+     * key and value arrays.
+     * @param seed seed of the first hash
+     * @param hashes distinct hash codes of the keys to place
+     * @param primary index of each of those keys in allKeys
+     * @param n number of keys to place
+     * @param allKeys every key of the source map
+     * @param allValues every value of the source map
+     * @return the displacement of every group, or null if some group
+     * could not be placed
+     */
+    private int[] buildHelper(int seed, int[] hashes, int[] primary, int n,
+                              Object[] allKeys, Object[] allValues) {
+        int buckets = Math.max(1, (n + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET);
+        // Group the keys by bucket with a counting sort.
+        int[] bucketOf = new int[n];
+        int[] start = new int[buckets + 1];
+        for (int i = 0; i < n; i++) {
+            bucketOf[i] = range(mix(hashes[i] ^ seed), buckets);
+            start[bucketOf[i] + 1]++;
+        }
+        int largest = 0;
+        for (int b = 0; b < buckets; b++) {
+            largest = Math.max(largest, start[b + 1]);
+            start[b + 1] += start[b];
+        }
+        int[] members = new int[n];
+        int[] fill = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < n; i++) {
+            members[fill[bucketOf[i]]++] = i;
+        }
+        // Order the buckets from largest to smallest, again by counting.
+        int[] bySize = new int[largest + 2];
+        for (int b = 0; b < buckets; b++) {
+            bySize[largest - (start[b + 1] - start[b]) + 1]++;
+        }
+        for (int s = 0; s <= largest; s++) {
+            bySize[s + 1] += bySize[s];
+        }
+        int[] order = new int[buckets];
+        for (int b = 0; b < buckets; b++) {
+            order[bySize[largest - (start[b + 1] - start[b])]++] = b;
+        }
+
+        int[] result = new int[buckets];
+        boolean[] taken = new boolean[n];
+        int[] slots = new int[largest];
+        int nextFree = 0;
+        for (int b : order) {
+            int bucketSize = start[b + 1] - start[b];
+            if (bucketSize == 0) {
+                break;
+            }
+            if (bucketSize == 1) {
+                while (taken[nextFree]) {
+                    nextFree++;
+                }
+                slots[0] = nextFree;
+                result[b] = -nextFree - 1;
+            } else {
+                int d = 1;
+                while (!tryDisplacement(seed, d, hashes, members, start[b],
+                        bucketSize, taken, slots)) {
+                    if (++d > MAX_DISPLACEMENT) {
+                        return null;
+                    }
+                }
+                result[b] = d;
+            }
+            for (int j = 0; j < bucketSize; j++) {
+                int key = primary[members[start[b] + j]];
+                taken[slots[j]] = true;
+                keys[slots[j]] = allKeys[key];
+                values[slots[j]] = allValues[key];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper method for buildHelper.
+     * Checks whether a displacement sends every key of a group to a
+     * different free slot.
+     * @param seed seed of the hash function being built
+     * @param d the displacement to try
+     * @param hashes hash codes of the keys
+     * @param members keys grouped by bucket
+     * @param from first member of the group
+     * @param count number of keys in the group
+     * @param taken which slots are already used
+     * @param slots receives the slot of each key of the group
+     * @return whether every key got its own free slot
+     */
+    private static boolean tryDisplacement(int seed, int d, int[] hashes,
+                                           int[] members, int from,
+                                           int count, boolean[] taken,
+                                           int[] slots) {
+        for (int j = 0; j < count; j++) {
+            int slot = displace(hashes[members[from + j]], seed, d,
+                    taken.length);
+            if (taken[slot]) {
+                return false;
+            }
+            for (int k = 0; k < j; k++) {
+                if (slots[k] == slot) {
+                    return false;
+                }
+            }
+            slots[j] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to find the only slot a key can be in.
+     * @param hash the key's hash code
+     * @return index of the slot
+     */
+    private int slotFor(int hash) {
+        int d = displacements[range(mix(hash ^ seed), displacements.length)];
+        if (d < 0) {
+            return -d - 1;
+        }
+        return displace(hash, seed, d, keys.length);
+    }
+
+    /**
+     * Helper method to compute the second hash of a key.
+     * @param hash the key's hash code
+     * @param seed seed of the hash function
+     * @param d displacement of the key's group
+     * @param n number of slots
+     * @return a slot index
+     */
+    private static int displace(int hash, int seed, int d, int n) {
+        return range(mix(hash ^ (seed + d * GOLDEN)), n);
+    }
+
+    /**
+     * Maps a 32-bit hash onto [0, n) with a multiply instead of a
+     * remainder.
+     * @param hash the hash
+     * @param n size of the range
+     * @return a value in [0, n)
+     */
+    private static int range(int hash, int n) {
+        return (int) (((hash & 0xffffffffL) * n) >>> 32);
+    }
+
+    /**
+     * Mixes the bits of a hash code with the murmur3 32-bit finalizer.
+     * @param h the hash code to mix
+     * @return the mixed hash
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
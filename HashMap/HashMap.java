@@ -1,28 +1,228 @@
+import java.util.ArrayList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Set;
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 
 /**
  * Your implementation of a HashMap, using external chaining as your collision
  * policy.  Read the PDF for more instructions on external chaining.
  *
+ * A chain that grows past {@code TreeBin.TREEIFY_THRESHOLD} entries is
+ * converted into a {@code TreeBin}, so a bucket full of colliding keys is
+ * searched in O(log n) rather than O(n). While the backing array is shorter
+ * than {@code TreeBin.MIN_TREEIFY_CAPACITY} the array is grown instead.
+ *
+ * Iterating over the map, through {@code iterator()}, {@code forEach},
+ * {@code keySet()} or {@code values()}, walks the backing array in place
+ * without copying anything. Iterators are fail-fast: a structural change
+ * made other than through the iterator itself makes the next call throw
+ * ConcurrentModificationException. Reads and value updates never move
+ * buckets, even in the middle of an incremental resize, so calling get
+ * while iterating is safe.
+ *
+ * Updates through {@code computeIfAbsent}, {@code compute} and
+ * {@code merge} hash the key once, and {@code getOrDefault} and
+ * {@code contains} report a miss without throwing.
+ *
+ * {@code spliterator()} splits the backing array into ranges of buckets,
+ * which {@code parallelStream}, {@code parallelForEach},
+ * {@code reduceValues} and {@code search} spread over the common
+ * fork-join pool.
+ *
+ * Statistics on chain lengths, probes per lookup and resizes can be turned
+ * on with {@code setStatsEnabled}, read with {@code stats()} and published
+ * over JMX with {@code registerMBean}.
+ *
  * @author Min Ho Lee
  * @version 1.0
  */
-public class HashMap<K, V> implements HashMapInterface<K, V> {
+public class HashMap<K, V> implements HashMapInterface<K, V>,
+        Iterable<MapEntry<K, V>> {
+
+    /**
+     * Number of old buckets moved into the new table by each operation while
+     * an incremental resize is in progress.
+     */
+    private static final int MIGRATION_STEP = 4;
+
+    /**
+     * Starting length of the backing array with power-of-two sizing, the
+     * smallest power of two that is at least STARTING_SIZE.
+     */
+    private static final int POWER_OF_TWO_STARTING_SIZE = 16;
 
-    // Do not make any new instance variables.
     private MapEntry<K, V>[] table;
     private int size;
+    private final boolean incrementalResize;
+    private final boolean powerOfTwoSizing;
+    private final double loadFactor;
+    private final int initialSize;
+    private MapEntry<K, V>[] oldTable;
+    private int migrateIndex;
+    private int modCount;
+    private boolean statsEnabled;
+    private long lookupCount;
+    private long probeCount;
+    private long resizeCount;
+    private long totalResizeNanos;
+    private long lastResizeNanos;
+    private ObjectName mbeanName;
 
     /**
      * Create a hash map with no entries.
      */
     public HashMap() {
-        table = new MapEntry[STARTING_SIZE];
+        this(false, false);
+    }
+
+    /**
+     * Create a hash map with no entries whose backing array can hold
+     * expectedSize entries before its first resize.
+     *
+     * @param expectedSize number of entries the map should hold
+     * @throws IllegalArgumentException if expectedSize is negative
+     */
+    public HashMap(int expectedSize) {
+        this(expectedSize, MAX_LOAD_FACTOR);
+    }
+
+    /**
+     * Create a hash map with no entries whose backing array can hold
+     * expectedSize entries before its first resize, and which resizes
+     * whenever its load would exceed loadFactor.
+     *
+     * @param expectedSize number of entries the map should hold
+     * @param loadFactor the largest allowed ratio of size to array length
+     * @throws IllegalArgumentException if expectedSize is negative or
+     * loadFactor is not positive
+     */
+    public HashMap(int expectedSize, double loadFactor) {
+        this(expectedSize, loadFactor, false, false);
+    }
+
+    /**
+     * Create a hash map with no entries.
+     *
+     * With incremental resizing the old and the new backing array coexist
+     * after a resize, and every add or remove that changes the map moves a
+     * few old buckets into the new array until none are left, so no single
+     * operation pays for rehashing the whole map. Lookups search whichever
+     * array owns the key's bucket and move nothing.
+     *
+     * @param incrementalResize whether to spread resizes over later calls
+     */
+    public HashMap(boolean incrementalResize) {
+        this(incrementalResize, false);
+    }
+
+    /**
+     * Create a hash map with no entries.
+     *
+     * With power-of-two sizing the backing array starts at 16 and doubles
+     * on every resize, and a bucket is picked by mixing the hash code and
+     * masking off its low bits instead of taking a remainder, which saves
+     * an integer division on every operation. The mixing step keeps hash
+     * codes that only differ in their high bits from sharing a bucket.
+     *
+     * @param incrementalResize whether to spread resizes over later calls
+     * @param powerOfTwoSizing whether to use power-of-two array lengths
+     */
+    public HashMap(boolean incrementalResize, boolean powerOfTwoSizing) {
+        this(0, MAX_LOAD_FACTOR, incrementalResize, powerOfTwoSizing);
+    }
+
+    /**
+     * Create a hash map with no entries. See the other constructors for
+     * what each setting does.
+     *
+     * @param expectedSize number of entries the map should hold
+     * @param loadFactor the largest allowed ratio of size to array length
+     * @param incrementalResize whether to spread resizes over later calls
+     * @param powerOfTwoSizing whether to use power-of-two array lengths
+     * @throws IllegalArgumentException if expectedSize is negative or
+     * loadFactor is not positive
+     */
+    public HashMap(int expectedSize, double loadFactor,
+                   boolean incrementalResize, boolean powerOfTwoSizing) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size is negative");
+        }
+        if (!(loadFactor > 0)) {
+            throw new IllegalArgumentException("Load factor is not positive");
+        }
+        this.incrementalResize = incrementalResize;
+        this.powerOfTwoSizing = powerOfTwoSizing;
+        this.loadFactor = loadFactor;
+        initialSize = capacityFor(expectedSize);
+        table = new MapEntry[initialSize];
+    }
+
+    /**
+     * Create a hash map holding keys[i] mapped to values[i] for every i.
+     * The backing array is sized once for all of the entries, and later
+     * pairs replace the values of earlier pairs with the same key.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param keys the keys to add
+     * @param values the values to add, in the same order as the keys
+     * @throws IllegalArgumentException if either array or any element in
+     * them is null, or if the arrays have different lengths
+     * @return the new hash map
+     */
+    public static <K, V> HashMap<K, V> fromArrays(K[] keys, V[] values) {
+        if (keys == null || values == null) {
+            throw new IllegalArgumentException("Keys or values are null");
+        }
+        HashMap<K, V> map = new HashMap<>(keys.length);
+        map.putAll(keys, values);
+        return map;
+    }
+
+    /**
+     * Create an empty hash map whose backing array has exactly the given
+     * length, for loading a snapshot whose bucket indexes were computed
+     * for that length.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param length length of the backing array
+     * @param loadFactor the largest allowed ratio of size to array length
+     * @param incrementalResize whether to spread resizes over later calls
+     * @param powerOfTwoSizing whether to use power-of-two array lengths
+     * @throws IllegalArgumentException if length is not positive, or not a
+     * power of two with power-of-two sizing, or loadFactor is not positive
+     * @return the new hash map
+     */
+    static <K, V> HashMap<K, V> withTableLength(int length, double loadFactor,
+                                                boolean incrementalResize,
+                                                boolean powerOfTwoSizing) {
+        if (length <= 0
+                || (powerOfTwoSizing && Integer.bitCount(length) != 1)) {
+            throw new IllegalArgumentException("Invalid table length");
+        }
+        HashMap<K, V> map = new HashMap<>(0, loadFactor, incrementalResize,
+                powerOfTwoSizing);
+        map.table = new MapEntry[length];
+        return map;
     }
 
     @Override
@@ -30,61 +230,207 @@ public class HashMap<K, V> implements HashMapInterface<K, V> {
         if (key == null || value == null) {
             throw new IllegalArgumentException("Key or value is null");
         }
-        size++;
-        if ((double) size / table.length > MAX_LOAD_FACTOR) {
+        if ((double) (size + 1) / table.length > loadFactor) {
             resizeHelper();
         }
-        int hash = Math.abs(key.hashCode()) % table.length;
-        if (table[hash] == null) {
-            table[hash] = new MapEntry<>(key, value);
+        V toReturn = putHelper(key, value);
+        if (toReturn == null) {
+            migrateStep();
+        }
+        return toReturn;
+    }
+
+    /**
+     * Adds keys[i] mapped to values[i] for every i. The backing array is
+     * grown once, up front, to fit every pair, so no load factor checks
+     * happen while the pairs are inserted; it only grows again if a chain
+     * gets too long for an array shorter than
+     * {@code TreeBin.MIN_TREEIFY_CAPACITY}. Nothing is added if any
+     * argument is invalid.
+     *
+     * @param keys the keys to add
+     * @param values the values to add, in the same order as the keys
+     * @throws IllegalArgumentException if either array or any element in
+     * them is null, or if the arrays have different lengths
+     */
+    public void putAll(K[] keys, V[] values) {
+        if (keys == null || values == null) {
+            throw new IllegalArgumentException("Keys or values are null");
+        }
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException(
+                    "Keys and values have different lengths");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null || values[i] == null) {
+                throw new IllegalArgumentException("Key or value is null");
+            }
+        }
+        ensureCapacity(size + keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            putHelper(keys[i], values[i]);
+        }
+    }
+
+    /**
+     * Adds every entry of another map, growing the backing array once, up
+     * front, to fit them. Another HashMap is copied by walking its entries;
+     * any other map has its keys copied first and is then read by key, so
+     * its key set is never iterated while it is being read.
+     *
+     * @param other the map to copy entries from
+     * @throws IllegalArgumentException if other is null
+     */
+    public void putAll(HashMapInterface<K, V> other) {
+        if (other == null) {
+            throw new IllegalArgumentException("Map is null");
+        }
+        ensureCapacity(size + other.size());
+        if (other instanceof HashMap) {
+            for (MapEntry<K, V> entry : (HashMap<K, V>) other) {
+                putHelper(entry.getKey(), entry.getValue());
+            }
+        } else {
+            List<K> keys = new ArrayList<>(other.keySet());
+            for (K key : keys) {
+                putHelper(key, other.get(key));
+            }
+        }
+    }
+
+    /**
+     * Helper method for add and putAll.
+     * Puts a pair into its bucket without checking the load factor. The
+     * backing array is only grown here when a chain gets too long for an
+     * array that is too short to hold trees.
+     * @param key key to add
+     * @param value value to add
+     * @return the old value, or null if the key was not in the map
+     */
+    private V putHelper(K key, V value) {
+        MapEntry<K, V>[] tab = tableFor(key);
+        int hash = indexFor(key, tab.length);
+        boolean grow = false;
+        if (tab[hash] instanceof TreeBin) {
+            V toReturn = ((TreeBin<K, V>) tab[hash]).put(key, value);
+            if (toReturn == null) {
+                size++;
+                modCount++;
+            }
+            return toReturn;
+        }
+        if (tab[hash] == null) {
+            tab[hash] = new MapEntry<>(key, value);
         } else {
-            if (table[hash].getKey().equals(key)) {
-                V toReturn = table[hash].getValue();
-                table[hash].setValue(value);
-                size--;
+            if (tab[hash].getKey().equals(key)) {
+                V toReturn = tab[hash].getValue();
+                tab[hash].setValue(value);
                 return toReturn;
             }
-            MapEntry<K, V> curr = table[hash];
+            MapEntry<K, V> curr = tab[hash];
+            int length = 1;
             while (curr.getNext() != null) {
                 if (curr.getNext().getKey().equals(key)) {
                     V toReturn = curr.getNext().getValue();
                     curr.getNext().setValue(value);
-                    size--;
                     return toReturn;
                 }
                 curr = curr.getNext();
+                length++;
             }
             curr.setNext(new MapEntry<>(key, value));
-            return null;
+            if (length + 1 > TreeBin.TREEIFY_THRESHOLD
+                    && !treeifyBin(tab, hash)) {
+                grow = true;
+            }
+        }
+        size++;
+        modCount++;
+        if (grow) {
+            resizeHelper();
         }
         return null;
     }
 
+    /**
+     * Helper method for putHelper, insertHelper, transfer and restoreBucket.
+     * Converts a chain that grew too long into a tree, unless the current
+     * backing array is still shorter than the minimum treeify capacity.
+     * @param tab the backing array holding the chain
+     * @param hash index of the chain's bucket
+     * @return true if the chain was converted, false if the array should
+     * be grown instead
+     */
+    private boolean treeifyBin(MapEntry<K, V>[] tab, int hash) {
+        if (table.length < TreeBin.MIN_TREEIFY_CAPACITY) {
+            return false;
+        }
+        tab[hash] = new TreeBin<>(tab[hash]);
+        return true;
+    }
+
     @Override
     public V remove(K key) {
         if (key == null) {
             throw new IllegalArgumentException("Key or value is null");
         }
-        int hash = Math.abs(key.hashCode()) % table.length;
-        if (table[hash] != null) {
-            if (table[hash].getKey().equals(key)) {
-                V toReturn = table[hash].getValue();
-                table[hash] = table[hash].getNext();
-                size--;
-                return toReturn;
+        V toReturn = removeHelper(key);
+        if (toReturn == null) {
+            throw new NoSuchElementException("No element found");
+        }
+        migrateStep();
+        return toReturn;
+    }
+
+    /**
+     * Helper method for remove and the iterators.
+     * Unlinks a key from its bucket without moving any other buckets.
+     * @param key the key to remove
+     * @return the removed value, or null if the key was not in the map
+     */
+    private V removeHelper(K key) {
+        MapEntry<K, V>[] tab = tableFor(key);
+        return removeAt(tab, indexFor(key, tab.length), key);
+    }
+
+    /**
+     * Helper method for removeHelper, compute and merge.
+     * Unlinks a key from a bucket that was already located.
+     * @param tab the backing array holding the key's bucket
+     * @param hash index of the key's bucket
+     * @param key the key to remove
+     * @return the removed value, or null if the key was not in the bucket
+     */
+    private V removeAt(MapEntry<K, V>[] tab, int hash, K key) {
+        V toReturn = null;
+        if (tab[hash] instanceof TreeBin) {
+            TreeBin<K, V> bin = (TreeBin<K, V>) tab[hash];
+            toReturn = bin.remove(key);
+            if (toReturn != null
+                    && bin.size() <= TreeBin.UNTREEIFY_THRESHOLD) {
+                tab[hash] = bin.untreeify();
             }
-            MapEntry<K, V> curr = table[hash];
-            while (curr.getNext() != null) {
-                if (curr.getNext().getKey().equals(key)) {
-                    V toReturn = curr.getNext().getValue();
-                    curr.setNext(curr.getNext().getNext());
-                    size--;
-                    return toReturn;
+        } else if (tab[hash] != null) {
+            if (tab[hash].getKey().equals(key)) {
+                toReturn = tab[hash].getValue();
+                tab[hash] = tab[hash].getNext();
+            } else {
+                MapEntry<K, V> curr = tab[hash];
+                while (curr.getNext() != null) {
+                    if (curr.getNext().getKey().equals(key)) {
+                        toReturn = curr.getNext().getValue();
+                        curr.setNext(curr.getNext().getNext());
+                        break;
+                    }
+                    curr = curr.getNext();
                 }
-                curr = curr.getNext();
             }
         }
-        throw new NoSuchElementException("No element found");
+        if (toReturn != null) {
+            size--;
+            modCount++;
+        }
+        return toReturn;
     }
 
     @Override
@@ -92,20 +438,11 @@ public class HashMap<K, V> implements HashMapInterface<K, V> {
         if (key == null) {
             throw new IllegalArgumentException("Key or value is null");
         }
-        int hash = Math.abs(key.hashCode()) % table.length;
-        if (table[hash] != null) {
-            if (table[hash].getKey().equals(key)) {
-                return table[hash].getValue();
-            }
-            MapEntry<K, V> curr = table[hash];
-            while (curr.getNext() != null) {
-                if (curr.getNext().getKey().equals(key)) {
-                    return curr.getNext().getValue();
-                }
-                curr = curr.getNext();
-            }
+        MapEntry<K, V> found = findEntry(key);
+        if (found == null) {
+            throw new NoSuchElementException("No element found");
         }
-        throw new NoSuchElementException("No element found");
+        return found.getValue();
     }
 
     @Override
@@ -113,18 +450,246 @@ public class HashMap<K, V> implements HashMapInterface<K, V> {
         if (key == null) {
             throw new IllegalArgumentException("Key or value is null");
         }
-        try {
-            get(key);
-        } catch (NoSuchElementException e) {
-            return false;
+        return findEntry(key) != null;
+    }
+
+    /**
+     * Gets the value associated with the given key, or defaultValue if the
+     * key is not in the map. Unlike get, a miss does not throw.
+     *
+     * @param key the key to search for
+     * @param defaultValue the value to return on a miss, may be null
+     * @throws IllegalArgumentException if key is null
+     * @return the value associated with the key, or defaultValue
+     */
+    public V getOrDefault(K key, V defaultValue) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
         }
-        return true;
+        MapEntry<K, V> found = findEntry(key);
+        return found == null ? defaultValue : found.getValue();
+    }
+
+    /**
+     * Returns the value associated with the given key, first adding the
+     * result of mappingFunction for it if the key is not in the map. The
+     * key is hashed once. If the function returns null nothing is added.
+     * Like every method in this group, the backing array only grows if an
+     * entry is actually added.
+     *
+     * @param key the key to look up
+     * @param mappingFunction computes the value of a missing key
+     * @throws IllegalArgumentException if key or mappingFunction is null
+     * @throws ConcurrentModificationException if mappingFunction changes
+     * the map
+     * @return the current or computed value, or null if none was computed
+     */
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null) {
+            throw new IllegalArgumentException("Key or function is null");
+        }
+        MapEntry<K, V>[] tab = tableFor(key);
+        int hash = indexFor(key, tab.length);
+        MapEntry<K, V> found = findEntry(tab, hash, key);
+        if (found != null) {
+            return found.getValue();
+        }
+        int expectedModCount = modCount;
+        V value = mappingFunction.apply(key);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        if (value != null) {
+            insertHelper(tab, hash, key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Replaces the value of the given key with the result of
+     * remappingFunction, which gets the current value or null if the key
+     * is not in the map. A null result removes the key. The key is hashed
+     * once.
+     *
+     * @param key the key to update
+     * @param remappingFunction computes the new value from the old one
+     * @throws IllegalArgumentException if key or remappingFunction is null
+     * @throws ConcurrentModificationException if remappingFunction changes
+     * the map
+     * @return the new value, or null if the key is no longer in the map
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V>
+            remappingFunction) {
+        if (key == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key or function is null");
+        }
+        MapEntry<K, V>[] tab = tableFor(key);
+        int hash = indexFor(key, tab.length);
+        MapEntry<K, V> found = findEntry(tab, hash, key);
+        int expectedModCount = modCount;
+        V value = remappingFunction.apply(key,
+                found == null ? null : found.getValue());
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        updateHelper(tab, hash, key, found, value);
+        return value;
+    }
+
+    /**
+     * Adds the given key-value pair if the key is not in the map, and
+     * otherwise replaces its value with the result of remappingFunction
+     * applied to the old value and the given one. A null result removes
+     * the key. The key is hashed once, so counting with
+     * {@code merge(key, 1, Integer::sum)} does one lookup per update.
+     *
+     * @param key the key to update
+     * @param value the value to add, or to combine with the old one
+     * @param remappingFunction combines the old value and the given one
+     * @throws IllegalArgumentException if key, value or remappingFunction
+     * is null
+     * @throws ConcurrentModificationException if remappingFunction changes
+     * the map
+     * @return the new value, or null if the key is no longer in the map
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V,
+            ? extends V> remappingFunction) {
+        if (key == null || value == null || remappingFunction == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        MapEntry<K, V>[] tab = tableFor(key);
+        int hash = indexFor(key, tab.length);
+        MapEntry<K, V> found = findEntry(tab, hash, key);
+        if (found == null) {
+            insertHelper(tab, hash, key, value);
+            return value;
+        }
+        int expectedModCount = modCount;
+        V merged = remappingFunction.apply(found.getValue(), value);
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        updateHelper(tab, hash, key, found, merged);
+        return merged;
+    }
+
+    /**
+     * Helper method for compute and merge.
+     * Stores a computed value for a key that was already looked up.
+     * @param tab the backing array holding the key's bucket
+     * @param hash index of the key's bucket
+     * @param key the key
+     * @param found the key's entry, or null if it is not in the map
+     * @param value the new value, or null to remove the key
+     */
+    private void updateHelper(MapEntry<K, V>[] tab, int hash, K key,
+                              MapEntry<K, V> found, V value) {
+        if (found == null) {
+            if (value != null) {
+                insertHelper(tab, hash, key, value);
+            }
+        } else if (value == null) {
+            removeAt(tab, hash, key);
+            migrateStep();
+        } else {
+            found.setValue(value);
+        }
+    }
+
+    /**
+     * Helper method to add a key known not to be in the map to the bucket
+     * it was looked up in, first resizing if the load factor requires it,
+     * in which case the bucket is found again, and then continuing any
+     * incremental migration.
+     * @param tab the backing array holding the key's bucket
+     * @param hash index of the key's bucket
+     * @param key the key to add
+     * @param value the value to add
+     */
+    private void insertHelper(MapEntry<K, V>[] tab, int hash, K key,
+                              V value) {
+        if ((double) (size + 1) / table.length > loadFactor) {
+            resizeHelper();
+            tab = tableFor(key);
+            hash = indexFor(key, tab.length);
+        }
+        boolean grow = false;
+        if (tab[hash] instanceof TreeBin) {
+            ((TreeBin<K, V>) tab[hash]).put(key, value);
+        } else if (tab[hash] == null) {
+            tab[hash] = new MapEntry<>(key, value);
+        } else {
+            MapEntry<K, V> tail = tab[hash];
+            int length = 1;
+            while (tail.getNext() != null) {
+                tail = tail.getNext();
+                length++;
+            }
+            tail.setNext(new MapEntry<>(key, value));
+            if (length + 1 > TreeBin.TREEIFY_THRESHOLD
+                    && !treeifyBin(tab, hash)) {
+                grow = true;
+            }
+        }
+        size++;
+        modCount++;
+        if (grow) {
+            resizeHelper();
+        }
+        migrateStep();
+    }
+
+    /**
+     * Helper method to find the entry of a key, searching its bucket in
+     * whichever backing array currently owns it.
+     * @param key the key to search for
+     * @return the key's entry, or null if it is not in the map
+     */
+    private MapEntry<K, V> findEntry(K key) {
+        MapEntry<K, V>[] tab = tableFor(key);
+        return findEntry(tab, indexFor(key, tab.length), key);
+    }
+
+    /**
+     * Helper method to search one bucket for a key, recording the lookup
+     * if statistics are enabled.
+     * @param tab the backing array holding the bucket
+     * @param hash index of the bucket
+     * @param key the key to search for
+     * @return the key's entry, or null if it is not in the bucket
+     */
+    private MapEntry<K, V> findEntry(MapEntry<K, V>[] tab, int hash, K key) {
+        MapEntry<K, V> found = null;
+        int probes = 0;
+        if (tab[hash] instanceof TreeBin) {
+            TreeBin<K, V> bin = (TreeBin<K, V>) tab[hash];
+            found = bin.find(key);
+            probes = bin.levels();
+        } else {
+            for (MapEntry<K, V> curr = tab[hash]; curr != null;
+                    curr = curr.getNext()) {
+                probes++;
+                if (curr.getKey().equals(key)) {
+                    found = curr;
+                    break;
+                }
+            }
+        }
+        if (statsEnabled) {
+            lookupCount++;
+            probeCount += probes;
+        }
+        return found;
     }
 
     @Override
     public void clear() {
-        table = new MapEntry[STARTING_SIZE];
+        table = new MapEntry[initialSize];
+        oldTable = null;
+        migrateIndex = 0;
         size = 0;
+        modCount++;
     }
 
     @Override
@@ -132,63 +697,1153 @@ public class HashMap<K, V> implements HashMapInterface<K, V> {
         return size;
     }
 
+    /**
+     * Returns a live Set view of the keys contained in this map. The view
+     * reads the backing array directly, so creating it is O(1) and nothing
+     * is copied. Removing a key from the view removes it from the map.
+     *
+     * @return set of keys in this map.
+     */
     @Override
     public Set<K> keySet() {
-        HashSet<K> keySet = new HashSet<>();
-        for (int i = 0; i < table.length; i++) {
-            if (table[i] != null) {
-                keySet.add(table[i].getKey());
-                while (table[i].getNext() != null) {
-                    keySet.add(table[i].getNext().getKey());
-                    table[i] = table[i].getNext();
-                }
-            }
-        }
-        return keySet;
+        return new KeySetView();
     }
 
+    /**
+     * Returns a live List view of the values contained in this map. The
+     * view reads the backing array directly, so creating and iterating it
+     * copies nothing. Positions follow the iteration order and, as in a
+     * linked list, {@code get(int)}, {@code set(int)} and
+     * {@code remove(int)} walk to them in O(n), as does each step back of
+     * a list iterator, so copy the view into an ArrayList to index into it
+     * repeatedly. Removing through the view removes the entry from the
+     * map, and setting a value updates it.
+     *
+     * @return list of values in this map
+     */
     @Override
     public List<V> values() {
-        ArrayList<V> valueList = new ArrayList<>();
-        for (int i = 0; i < table.length; i++) {
-            if (table[i] != null) {
-                valueList.add(table[i].getValue());
-                while (table[i].getNext() != null) {
-                    valueList.add(table[i].getNext().getValue());
-                    table[i] = table[i].getNext();
-                }
+        return new ValuesView();
+    }
+
+    /**
+     * Returns a fail-fast iterator over the entries of this map. The
+     * entries are the map's own; setting a value through one updates the
+     * map, but its next pointer must not be changed.
+     *
+     * @return iterator over the entries
+     */
+    @Override
+    public Iterator<MapEntry<K, V>> iterator() {
+        return entriesFrom(0);
+    }
+
+    /**
+     * Helper method for iterator and the values view.
+     * Walks past the first entries of the map.
+     * @param skip number of entries to walk past
+     * @return iterator positioned on the entry at index skip
+     */
+    private HashIterator<MapEntry<K, V>> entriesFrom(int skip) {
+        HashIterator<MapEntry<K, V>> it = new HashIterator<MapEntry<K, V>>() {
+            @Override
+            public MapEntry<K, V> next() {
+                return nextEntry();
             }
+        };
+        for (int i = 0; i < skip; i++) {
+            it.nextEntry();
         }
-        return valueList;
+        return it;
     }
 
     /**
-     * Helper method to resize.
-     * Resize to 2 * length of the array + 1
-     * when adding if (size + 1) / length of the array
-     * is bigger than MAX_LOAD_FACTOR.
+     * Helper method for the values view.
+     * Finds the entry at a position of the iteration order in O(n).
+     * @param index position of the entry
+     * @throws IndexOutOfBoundsException if index is negative or not below
+     * the size
+     * @return the entry
      */
-    private void resizeHelper() {
-        MapEntry<K, V>[] temp = table;
-        table = new MapEntry[temp.length * 2 + 1];
-        size = 1;
-        for (int i = 0; i < temp.length; i++) {
-            if (temp[i] != null) {
-                add(temp[i].getKey(), temp[i].getValue());
-                while (temp[i].getNext() != null) {
-                    add(temp[i].getNext().getKey(),
-                            temp[i].getNext().getValue());
-                    temp[i] = temp[i].getNext();
-                }
+    private MapEntry<K, V> entryAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index);
+        }
+        return entriesFrom(index).nextEntry();
+    }
+
+    /**
+     * Runs an action on every key-value pair, walking the backing array in
+     * place.
+     *
+     * @param action the action to run on each pair
+     * @throws IllegalArgumentException if action is null
+     * @throws ConcurrentModificationException if the action structurally
+     * changes the map
+     */
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action is null");
+        }
+        int expectedModCount = modCount;
+        if (oldTable != null) {
+            forEachHelper(oldTable, migrateIndex, action, expectedModCount);
+        }
+        forEachHelper(table, 0, action, expectedModCount);
+    }
+
+    /**
+     * Returns an immutable copy of this map with one-probe lookups, built
+     * around a minimal perfect hash function. Building it is O(n) on
+     * average; later changes to this map do not affect the copy.
+     *
+     * @throws IllegalStateException if no perfect hash function could be
+     * built
+     * @return the frozen copy
+     */
+    public FrozenHashMap<K, V> freeze() {
+        return new FrozenHashMap<>(this);
+    }
+
+    /**
+     * Returns a fail-fast spliterator over the entries of this map. It
+     * splits by ranges of buckets, so a parallel stream hands each worker
+     * a contiguous part of the backing array.
+     *
+     * @return spliterator over the entries
+     */
+    @Override
+    public Spliterator<MapEntry<K, V>> spliterator() {
+        return new EntrySpliterator();
+    }
+
+    /**
+     * Returns a sequential stream of the entries of this map.
+     *
+     * @return stream of the entries
+     */
+    public Stream<MapEntry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream of the entries of this map, run in the
+     * common fork-join pool. The map must not be changed while the stream
+     * runs.
+     *
+     * @return parallel stream of the entries
+     */
+    public Stream<MapEntry<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Runs an action on every key-value pair, in parallel across the
+     * common fork-join pool. The action may be called from several threads
+     * at once and in no particular order, and must not change the map.
+     *
+     * @param action the action to run on each pair
+     * @throws IllegalArgumentException if action is null
+     */
+    public void parallelForEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("Action is null");
+        }
+        parallelStream().forEach(e -> action.accept(e.getKey(),
+                e.getValue()));
+    }
+
+    /**
+     * Combines every value with reducer, in parallel across the common
+     * fork-join pool. The reducer must be associative.
+     *
+     * @param reducer combines two values
+     * @throws IllegalArgumentException if reducer is null
+     * @return the combined value, or null if the map is empty
+     */
+    public V reduceValues(BinaryOperator<V> reducer) {
+        if (reducer == null) {
+            throw new IllegalArgumentException("Reducer is null");
+        }
+        return parallelStream().map(MapEntry::getValue).reduce(reducer)
+                .orElse(null);
+    }
+
+    /**
+     * Applies searchFunction to the key-value pairs in parallel across the
+     * common fork-join pool and returns a non-null result, stopping once
+     * one is found. If several pairs give a result, any one of them may be
+     * returned.
+     *
+     * @param <U> the result type
+     * @param searchFunction returns a result for a matching pair, or null
+     * @throws IllegalArgumentException if searchFunction is null
+     * @return a non-null result, or null if no pair gave one
+     */
+    public <U> U search(BiFunction<? super K, ? super V, ? extends U>
+            searchFunction) {
+        if (searchFunction == null) {
+            throw new IllegalArgumentException("Function is null");
+        }
+        return parallelStream()
+                .map(e -> searchFunction.apply(e.getKey(), e.getValue()))
+                .filter(Objects::nonNull).findAny().orElse(null);
+    }
+
+    /**
+     * Helper method for forEach.
+     * @param tab the backing array to walk
+     * @param start first bucket to visit
+     * @param action the action to run on each pair
+     * @param expectedModCount modCount when the walk started
+     */
+    private void forEachHelper(MapEntry<K, V>[] tab, int start,
+                               BiConsumer<? super K, ? super V> action,
+                               int expectedModCount) {
+        for (int i = start; i < tab.length; i++) {
+            for (MapEntry<K, V> curr = first(tab[i]); curr != null;
+                    curr = curr.getNext()) {
+                action.accept(curr.getKey(), curr.getValue());
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
             }
         }
     }
+
+    /**
+     * Turns recording of lookup and resize statistics on or off. While it
+     * is off, which is the default, each lookup and resize only pays for
+     * one check of this flag. Turning it off keeps the counts so far.
+     *
+     * @param enabled whether to record statistics
+     */
+    public void setStatsEnabled(boolean enabled) {
+        statsEnabled = enabled;
+    }
+
     /**
-     * DO NOT USE THIS METHOD IN YOUR CODE.  IT IS FOR TESTING ONLY
-     * @return the backing array of the data structure, not a copy.
+     * Sets the recorded lookup and resize counts back to zero.
      */
-    public MapEntry<K, V>[] toArray() {
-        return table;
+    public void resetStats() {
+        lookupCount = 0;
+        probeCount = 0;
+        resizeCount = 0;
+        totalResizeNanos = 0;
+        lastResizeNanos = 0;
+    }
+
+    /**
+     * Takes a snapshot of the shape of the map and of the statistics
+     * recorded so far. Building the chain length histogram walks every
+     * bucket, so this is O(n).
+     *
+     * @return the snapshot
+     */
+    public HashMapStats stats() {
+        return new HashMapStats(size, capacity(), loadFactor,
+                chainLengthHistogram(), lookupCount, probeCount, resizeCount,
+                totalResizeNanos, lastResizeNanos);
     }
 
-}
\ No newline at end of file
+    /**
+     * Registers a live view of this map's statistics with the platform
+     * MBean server, under the type HashMap and the given name. The view
+     * reads the map without locking it, so a map that is being changed
+     * may be reported slightly inconsistently.
+     *
+     * @param name the name attribute of the MBean
+     * @throws IllegalArgumentException if name is null or not a valid
+     * ObjectName value
+     * @throws IllegalStateException if this map is already registered or
+     * the registration fails
+     * @return the name the MBean was registered under
+     */
+    public ObjectName registerMBean(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Name is null");
+        }
+        if (mbeanName != null) {
+            throw new IllegalStateException("Map is already registered");
+        }
+        ObjectName objectName;
+        try {
+            objectName = new ObjectName("HashMap", "name", name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid MBean name", e);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(new StatsBean(), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register MBean", e);
+        }
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the MBean registered by registerMBean. Does nothing if this
+     * map is not registered.
+     *
+     * @throws IllegalStateException if the MBean could not be removed
+     */
+    public void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .unregisterMBean(mbeanName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister MBean", e);
+        }
+        mbeanName = null;
+    }
+
+    /**
+     * Finishes any incremental resize and returns the backing array, for
+     * HashMapSnapshot to walk. The array must not be changed.
+     *
+     * @return the backing array
+     */
+    MapEntry<K, V>[] snapshotTable() {
+        while (oldTable != null) {
+            migrateStep();
+        }
+        return table;
+    }
+
+    /**
+     * Puts a chain read from a snapshot into an empty bucket, converting it
+     * into a tree if it is too long and the backing array is long enough.
+     *
+     * @param index the bucket to fill
+     * @param head first entry of the chain
+     * @param count number of entries in the chain
+     * @throws IllegalArgumentException if the bucket does not exist or is
+     * already filled
+     */
+    void restoreBucket(int index, MapEntry<K, V> head, int count) {
+        if (index < 0 || index >= table.length || table[index] != null) {
+            throw new IllegalArgumentException("Corrupt bucket");
+        }
+        table[index] = head;
+        if (count > TreeBin.TREEIFY_THRESHOLD) {
+            treeifyBin(table, index);
+        }
+        size += count;
+        modCount++;
+    }
+
+    /**
+     * Returns whether this map uses power-of-two array lengths.
+     *
+     * @return whether power-of-two sizing is on
+     */
+    boolean usesPowerOfTwoSizing() {
+        return powerOfTwoSizing;
+    }
+
+    /**
+     * Returns whether this map spreads resizes over later calls.
+     *
+     * @return whether incremental resizing is on
+     */
+    boolean usesIncrementalResize() {
+        return incrementalResize;
+    }
+
+    /**
+     * Returns the load factor this map resizes at.
+     *
+     * @return the maximum load factor
+     */
+    double maxLoadFactor() {
+        return loadFactor;
+    }
+
+    /**
+     * Helper method to get the number of buckets, counting the old array's
+     * unmigrated buckets during an incremental resize.
+     * @return number of buckets
+     */
+    private int capacity() {
+        MapEntry<K, V>[] old = oldTable;
+        return table.length + (old == null ? 0 : old.length - migrateIndex);
+    }
+
+    /**
+     * Helper method for stats.
+     * Counts the buckets holding each number of entries; the last element
+     * counts the buckets converted into trees.
+     * @return the histogram
+     */
+    private int[] chainLengthHistogram() {
+        int[] histogram = new int[TreeBin.TREEIFY_THRESHOLD + 2];
+        MapEntry<K, V>[] old = oldTable;
+        if (old != null) {
+            histogramHelper(old, migrateIndex, histogram);
+        }
+        histogramHelper(table, 0, histogram);
+        return histogram;
+    }
+
+    /**
+     * Helper method for chainLengthHistogram.
+     * @param tab the backing array to walk
+     * @param start first bucket to count
+     * @param histogram the counts to add to
+     */
+    private void histogramHelper(MapEntry<K, V>[] tab, int start,
+                                 int[] histogram) {
+        int treeIndex = histogram.length - 1;
+        for (int i = start; i < tab.length; i++) {
+            if (tab[i] instanceof TreeBin) {
+                histogram[treeIndex]++;
+            } else {
+                int length = 0;
+                for (MapEntry<K, V> curr = tab[i]; curr != null;
+                        curr = curr.getNext()) {
+                    length++;
+                }
+                histogram[Math.min(length, treeIndex - 1)]++;
+            }
+        }
+    }
+
+    /**
+     * Helper method to get the first real entry of a bucket, skipping over
+     * the bin object of a bucket that has been converted into a tree.
+     * @param bucket the head of a bucket
+     * @return the first entry of the bucket's chain
+     */
+    private MapEntry<K, V> first(MapEntry<K, V> bucket) {
+        if (bucket instanceof TreeBin) {
+            return bucket.getNext();
+        }
+        return bucket;
+    }
+
+    /**
+     * Helper method to find the bucket index of a key.
+     * @param key the key to hash
+     * @param length length of the backing array being indexed
+     * @return index of the bucket the key belongs in
+     */
+    private int indexFor(K key, int length) {
+        if (powerOfTwoSizing) {
+            return spread(key.hashCode()) & (length - 1);
+        }
+        // Taking abs after the remainder keeps Integer.MIN_VALUE in range.
+        return Math.abs(key.hashCode() % length);
+    }
+
+    /**
+     * Helper method to get the smallest backing array length that holds a
+     * number of entries without going over the load factor, and is never
+     * below the starting size.
+     * @param entries number of entries to fit
+     * @return the array length
+     */
+    private int capacityFor(int entries) {
+        long needed = (long) Math.ceil(entries / loadFactor);
+        if (powerOfTwoSizing) {
+            long length = POWER_OF_TWO_STARTING_SIZE;
+            while (length < needed) {
+                length *= 2;
+            }
+            return (int) Math.min(length, 1 << 30);
+        }
+        if (needed <= STARTING_SIZE) {
+            return STARTING_SIZE;
+        }
+        // Keep the length odd, like the 2n + 1 lengths of resizeHelper.
+        return (int) Math.min(needed | 1, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * Helper method for putAll.
+     * Grows the backing array in one step, finishing any incremental
+     * migration first, if it cannot hold the given number of entries.
+     * @param entries number of entries the map must hold
+     */
+    private void ensureCapacity(int entries) {
+        int length = capacityFor(entries);
+        if (length <= table.length) {
+            return;
+        }
+        while (oldTable != null) {
+            migrateStep();
+        }
+        long start = statsEnabled ? System.nanoTime() : 0;
+        modCount++;
+        MapEntry<K, V>[] temp = table;
+        table = new MapEntry[length];
+        for (int i = 0; i < temp.length; i++) {
+            transfer(temp[i]);
+        }
+        recordResize(start);
+    }
+
+    /**
+     * Mixes the bits of a hash code so that the low bits used by the mask
+     * depend on all of them. This is the murmur3 32-bit finalizer.
+     * @param h the hash code to mix
+     * @return the mixed hash
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Helper method to pick the backing array that currently holds the
+     * bucket of a key. While a migration is in progress, buckets of the old
+     * array that have not been moved yet still own their keys.
+     * @param key the key to look up
+     * @return the backing array to search or insert into
+     */
+    private MapEntry<K, V>[] tableFor(K key) {
+        if (oldTable != null
+                && indexFor(key, oldTable.length) >= migrateIndex) {
+            return oldTable;
+        }
+        return table;
+    }
+
+    /**
+     * Helper method to resize.
+     * Resize to 2 * length of the array + 1, or to 2 * length of the array
+     * with power-of-two sizing,
+     * when adding if (size + 1) / length of the array
+     * is bigger than the load factor.
+     * With incremental resizing only the new array is allocated here and
+     * the entries are moved over by later calls to migrateStep.
+     */
+    private void resizeHelper() {
+        while (oldTable != null) {
+            migrateStep();
+        }
+        long start = statsEnabled ? System.nanoTime() : 0;
+        modCount++;
+        MapEntry<K, V>[] temp = table;
+        if (powerOfTwoSizing) {
+            table = new MapEntry[temp.length * 2];
+        } else {
+            table = new MapEntry[temp.length * 2 + 1];
+        }
+        if (incrementalResize) {
+            oldTable = temp;
+            migrateIndex = 0;
+        } else {
+            for (int i = 0; i < temp.length; i++) {
+                transfer(temp[i]);
+            }
+        }
+        recordResize(start);
+    }
+
+    /**
+     * Helper method to count a finished resize, if statistics are enabled.
+     * @param start System.nanoTime() when the resize started
+     */
+    private void recordResize(long start) {
+        if (statsEnabled) {
+            lastResizeNanos = System.nanoTime() - start;
+            totalResizeNanos += lastResizeNanos;
+            resizeCount++;
+        }
+    }
+
+    /**
+     * Helper method for incremental resizing.
+     * Moves the next MIGRATION_STEP old buckets into the new array, and
+     * drops the old array once every bucket has been moved.
+     * Moving buckets does not change what the map holds, so it does not
+     * count as a structural change. Iterators still see a consistent map
+     * because this is only called right after an add or remove that has
+     * already counted as one, and never from a read.
+     */
+    private void migrateStep() {
+        if (oldTable == null) {
+            return;
+        }
+        for (int i = 0; i < MIGRATION_STEP
+                && migrateIndex < oldTable.length; i++) {
+            transfer(oldTable[migrateIndex]);
+            oldTable[migrateIndex] = null;
+            migrateIndex++;
+        }
+        if (migrateIndex == oldTable.length) {
+            oldTable = null;
+            migrateIndex = 0;
+        }
+    }
+
+    /**
+     * Helper method to resize.
+     * Relinks every entry of a chain onto the end of its bucket in the
+     * current backing array, keeping the chain order. Buckets that grow past
+     * the treeify threshold are converted into trees if the array is long
+     * enough; otherwise they stay chains until the next add grows it.
+     * @param head first entry of the chain to move
+     */
+    private void transfer(MapEntry<K, V> head) {
+        MapEntry<K, V> curr = first(head);
+        while (curr != null) {
+            MapEntry<K, V> next = curr.getNext();
+            curr.setNext(null);
+            int hash = indexFor(curr.getKey(), table.length);
+            if (table[hash] instanceof TreeBin) {
+                ((TreeBin<K, V>) table[hash]).put(curr.getKey(),
+                        curr.getValue());
+            } else if (table[hash] == null) {
+                table[hash] = curr;
+            } else {
+                MapEntry<K, V> tail = table[hash];
+                int length = 1;
+                while (tail.getNext() != null) {
+                    tail = tail.getNext();
+                    length++;
+                }
+                tail.setNext(curr);
+                if (length + 1 > TreeBin.TREEIFY_THRESHOLD) {
+                    treeifyBin(table, hash);
+                }
+            }
+            curr = next;
+        }
+    }
+
+    /**
+     * Walks the entries of the map in place: the unmigrated buckets of the
+     * old array first, if a migration is in progress, then the current
+     * array.
+     */
+    private abstract class HashIterator<E> implements Iterator<E> {
+        private final MapEntry<K, V>[] old = oldTable;
+        private MapEntry<K, V>[] tab;
+        private int index;
+        private MapEntry<K, V> next;
+        private MapEntry<K, V> last;
+        private int expectedModCount = modCount;
+
+        /**
+         * Create an iterator positioned on the first entry.
+         */
+        HashIterator() {
+            if (old != null) {
+                tab = old;
+                index = migrateIndex;
+            } else {
+                tab = table;
+            }
+            advanceBucket();
+        }
+
+        /**
+         * Moves next to the first entry of the next non-empty bucket.
+         */
+        private void advanceBucket() {
+            while (next == null) {
+                if (index < tab.length) {
+                    next = first(tab[index++]);
+                } else if (tab == old) {
+                    tab = table;
+                    index = 0;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * Returns the next entry.
+         * @return the next entry
+         */
+        MapEntry<K, V> nextEntry() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next == null) {
+                throw new NoSuchElementException("No more entries");
+            }
+            last = next;
+            next = next.getNext();
+            if (next == null) {
+                advanceBucket();
+            }
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException("next() not called");
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeHelper(last.getKey());
+            last = null;
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * Spliterator over a range of buckets. During an incremental resize the
+     * unmigrated buckets of the old array come first and the current array
+     * follows, numbered as one range.
+     */
+    private class EntrySpliterator implements Spliterator<MapEntry<K, V>> {
+        private final MapEntry<K, V>[] old;
+        private final int oldStart;
+        private final int oldCount;
+        private final MapEntry<K, V>[] tab;
+        private final int expectedModCount;
+        private int index;
+        private int fence;
+        private MapEntry<K, V> current;
+
+        /**
+         * Create a spliterator over every bucket.
+         */
+        EntrySpliterator() {
+            old = oldTable;
+            oldStart = migrateIndex;
+            oldCount = old == null ? 0 : old.length - oldStart;
+            tab = table;
+            expectedModCount = modCount;
+            fence = oldCount + tab.length;
+        }
+
+        /**
+         * Create a spliterator over part of the buckets of another.
+         * @param parent the spliterator being split
+         * @param index first bucket of the range
+         * @param fence one past the last bucket of the range
+         */
+        EntrySpliterator(EntrySpliterator parent, int index, int fence) {
+            old = parent.old;
+            oldStart = parent.oldStart;
+            oldCount = parent.oldCount;
+            tab = parent.tab;
+            expectedModCount = parent.expectedModCount;
+            this.index = index;
+            this.fence = fence;
+        }
+
+        @Override
+        public Spliterator<MapEntry<K, V>> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (current != null || mid <= index) {
+                return null;
+            }
+            EntrySpliterator prefix = new EntrySpliterator(this, index, mid);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super MapEntry<K, V>> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            while (current == null && index < fence) {
+                current = first(bucket(index++));
+            }
+            if (current == null) {
+                return false;
+            }
+            MapEntry<K, V> entry = current;
+            current = current.getNext();
+            action.accept(entry);
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(
+                Consumer<? super MapEntry<K, V>> action) {
+            if (action == null) {
+                throw new NullPointerException();
+            }
+            for (MapEntry<K, V> curr = current; curr != null;
+                    curr = curr.getNext()) {
+                action.accept(curr);
+            }
+            current = null;
+            for (; index < fence; index++) {
+                for (MapEntry<K, V> curr = first(bucket(index)); curr != null;
+                        curr = curr.getNext()) {
+                    action.accept(curr);
+                }
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            int total = oldCount + tab.length;
+            return (long) size * (fence - index) / total;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        /**
+         * Helper method to get a bucket by its number in the range.
+         * @param i the bucket's number
+         * @return the head of the bucket
+         */
+        private MapEntry<K, V> bucket(int i) {
+            return i < oldCount ? old[oldStart + i] : tab[i - oldCount];
+        }
+    }
+
+    /**
+     * Live view of the keys of the map.
+     */
+    private class KeySetView extends AbstractSet<K> {
+        @Override
+        public Iterator<K> iterator() {
+            return new HashIterator<K>() {
+                @Override
+                public K next() {
+                    return nextEntry().getKey();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o != null && HashMap.this.contains((K) o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o != null && removeHelper((K) o) != null;
+        }
+
+        @Override
+        public void clear() {
+            HashMap.this.clear();
+        }
+    }
+
+    /**
+     * Live view of the values of the map.
+     */
+    private class ValuesView extends AbstractList<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new HashIterator<V>() {
+                @Override
+                public V next() {
+                    return nextEntry().getValue();
+                }
+            };
+        }
+
+        @Override
+        public V get(int index) {
+            return entryAt(index).getValue();
+        }
+
+        @Override
+        public V set(int index, V value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Key or value is null");
+            }
+            MapEntry<K, V> entry = entryAt(index);
+            V toReturn = entry.getValue();
+            entry.setValue(value);
+            return toReturn;
+        }
+
+        @Override
+        public V remove(int index) {
+            MapEntry<K, V> entry = entryAt(index);
+            removeHelper(entry.getKey());
+            return entry.getValue();
+        }
+
+        @Override
+        public ListIterator<V> listIterator(int index) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+            return new ValuesListIterator(index);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            int index = 0;
+            for (V value : this) {
+                if (value.equals(o)) {
+                    return index;
+                }
+                index++;
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            int index = 0;
+            int found = -1;
+            for (V value : this) {
+                if (value.equals(o)) {
+                    found = index;
+                }
+                index++;
+            }
+            return found;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof List)) {
+                return false;
+            }
+            Iterator<V> mine = iterator();
+            Iterator<?> theirs = ((List<?>) o).iterator();
+            while (mine.hasNext() && theirs.hasNext()) {
+                if (!mine.next().equals(theirs.next())) {
+                    return false;
+                }
+            }
+            return !mine.hasNext() && !theirs.hasNext();
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 1;
+            for (V value : this) {
+                hash = 31 * hash + value.hashCode();
+            }
+            return hash;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            HashMap.this.clear();
+        }
+    }
+
+    /**
+     * List iterator over the values. Moving forward walks the backing array
+     * like the other iterators, but moving back has to walk it again from
+     * the start, so previous is O(n). Values cannot be added without a key.
+     */
+    private class ValuesListIterator implements ListIterator<V> {
+        private HashIterator<MapEntry<K, V>> ahead;
+        private int cursor;
+        private MapEntry<K, V> last;
+        private int lastIndex;
+        private int expectedModCount = modCount;
+
+        /**
+         * Create an iterator positioned before the given value.
+         * @param index position of the first value next returns
+         */
+        ValuesListIterator(int index) {
+            ahead = entriesFrom(index);
+            cursor = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor < size;
+        }
+
+        @Override
+        public V next() {
+            checkForComodification();
+            if (cursor >= size) {
+                throw new NoSuchElementException("No more entries");
+            }
+            if (ahead == null) {
+                ahead = entriesFrom(cursor);
+            }
+            last = ahead.nextEntry();
+            lastIndex = cursor++;
+            return last.getValue();
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @Override
+        public V previous() {
+            checkForComodification();
+            if (cursor <= 0) {
+                throw new NoSuchElementException("No more entries");
+            }
+            cursor--;
+            last = entriesFrom(cursor).nextEntry();
+            lastIndex = cursor;
+            ahead = null;
+            return last.getValue();
+        }
+
+        @Override
+        public int nextIndex() {
+            return cursor;
+        }
+
+        @Override
+        public int previousIndex() {
+            return cursor - 1;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException("next() not called");
+            }
+            checkForComodification();
+            removeHelper(last.getKey());
+            if (lastIndex < cursor) {
+                cursor--;
+            }
+            last = null;
+            ahead = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(V value) {
+            if (last == null) {
+                throw new IllegalStateException("next() not called");
+            }
+            if (value == null) {
+                throw new IllegalArgumentException("Key or value is null");
+            }
+            checkForComodification();
+            last.setValue(value);
+        }
+
+        @Override
+        public void add(V value) {
+            throw new UnsupportedOperationException(
+                    "Values cannot be added without a key");
+        }
+
+        /**
+         * Helper method to fail fast if the map was changed behind this
+         * iterator.
+         */
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * DO NOT USE THIS METHOD IN YOUR CODE.  IT IS FOR TESTING ONLY
+     * @return the backing array of the data structure, not a copy, unless
+     * some buckets are trees; then a copy holding the first entry of each
+     * tree's chain in its place.
+     */
+    public MapEntry<K, V>[] toArray() {
+        MapEntry<K, V>[] copy = null;
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] instanceof TreeBin) {
+                if (copy == null) {
+                    copy = table.clone();
+                }
+                copy[i] = first(table[i]);
+            }
+        }
+        return copy == null ? table : copy;
+    }
+
+    /**
+     * Live statistics of the map, registered by registerMBean.
+     */
+    private class StatsBean implements HashMapStatsMXBean {
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public int getCapacity() {
+            return capacity();
+        }
+
+        @Override
+        public double getLoadFactor() {
+            return (double) size / capacity();
+        }
+
+        @Override
+        public double getMaxLoadFactor() {
+            return loadFactor;
+        }
+
+        @Override
+        public int[] getChainLengthHistogram() {
+            return chainLengthHistogram();
+        }
+
+        @Override
+        public long getLookupCount() {
+            return lookupCount;
+        }
+
+        @Override
+        public double getAverageProbesPerLookup() {
+            long lookups = lookupCount;
+            return lookups == 0 ? 0 : (double) probeCount / lookups;
+        }
+
+        @Override
+        public long getResizeCount() {
+            return resizeCount;
+        }
+
+        @Override
+        public long getTotalResizeNanos() {
+            return totalResizeNanos;
+        }
+
+        @Override
+        public long getLastResizeNanos() {
+            return lastResizeNanos;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Throughput benchmark for HashMap, run side by side with
+ * {@code java.util.HashMap}.
+ *
+ * Every combination of map, load factor, key distribution and size is
+ * filled from empty and then measured for add, get, contains, remove,
+ * keySet iteration and values iteration. The maps are HashMap with
+ * modulo indexing, HashMap with power-of-two indexing, CuckooHashMap and
+ * {@code java.util.HashMap}. Keys are sequential, uniformly random,
+ * Zipfian with skew 0.99, or colliding (1024 keys per hash code). Each
+ * case is warmed up before it is measured, and a checksum of the results
+ * is printed so the JIT cannot drop the work.
+ *
+ * Run with {@code java HashMapBenchmark [sizes] [rounds]}, for example
+ * {@code java -Xmx64g HashMapBenchmark 1000,1000000,100000000 3}. Sizes
+ * default to 1000, 100000 and 1000000, and rounds to 3.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class HashMapBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {1000, 100000, 1000000};
+    private static final double[] LOAD_FACTORS = {0.5, 0.67, 0.9};
+    private static final String[] DISTRIBUTIONS = {
+        "sequential", "uniform", "zipfian", "colliding"
+    };
+    private static final String[] OPERATIONS = {
+        "add", "get", "contains", "remove", "keySet", "values"
+    };
+    private static final int WARMUP_ROUNDS = 2;
+    private static final double ZIPF_SKEW = 0.99;
+    private static final int KEYS_PER_COLLIDING_HASH = 1024;
+
+    private static long checksum;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional comma separated sizes, then optional number of
+     * measured rounds
+     */
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        int rounds = 3;
+        if (args.length > 0) {
+            String[] parts = args[0].split(",");
+            sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                sizes[i] = Integer.parseInt(parts[i].trim());
+            }
+        }
+        if (args.length > 1) {
+            rounds = Integer.parseInt(args[1]);
+        }
+        System.out.printf("%-18s %-5s %-11s %-10s %-9s %10s%n", "map", "lf",
+                "keys", "size", "op", "ns/op");
+        for (int size : sizes) {
+            for (String distribution : DISTRIBUTIONS) {
+                Workload workload = new Workload(distribution, size);
+                for (double loadFactor : LOAD_FACTORS) {
+                    runCase("HashMap", loadFactor, workload, rounds,
+                        () -> new HashMap<>(0, loadFactor, false, false));
+                    runCase("HashMap pow2", loadFactor, workload, rounds,
+                        () -> new HashMap<>(0, loadFactor, false, true));
+                    runCase("CuckooHashMap", loadFactor, workload, rounds,
+                        () -> new CuckooHashMap<>(loadFactor));
+                    runCase("java.util.HashMap", loadFactor, workload,
+                        rounds, () -> new JdkMap<>(loadFactor));
+                }
+            }
+        }
+        System.out.println("checksum " + checksum);
+    }
+
+    /**
+     * Helper method to measure every operation for one map and workload.
+     * @param name name of the map to print
+     * @param loadFactor load factor the map was built with
+     * @param workload the keys to use
+     * @param rounds number of measured rounds
+     * @param factory creates an empty map
+     */
+    private static void runCase(String name, double loadFactor,
+                                Workload workload, int rounds,
+                                Supplier<HashMapInterface<Object, Integer>>
+                                        factory) {
+        long[] nanos = new long[OPERATIONS.length];
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+            long[] elapsed = runRound(factory.get(), workload);
+            if (round >= WARMUP_ROUNDS) {
+                for (int i = 0; i < nanos.length; i++) {
+                    nanos[i] += elapsed[i];
+                }
+            }
+        }
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            double perOp = (double) nanos[i]
+                    / ((long) rounds * workload.size);
+            System.out.printf("%-18s %-5.2f %-11s %-10d %-9s %10.1f%n", name,
+                    loadFactor, workload.distribution, workload.size,
+                    OPERATIONS[i], perOp);
+        }
+    }
+
+    /**
+     * Helper method to run every operation once, in the order of
+     * OPERATIONS, leaving the map empty.
+     * @param map an empty map
+     * @param workload the keys to use
+     * @return elapsed nanoseconds per operation
+     */
+    private static long[] runRound(HashMapInterface<Object, Integer> map,
+                                   Workload workload) {
+        long[] elapsed = new long[OPERATIONS.length];
+        Object[] keys = workload.keys;
+        Object[] lookups = workload.lookups;
+        Object[] misses = workload.misses;
+        long sum = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < keys.length; i++) {
+            map.add(keys[i], i);
+        }
+        elapsed[0] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Object key : lookups) {
+            sum += map.get(key);
+        }
+        elapsed[1] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < lookups.length; i++) {
+            if (map.contains((i & 1) == 0 ? lookups[i] : misses[i])) {
+                sum++;
+            }
+        }
+        elapsed[2] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Object key : map.keySet()) {
+            sum += key.hashCode();
+        }
+        elapsed[4] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Integer value : map.values()) {
+            sum += value;
+        }
+        elapsed[5] = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Object key : keys) {
+            sum += map.remove(key);
+        }
+        elapsed[3] = System.nanoTime() - start;
+
+        checksum += sum + map.size();
+        return elapsed;
+    }
+
+    /**
+     * The keys for one distribution and size: distinct keys to insert, keys
+     * to look up drawn from the distribution, and keys that are absent.
+     */
+    private static class Workload {
+        private final String distribution;
+        private final int size;
+        private final Object[] keys;
+        private final Object[] lookups;
+        private final Object[] misses;
+
+        /**
+         * Create a workload.
+         * @param distribution one of DISTRIBUTIONS
+         * @param size number of distinct keys
+         */
+        Workload(String distribution, int size) {
+            this.distribution = distribution;
+            this.size = size;
+            Random random = new Random(size);
+            keys = new Object[size];
+            lookups = new Object[size];
+            misses = new Object[size];
+            if (distribution.equals("sequential")) {
+                for (int i = 0; i < size; i++) {
+                    keys[i] = i;
+                    lookups[i] = i;
+                    misses[i] = -i - 1;
+                }
+            } else if (distribution.equals("colliding")) {
+                for (int i = 0; i < size; i++) {
+                    keys[i] = new CollidingKey(i);
+                    misses[i] = new CollidingKey(-i - 1);
+                }
+                for (int i = 0; i < size; i++) {
+                    lookups[i] = keys[random.nextInt(size)];
+                }
+            } else {
+                Set<Integer> seen = new HashSet<>();
+                int i = 0;
+                while (i < size) {
+                    int key = random.nextInt();
+                    if (seen.add(key)) {
+                        keys[i++] = key;
+                    }
+                }
+                for (int j = 0; j < size; j++) {
+                    int miss = random.nextInt();
+                    while (seen.contains(miss)) {
+                        miss = random.nextInt();
+                    }
+                    misses[j] = miss;
+                }
+                if (distribution.equals("zipfian")) {
+                    Zipfian zipf = new Zipfian(size, ZIPF_SKEW, random);
+                    for (int j = 0; j < size; j++) {
+                        lookups[j] = keys[zipf.next()];
+                    }
+                } else {
+                    for (int j = 0; j < size; j++) {
+                        lookups[j] = keys[random.nextInt(size)];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws ranks from a Zipfian distribution without a table of
+     * probabilities, using the method of Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases".
+     */
+    private static class Zipfian {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+        private final Random random;
+
+        /**
+         * Create a generator.
+         * @param n number of ranks
+         * @param theta skew, between 0 and 1
+         * @param random source of randomness
+         */
+        Zipfian(int n, double theta, Random random) {
+            this.n = n;
+            this.theta = theta;
+            this.random = random;
+            alpha = 1 / (1 - theta);
+            zetaN = zeta(n, theta);
+            eta = (1 - Math.pow(2.0 / n, 1 - theta))
+                    / (1 - zeta(2, theta) / zetaN);
+        }
+
+        /**
+         * Draws the next rank; rank 0 is the most frequent.
+         * @return a rank in [0, n)
+         */
+        int next() {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return Math.min(1, n - 1);
+            }
+            int rank = (int) (n * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(rank, n - 1);
+        }
+
+        /**
+         * Helper method to compute the generalized harmonic number.
+         * @param n number of terms
+         * @param theta exponent
+         * @return sum of 1 / i^theta for i from 1 to n
+         */
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * A key that shares its hash code with KEYS_PER_COLLIDING_HASH others.
+     */
+    private static class CollidingKey implements Comparable<CollidingKey> {
+        private final int id;
+
+        /**
+         * Create a colliding key.
+         * @param id the key's identity
+         */
+        CollidingKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Math.floorDiv(id, KEYS_PER_COLLIDING_HASH);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).id == id;
+        }
+
+        @Override
+        public int compareTo(CollidingKey other) {
+            return Integer.compare(id, other.id);
+        }
+    }
+
+    /**
+     * Adapts {@code java.util.HashMap} to HashMapInterface so both maps run
+     * through the same loops.
+     */
+    private static class JdkMap<K, V> implements HashMapInterface<K, V> {
+        private final java.util.HashMap<K, V> map;
+
+        /**
+         * Create an adapter around an empty map.
+         * @param loadFactor load factor of the map
+         */
+        JdkMap(double loadFactor) {
+            map = new java.util.HashMap<>(16, (float) loadFactor);
+        }
+
+        @Override
+        public V add(K key, V value) {
+            return map.put(key, value);
+        }
+
+        @Override
+        public V remove(K key) {
+            return map.remove(key);
+        }
+
+        @Override
+        public V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean contains(K key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return map.keySet();
+        }
+
+        @Override
+        public List<V> values() {
+            return new ArrayList<>(map.values());
+        }
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves the contents of a HashMap to a binary file and loads them back.
+ *
+ * The file holds a header with the map's settings and backing array length,
+ * then each non-empty bucket as its index, its number of entries and the
+ * entries themselves, written with the given serializers. Loading allocates
+ * a backing array of the saved length once and links every bucket straight
+ * back into place, so no key is hashed and nothing is resized. For the
+ * saved bucket indexes to be right, the hash code of a key must be the same
+ * in every run, which holds for the built-in serializers' types.
+ *
+ * Files are written and read through a FileChannel in large blocks. A
+ * snapshot is first written to a sibling file that is then moved over the
+ * target, so a crash never leaves a half-written snapshot behind.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public final class HashMapSnapshot {
+
+    private static final int MAGIC = 0x484d534e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    private static final int BUCKET_HEADER_SIZE = 8;
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int POWER_OF_TWO_FLAG = 1;
+    private static final int INCREMENTAL_FLAG = 2;
+
+    /**
+     * Cannot be instantiated.
+     */
+    private HashMapSnapshot() {
+    }
+
+    /**
+     * Writes every entry of a map to a file, replacing the file if it
+     * exists. An incremental resize in progress is finished first.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map the map to save
+     * @param file the file to write
+     * @param keySerializer converts keys to bytes
+     * @param valueSerializer converts values to bytes
+     * @throws IllegalArgumentException if any argument is null
+     * @throws java.io.UncheckedIOException if the file cannot be written
+     */
+    public static <K, V> void write(HashMap<K, V> map, Path file,
+                                    Serializer<K> keySerializer,
+                                    Serializer<V> valueSerializer) {
+        if (map == null || file == null || keySerializer == null
+                || valueSerializer == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        MapEntry<K, V>[] table = map.snapshotTable();
+        int entrySize = keySerializer.size() + valueSerializer.size();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                Math.max(BLOCK_SIZE, BUCKET_HEADER_SIZE + entrySize));
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                buffer.putInt(MAGIC);
+                buffer.putInt(VERSION);
+                buffer.putInt(flags(map.usesPowerOfTwoSizing(),
+                        map.usesIncrementalResize()));
+                buffer.putInt(keySerializer.size());
+                buffer.putInt(valueSerializer.size());
+                buffer.putInt(table.length);
+                buffer.putInt(map.size());
+                buffer.putDouble(map.maxLoadFactor());
+                for (int i = 0; i < table.length; i++) {
+                    if (table[i] == null) {
+                        continue;
+                    }
+                    ensureRoom(out, buffer, BUCKET_HEADER_SIZE);
+                    buffer.putInt(i);
+                    buffer.putInt(countEntries(table[i]));
+                    for (MapEntry<K, V> curr = first(table[i]); curr != null;
+                            curr = curr.getNext()) {
+                        ensureRoom(out, buffer, entrySize);
+                        keySerializer.write(curr.getKey(), buffer);
+                        valueSerializer.write(curr.getValue(), buffer);
+                    }
+                }
+                // Write out whatever is still buffered.
+                ensureRoom(out, buffer, buffer.capacity());
+                out.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads a map saved by write.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param file the file to read
+     * @param keySerializer converts bytes to keys
+     * @param valueSerializer converts bytes to values
+     * @throws IllegalArgumentException if any argument is null, or if the
+     * file is not a snapshot written with serializers of the same sizes
+     * @throws java.io.UncheckedIOException if the file cannot be read
+     * @return the loaded map
+     */
+    public static <K, V> HashMap<K, V> read(Path file,
+                                            Serializer<K> keySerializer,
+                                            Serializer<V> valueSerializer) {
+        if (file == null || keySerializer == null
+                || valueSerializer == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        int entrySize = keySerializer.size() + valueSerializer.size();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                Math.max(BLOCK_SIZE, BUCKET_HEADER_SIZE + entrySize));
+        buffer.flip();
+        try (FileChannel in = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ensureAvailable(in, buffer, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IllegalArgumentException("Not a HashMap snapshot");
+            }
+            int flags = buffer.getInt();
+            if (buffer.getInt() != keySerializer.size()
+                    || buffer.getInt() != valueSerializer.size()) {
+                throw new IllegalArgumentException(
+                        "Serializer sizes do not match the snapshot");
+            }
+            int capacity = buffer.getInt();
+            int size = buffer.getInt();
+            double loadFactor = buffer.getDouble();
+            if (capacity <= 0 || size < 0 || !(loadFactor > 0)) {
+                throw new IllegalArgumentException("Corrupt snapshot header");
+            }
+            HashMap<K, V> map = HashMap.withTableLength(capacity,
+                    loadFactor, (flags & INCREMENTAL_FLAG) != 0,
+                    (flags & POWER_OF_TWO_FLAG) != 0);
+            while (map.size() < size) {
+                ensureAvailable(in, buffer, BUCKET_HEADER_SIZE);
+                int index = buffer.getInt();
+                int count = buffer.getInt();
+                if (count <= 0 || count > size - map.size()) {
+                    throw new IllegalArgumentException("Corrupt bucket");
+                }
+                MapEntry<K, V> head = null;
+                MapEntry<K, V> tail = null;
+                for (int j = 0; j < count; j++) {
+                    ensureAvailable(in, buffer, entrySize);
+                    MapEntry<K, V> entry = new MapEntry<>(
+                            keySerializer.read(buffer),
+                            valueSerializer.read(buffer));
+                    if (head == null) {
+                        head = entry;
+                    } else {
+                        tail.setNext(entry);
+                    }
+                    tail = entry;
+                }
+                map.restoreBucket(index, head, count);
+            }
+            return map;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method for write.
+     * Writes out the buffered bytes if fewer than needed bytes are free.
+     * @param out the channel to write to
+     * @param buffer the buffer being filled
+     * @param needed number of bytes about to be put
+     * @throws IOException if the channel cannot be written
+     */
+    private static void ensureRoom(FileChannel out, ByteBuffer buffer,
+                                   int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Helper method for read.
+     * Reads more of the file if fewer than needed bytes are buffered.
+     * @param in the channel to read from
+     * @param buffer the buffer being drained
+     * @param needed number of bytes about to be read
+     * @throws IOException if the channel cannot be read
+     * @throws IllegalArgumentException if the file ends too early
+     */
+    private static void ensureAvailable(FileChannel in, ByteBuffer buffer,
+                                        int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (in.read(buffer) < 0) {
+                throw new IllegalArgumentException("Snapshot is truncated");
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Helper method to count the entries of a bucket.
+     * @param bucket the head of a bucket
+     * @return number of entries in it
+     */
+    private static int countEntries(MapEntry<?, ?> bucket) {
+        if (bucket instanceof TreeBin) {
+            return ((TreeBin<?, ?>) bucket).size();
+        }
+        int count = 0;
+        for (MapEntry<?, ?> curr = bucket; curr != null;
+                curr = curr.getNext()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Helper method to get the first entry of a bucket's chain.
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param bucket the head of a bucket
+     * @return the first entry, skipping a tree bin
+     */
+    private static <K, V> MapEntry<K, V> first(MapEntry<K, V> bucket) {
+        return bucket instanceof TreeBin ? bucket.getNext() : bucket;
+    }
+
+    /**
+     * Packs the settings of a map into the header's flags.
+     * @param powerOfTwoSizing whether the map uses power-of-two lengths
+     * @param incrementalResize whether the map resizes incrementally
+     * @return the flags
+     */
+    private static int flags(boolean powerOfTwoSizing,
+                             boolean incrementalResize) {
+        return (powerOfTwoSizing ? POWER_OF_TWO_FLAG : 0)
+                | (incrementalResize ? INCREMENTAL_FLAG : 0);
+    }
+}
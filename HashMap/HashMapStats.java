@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * A snapshot of the shape and recorded activity of a HashMap, taken by
+ * {@code HashMap.stats()}. The chain lengths and load are read from the
+ * backing array when the snapshot is taken; the lookup and resize counts
+ * are only recorded while statistics are enabled on the map.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public final class HashMapStats implements HashMapStatsMXBean {
+
+    private final int size;
+    private final int capacity;
+    private final double maxLoadFactor;
+    private final int[] chainLengthHistogram;
+    private final long lookupCount;
+    private final long probeCount;
+    private final long resizeCount;
+    private final long totalResizeNanos;
+    private final long lastResizeNanos;
+
+    /**
+     * Create a snapshot.
+     *
+     * @param size number of entries
+     * @param capacity length of the backing array
+     * @param maxLoadFactor the load factor the map resizes at
+     * @param chainLengthHistogram number of buckets of each length
+     * @param lookupCount number of lookups recorded
+     * @param probeCount number of entries compared by those lookups
+     * @param resizeCount number of resizes recorded
+     * @param totalResizeNanos time spent in those resizes
+     * @param lastResizeNanos time spent in the last resize
+     */
+    HashMapStats(int size, int capacity, double maxLoadFactor,
+                 int[] chainLengthHistogram, long lookupCount,
+                 long probeCount, long resizeCount, long totalResizeNanos,
+                 long lastResizeNanos) {
+        this.size = size;
+        this.capacity = capacity;
+        this.maxLoadFactor = maxLoadFactor;
+        this.chainLengthHistogram = chainLengthHistogram;
+        this.lookupCount = lookupCount;
+        this.probeCount = probeCount;
+        this.resizeCount = resizeCount;
+        this.totalResizeNanos = totalResizeNanos;
+        this.lastResizeNanos = lastResizeNanos;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public double getLoadFactor() {
+        return (double) size / capacity;
+    }
+
+    @Override
+    public double getMaxLoadFactor() {
+        return maxLoadFactor;
+    }
+
+    @Override
+    public int[] getChainLengthHistogram() {
+        return chainLengthHistogram.clone();
+    }
+
+    /**
+     * Returns the length of the longest plain chain, not counting buckets
+     * that have been converted into trees.
+     *
+     * @return the longest chain length
+     */
+    public int getLongestChain() {
+        for (int i = chainLengthHistogram.length - 2; i > 0; i--) {
+            if (chainLengthHistogram[i] != 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public long getLookupCount() {
+        return lookupCount;
+    }
+
+    @Override
+    public double getAverageProbesPerLookup() {
+        return lookupCount == 0 ? 0 : (double) probeCount / lookupCount;
+    }
+
+    @Override
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    @Override
+    public long getTotalResizeNanos() {
+        return totalResizeNanos;
+    }
+
+    @Override
+    public long getLastResizeNanos() {
+        return lastResizeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HashMapStats{size=%d, capacity=%d, load=%.3f/"
+                + "%.3f, chains=%s, lookups=%d, probes/lookup=%.3f, "
+                + "resizes=%d, resizeNanos=%d, lastResizeNanos=%d}", size,
+                capacity, getLoadFactor(), maxLoadFactor,
+                Arrays.toString(chainLengthHistogram), lookupCount,
+                getAverageProbesPerLookup(), resizeCount, totalResizeNanos,
+                lastResizeNanos);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Management interface for watching a HashMap over JMX. Every attribute is
+ * read from the live map when it is requested, so a monitoring client that
+ * polls it sees the load factor and chain lengths change over time.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public interface HashMapStatsMXBean {
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return number of entries
+     */
+    int getSize();
+
+    /**
+     * Returns the length of the backing array.
+     *
+     * @return number of buckets
+     */
+    int getCapacity();
+
+    /**
+     * Returns the current ratio of size to capacity.
+     *
+     * @return the current load factor
+     */
+    double getLoadFactor();
+
+    /**
+     * Returns the load factor the map resizes at.
+     *
+     * @return the maximum load factor
+     */
+    double getMaxLoadFactor();
+
+    /**
+     * Returns how many buckets hold each number of entries. Element i is the
+     * number of buckets with i entries, and the last element counts every
+     * bucket that has been converted into a tree.
+     *
+     * @return the chain length histogram
+     */
+    int[] getChainLengthHistogram();
+
+    /**
+     * Returns the number of key lookups recorded, made by get, contains,
+     * getOrDefault and the compute and merge methods.
+     *
+     * @return number of lookups
+     */
+    long getLookupCount();
+
+    /**
+     * Returns the average number of entries compared per lookup.
+     *
+     * @return average probes per lookup, 0 if there were none
+     */
+    double getAverageProbesPerLookup();
+
+    /**
+     * Returns the number of resizes recorded.
+     *
+     * @return number of resizes
+     */
+    long getResizeCount();
+
+    /**
+     * Returns the total time spent resizing.
+     *
+     * @return nanoseconds spent in resizes
+     */
+    long getTotalResizeNanos();
+
+    /**
+     * Returns the time the most recent resize took.
+     *
+     * @return nanoseconds spent in the last resize, 0 if there was none
+     */
+    long getLastResizeNanos();
+}
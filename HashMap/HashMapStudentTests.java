@@ -1,10 +1,37 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * These tests are NOT exhaustive. You should definitely write your own.
@@ -16,6 +43,12 @@ public class HashMapStudentTests {
 
     private HashMap<MyString, String> directory;
     private static final int TIMEOUT = 200;
+    private static final int CONCURRENT_TIMEOUT = 10000;
+    private static final int THREADS = 4;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+    private static final long HOUR = TimeUnit.HOURS.toNanos(1);
+    private static final long DAY = TimeUnit.DAYS.toNanos(1);
 
     @Before
     public void setUp() {
@@ -115,6 +148,1564 @@ public class HashMapStudentTests {
         directory.get(new MyString(""));
     }
 
+    @Test(timeout = TIMEOUT)
+    public void testIntObjectRemoveAcrossWrappedRun() {
+        // Keys whose home slot is one of the last two slots or the first,
+        // so their run wraps around the end of the backing arrays. Key 0
+        // always hashes to slot 0.
+        int mask = IntObjectHashMap.STARTING_CAPACITY - 1;
+        List<Integer> run = new ArrayList<>();
+        run.add(0);
+        for (int k = -1; run.size() < 8; k = k < 0 ? -k : -k - 1) {
+            int home = IntObjectHashMap.mix(k) & mask;
+            if (home >= mask - 1 || home == 0) {
+                run.add(k);
+            }
+        }
+        for (Integer removed : run) {
+            IntObjectHashMap<String> map = new IntObjectHashMap<>();
+            for (int key : run) {
+                assertNull(map.add(key, "" + key));
+            }
+            assertEquals("" + removed, map.remove(removed));
+            assertEquals(run.size() - 1, map.size());
+            assertTrue(!map.contains(removed));
+            for (int key : run) {
+                if (key != removed) {
+                    assertEquals("" + key, map.get(key));
+                }
+            }
+        }
+
+        // Remove the whole run one key at a time, checking the rest.
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        for (int key : run) {
+            map.add(key, "" + key);
+        }
+        for (int i = 0; i < run.size(); i++) {
+            assertEquals("" + run.get(i), map.remove((int) run.get(i)));
+            for (int j = i + 1; j < run.size(); j++) {
+                assertEquals("" + run.get(j), map.get((int) run.get(j)));
+            }
+        }
+        assertEquals(0, map.size());
+        try {
+            map.remove(0);
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testIntObjectGrowthAndViews() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        Set<Integer> expectedKeys = new HashSet<>();
+        for (int i = -5000; i < 5000; i++) {
+            assertNull(map.add(i * 7919, "" + i));
+            expectedKeys.add(i * 7919);
+        }
+        assertEquals(10000, map.size());
+        assertEquals("-5000", map.add(-5000 * 7919, "-5000"));
+        assertEquals(10000, map.size());
+        for (int i = -5000; i < 5000; i++) {
+            assertEquals("" + i, map.get(i * 7919));
+            assertTrue(map.contains(Integer.valueOf(i * 7919)));
+        }
+        assertTrue(!map.contains(1));
+        assertEquals(expectedKeys, map.keySet());
+        List<String> values = map.values();
+        assertEquals(10000, values.size());
+        assertEquals(10000, new HashSet<>(values).size());
+
+        for (int i = -5000; i < 5000; i += 2) {
+            assertEquals("" + i, map.remove(Integer.valueOf(i * 7919)));
+            expectedKeys.remove(i * 7919);
+        }
+        assertEquals(5000, map.size());
+        assertEquals(expectedKeys, map.keySet());
+        for (int i = -4999; i < 5000; i += 2) {
+            assertEquals("" + i, map.get(Integer.valueOf(i * 7919)));
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertTrue(map.keySet().isEmpty());
+        assertTrue(map.values().isEmpty());
+        try {
+            map.add(1, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLongObjectRemoveAcrossWrappedRun() {
+        int mask = LongObjectHashMap.STARTING_CAPACITY - 1;
+        List<Long> run = new ArrayList<>();
+        run.add(0L);
+        for (long k = -1; run.size() < 8; k = k < 0 ? -k : -k - 1) {
+            long key = k * 0x100000001L;
+            int home = LongObjectHashMap.mix(key) & mask;
+            if (home >= mask - 1 || home == 0) {
+                run.add(key);
+            }
+        }
+        for (Long removed : run) {
+            LongObjectHashMap<String> map = new LongObjectHashMap<>();
+            for (long key : run) {
+                assertNull(map.add(key, "" + key));
+            }
+            assertEquals("" + removed, map.remove(removed));
+            assertEquals(run.size() - 1, map.size());
+            assertTrue(!map.contains(removed));
+            for (long key : run) {
+                if (key != removed) {
+                    assertEquals("" + key, map.get(key));
+                }
+            }
+        }
+
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        for (long key : run) {
+            map.add(key, "" + key);
+        }
+        for (int i = 0; i < run.size(); i++) {
+            assertEquals("" + run.get(i), map.remove((long) run.get(i)));
+            for (int j = i + 1; j < run.size(); j++) {
+                assertEquals("" + run.get(j), map.get((long) run.get(j)));
+            }
+        }
+        assertEquals(0, map.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLongObjectGrowthAndViews() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        Set<Long> expectedKeys = new HashSet<>();
+        for (int i = -5000; i < 5000; i++) {
+            assertNull(map.add(i * 0x100000001L, "" + i));
+            expectedKeys.add(i * 0x100000001L);
+        }
+        assertNull(map.add(Long.MIN_VALUE, "min"));
+        assertNull(map.add(Long.MAX_VALUE, "max"));
+        expectedKeys.add(Long.MIN_VALUE);
+        expectedKeys.add(Long.MAX_VALUE);
+        assertEquals(10002, map.size());
+        for (int i = -5000; i < 5000; i++) {
+            assertEquals("" + i, map.get(i * 0x100000001L));
+        }
+        assertEquals("min", map.get(Long.MIN_VALUE));
+        assertEquals(expectedKeys, map.keySet());
+        assertEquals(10002, map.values().size());
+
+        for (int i = -5000; i < 5000; i += 2) {
+            assertEquals("" + i,
+                    map.remove(Long.valueOf(i * 0x100000001L)));
+            expectedKeys.remove(i * 0x100000001L);
+        }
+        assertEquals(5002, map.size());
+        assertEquals(expectedKeys, map.keySet());
+        for (int i = -4999; i < 5000; i += 2) {
+            assertTrue(map.contains(i * 0x100000001L));
+            assertEquals("" + i, map.get(Long.valueOf(i * 0x100000001L)));
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertTrue(map.keySet().isEmpty());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testReadWhileIteratingDuringIncrementalResize() {
+        HashMap<Integer, Integer> map = new HashMap<>(true);
+        for (int i = 0; i < 8; i++) {
+            map.add(i, i);
+        }
+        // The eighth add started a resize that is still moving buckets.
+        assertTrue(entriesInTable(map) < map.size());
+
+        int visited = 0;
+        for (Integer key : map.keySet()) {
+            assertEquals(key, map.get(key));
+            assertTrue(map.contains(key));
+            assertEquals(key, map.getOrDefault(key, -1));
+            assertEquals(key, map.computeIfAbsent(key, k -> -1));
+            assertEquals(key, map.add(key, key));
+            assertEquals(key, map.merge(key, 0, Integer::sum));
+            visited++;
+        }
+        assertEquals(8, visited);
+        assertTrue(entriesInTable(map) < map.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMinValueHashCode() {
+        // Integer.MIN_VALUE is its own hash code, and its own absolute value.
+        for (boolean powerOfTwo : new boolean[] {false, true}) {
+            HashMap<Integer, String> map = new HashMap<>(false, powerOfTwo);
+            map.add(Integer.MIN_VALUE, "min");
+            map.add(Integer.MAX_VALUE, "max");
+            map.add(-1, "minus one");
+            for (int i = 0; i < 100; i++) {
+                map.add(Integer.MIN_VALUE + i * 65536, "" + i);
+            }
+            assertEquals("0", map.get(Integer.MIN_VALUE));
+            assertEquals("max", map.get(Integer.MAX_VALUE));
+            assertEquals("minus one", map.get(-1));
+            assertEquals("0", map.remove(Integer.MIN_VALUE));
+            assertTrue(!map.contains(Integer.MIN_VALUE));
+            assertEquals(101, map.size());
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testPowerOfTwoResize() {
+        HashMap<Integer, Integer> map = new HashMap<>(false, true);
+        assertEquals(16, map.toArray().length);
+        int resizes = 0;
+        int length = 16;
+        for (int i = 0; i < 5000; i++) {
+            // Keys that only differ above bit 16 would all share bucket 0
+            // if the hash code were not mixed before masking.
+            map.add(i << 16, i);
+            int newLength = map.toArray().length;
+            assertEquals(1, Integer.bitCount(newLength));
+            assertTrue(newLength == length || newLength == 2 * length);
+            if (newLength != length) {
+                resizes++;
+                length = newLength;
+            }
+            assertTrue((double) map.size() / length
+                    <= HashMapInterface.MAX_LOAD_FACTOR);
+        }
+        assertEquals(9, resizes);
+        int longest = 0;
+        for (MapEntry<Integer, Integer> head : map.toArray()) {
+            longest = Math.max(longest, chainLength(head));
+        }
+        assertTrue(longest < TreeBin.TREEIFY_THRESHOLD);
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, (int) map.get(i << 16));
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testPutAll() {
+        addStuff();
+        HashMap<MyString, String> copy = new HashMap<>();
+        copy.add(new MyString("Mary"), "TA: 2110");
+        copy.putAll(directory);
+        assertEquals(5, copy.size());
+        for (MyString key : directory.keySet()) {
+            assertEquals(directory.get(key), copy.get(key));
+        }
+
+        // A cache reorders itself on every read, so its keys are copied
+        // before any value is read.
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(100);
+        for (int i = 0; i < 50; i++) {
+            cache.add(i, -i);
+        }
+        HashMap<Integer, Integer> fromCache = new HashMap<>();
+        fromCache.putAll(cache);
+        assertEquals(50, fromCache.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(-i, (int) fromCache.get(i));
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testViewIteratorsFailFast() {
+        addStuff();
+        Iterator<MyString> keys = directory.keySet().iterator();
+        keys.next();
+        directory.add(new MyString("Sam"), "TA: 1332");
+        try {
+            keys.next();
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+
+        Iterator<String> values = directory.values().iterator();
+        values.next();
+        directory.remove(new MyString("Sam"));
+        try {
+            values.next();
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+
+        // Replacing a value is not a structural change.
+        Iterator<MapEntry<MyString, String>> entries = directory.iterator();
+        entries.next();
+        directory.add(new MyString("Mary"), "TA: 2110");
+        entries.next();
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testRemoveThroughViews() {
+        addStuff();
+        Set<MyString> keys = directory.keySet();
+        assertTrue(keys.remove(new MyString("Mary")));
+        assertTrue(!keys.remove(new MyString("Mary")));
+        assertTrue(!directory.contains(new MyString("Mary")));
+        assertEquals(4, directory.size());
+
+        Iterator<MyString> keyIt = keys.iterator();
+        MyString removedKey = keyIt.next();
+        keyIt.remove();
+        assertTrue(!directory.contains(removedKey));
+        assertEquals(3, directory.size());
+
+        List<String> values = directory.values();
+        assertTrue(values.remove("Swift"));
+        assertTrue(!directory.contains(new MyString("BestLang")));
+        assertEquals(2, directory.size());
+        assertEquals(2, values.size());
+
+        Iterator<String> valueIt = values.iterator();
+        while (valueIt.hasNext()) {
+            valueIt.next();
+            valueIt.remove();
+        }
+        assertEquals(0, directory.size());
+        assertTrue(values.isEmpty());
+        assertTrue(keys.isEmpty());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testForEach() {
+        // Twenty one-letter keys share a bucket, which becomes a tree.
+        for (int i = 0; i < 20; i++) {
+            directory.add(letter(i), "" + i);
+        }
+        addStuff();
+        assertTrue(directory.toArray().length >= TreeBin.MIN_TREEIFY_CAPACITY);
+        assertEquals(20, chainLength(directory.toArray()[1]));
+        assertForEachVisitsAll(directory);
+
+        // Stop while an incremental resize still has buckets to move, so
+        // the backing array holds only some of the entries.
+        HashMap<Integer, Integer> map = new HashMap<>(true);
+        for (int i = 0; entriesInTable(map) == map.size(); i++) {
+            map.add(i, -i);
+        }
+        assertForEachVisitsAll(map);
+        assertTrue(entriesInTable(map) < map.size());
+
+        try {
+            map.forEach((k, v) -> map.add(-1, 1));
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        try {
+            map.forEach((BiConsumer<Integer, Integer>) null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testValuesPositionalAccess() {
+        addStuff();
+        List<String> values = directory.values();
+        List<String> order = new ArrayList<>();
+        for (MapEntry<MyString, String> entry : directory) {
+            order.add(entry.getValue());
+        }
+        assertEquals(5, order.size());
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(order.get(i), values.get(i));
+        }
+        assertEquals(order, values);
+        assertEquals(values, order);
+        assertEquals(order.hashCode(), values.hashCode());
+        assertEquals(order.indexOf("TA: 1332"), values.indexOf("TA: 1332"));
+        assertEquals(order.lastIndexOf("TA: 1332"),
+                values.lastIndexOf("TA: 1332"));
+        assertEquals(-1, values.indexOf("C++"));
+        assertEquals(order.subList(1, 4), values.subList(1, 4));
+        try {
+            values.get(5);
+            fail("Expected IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            assertNotNull(e);
+        }
+
+        // Walk to the end and back again.
+        ListIterator<String> it = values.listIterator();
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i, it.nextIndex());
+            assertEquals(order.get(i), it.next());
+        }
+        assertTrue(!it.hasNext());
+        for (int i = order.size() - 1; i >= 0; i--) {
+            assertEquals(i, it.previousIndex());
+            assertEquals(order.get(i), it.previous());
+        }
+        assertTrue(!it.hasPrevious());
+
+        // Changes through the list reach the map.
+        it = values.listIterator(2);
+        assertEquals(order.get(2), it.next());
+        it.set("TA: 2110");
+        assertEquals("TA: 2110", values.get(2));
+        assertEquals("TA: 2110", it.previous());
+        assertEquals(order.get(1), it.previous());
+        it.remove();
+        order.remove(1);
+        order.set(1, "TA: 2110");
+        assertEquals(4, directory.size());
+        assertEquals(1, it.nextIndex());
+        assertEquals("TA: 2110", it.next());
+        assertEquals(order.get(0), values.remove(0));
+        order.remove(0);
+        assertEquals(order, values);
+        assertEquals(3, directory.size());
+        assertTrue(directory.values().contains("TA: 2110"));
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testOffHeapReopen() throws IOException {
+        Path dir = Files.createTempDirectory("offheap");
+        Path file = dir.resolve("map.bin");
+        try {
+            OffHeapHashMap<Integer, Long> map = new OffHeapHashMap<>(file,
+                    Serializer.ofInt(), Serializer.ofLong());
+            // Enough entries to resize, and so replace the mapping, often.
+            for (int i = 0; i < 1000; i++) {
+                assertNull(map.add(i, i * 10L));
+            }
+            assertEquals(10L, (long) map.remove(1));
+            assertEquals(0L, (long) map.add(0, -1L));
+            map.close();
+
+            map = new OffHeapHashMap<>(file, Serializer.ofInt(),
+                    Serializer.ofLong());
+            assertEquals(999, map.size());
+            assertEquals(-1L, (long) map.get(0));
+            assertTrue(!map.contains(1));
+            for (int i = 2; i < 1000; i++) {
+                assertEquals(i * 10L, (long) map.get(i));
+            }
+            map.clear();
+            map.add(7, 70L);
+            map.close();
+
+            map = new OffHeapHashMap<>(file, Serializer.ofInt(),
+                    Serializer.ofLong());
+            assertEquals(1, map.size());
+            assertEquals(70L, (long) map.get(7));
+            map.close();
+            try {
+                new OffHeapHashMap<>(file, Serializer.ofLong(),
+                        Serializer.ofLong());
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCacheLruOrder() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(3);
+        cache.add(1, 1);
+        cache.add(2, 2);
+        cache.add(3, 3);
+        assertEquals(1, (int) cache.get(1));
+        cache.add(4, 4);
+        assertTrue(!cache.contains(2));
+
+        // contains does not count as a use, so 3 is still the oldest.
+        assertTrue(cache.contains(3));
+        cache.add(5, 5);
+        assertTrue(!cache.contains(3));
+
+        // Replacing a value counts as a use.
+        assertEquals(1, (int) cache.add(1, 10));
+        cache.add(6, 6);
+        assertTrue(!cache.contains(4));
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(5));
+        assertTrue(cache.contains(6));
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.evictionCount());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCacheWeightOnUpdate() {
+        BoundedCache<Integer, String> cache =
+                new BoundedCache<>(10, (k, v) -> v.length(), false);
+        cache.add(1, "aaaa");
+        cache.add(2, "bbbb");
+        assertEquals(8, cache.weight());
+        assertEquals("aaaa", cache.add(1, "a"));
+        assertEquals(5, cache.weight());
+        cache.add(3, "ccccc");
+        assertEquals(10, cache.weight());
+        assertEquals(0, cache.evictionCount());
+
+        // Growing 2 pushes the weight to 13, so the two oldest go.
+        cache.add(2, "bbbbbbb");
+        assertEquals(7, cache.weight());
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.evictionCount());
+        assertEquals("bbbbbbb", cache.remove(2));
+        assertEquals(0, cache.weight());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCacheOversizedEntry() {
+        BoundedCache<Integer, Integer> cache =
+                new BoundedCache<>(100, (k, v) -> v, false);
+        for (int i = 0; i < 100; i++) {
+            cache.add(i, 1);
+        }
+        // An entry heavier than the budget is dropped on its own.
+        assertNull(cache.add(1000, 500));
+        assertTrue(!cache.contains(1000));
+        assertEquals(100, cache.size());
+        assertEquals(100, cache.weight());
+        assertEquals(1, cache.evictionCount());
+
+        // Growing an existing entry past the budget drops just that entry.
+        assertEquals(1, (int) cache.add(5, 500));
+        assertTrue(!cache.contains(5));
+        assertEquals(99, cache.size());
+        assertEquals(99, cache.weight());
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCacheAdmission() {
+        for (boolean admission : new boolean[] {false, true}) {
+            BoundedCache<Integer, Integer> cache =
+                    new BoundedCache<>(100, null, admission);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 50; i++) {
+                    if (cache.getIfPresent(i) == null) {
+                        cache.add(i, i);
+                    }
+                }
+            }
+            // A scan of keys used only once.
+            for (int i = 1000; i < 3000; i++) {
+                cache.add(i, i);
+            }
+            int hot = 0;
+            for (int i = 0; i < 50; i++) {
+                if (cache.contains(i)) {
+                    hot++;
+                }
+            }
+            assertEquals(100, cache.size());
+            if (admission) {
+                assertTrue(hot >= 45);
+            } else {
+                assertEquals(0, hot);
+            }
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCacheCounters() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(2);
+        cache.add(1, 1);
+        assertEquals(1, (int) cache.getIfPresent(1));
+        assertNull(cache.getIfPresent(2));
+        try {
+            cache.get(2);
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            assertNotNull(e);
+        }
+        assertTrue(cache.contains(1));
+        assertTrue(!cache.contains(2));
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+
+        cache.add(2, 2);
+        cache.add(3, 3);
+        assertEquals(1, cache.evictionCount());
+        cache.remove(3);
+        assertEquals(1, cache.evictionCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testExpiringLazyExpiry() {
+        AtomicLong time = new AtomicLong();
+        ExpiringHashMap<Integer, String> map =
+                new ExpiringHashMap<>(500, TimeUnit.MILLISECONDS, time::get);
+        map.add(1, "one");
+        map.add(2, "two");
+        map.add(3, "three");
+        time.set(SECOND / 4);
+        assertEquals("one", map.get(1));
+        // Replacing a value restarts its time to live.
+        assertEquals("three", map.add(3, "THREE"));
+
+        // Still inside the first wheel bucket, so only a lookup notices
+        // that the first two entries have expired.
+        time.set(SECOND * 6 / 10);
+        assertEquals(3, map.size());
+        assertTrue(!map.contains(1));
+        try {
+            map.get(2);
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            assertNotNull(e);
+        }
+        assertEquals(1, map.size());
+        assertEquals("THREE", map.get(3));
+        assertEquals(1, map.keySet().size());
+        assertEquals(Arrays.asList("THREE"), map.values());
+
+        time.set(SECOND * 8 / 10);
+        assertTrue(!map.contains(3));
+        assertEquals(0, map.size());
+        assertNull(map.add(3, "three"));
+        assertEquals("three", map.remove(3));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testExpiringPerEntryTtl() {
+        AtomicLong time = new AtomicLong(-5 * SECOND);
+        ExpiringHashMap<Integer, String> map =
+                new ExpiringHashMap<>(1, TimeUnit.SECONDS, time::get);
+        map.add(1, "default");
+        map.add(2, "ten seconds", 10, TimeUnit.SECONDS);
+        map.add(3, "a minute", 1, TimeUnit.MINUTES);
+
+        // The wheel removes expired entries without a lookup, so size
+        // drops on its own.
+        time.set(-2 * SECOND);
+        assertEquals(2, map.size());
+        assertTrue(!map.contains(1));
+        assertEquals("ten seconds", map.get(2));
+        time.set(6 * SECOND);
+        assertEquals(1, map.size());
+        assertEquals("a minute", map.get(3));
+        time.set(56 * SECOND);
+        assertEquals(0, map.size());
+
+        try {
+            map.add(4, "never", 0, TimeUnit.SECONDS);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testExpiringCascade() {
+        AtomicLong time = new AtomicLong();
+        ExpiringHashMap<Integer, String> map =
+                new ExpiringHashMap<>(2, TimeUnit.HOURS, time::get);
+        map.add(1, "two hours");
+        map.add(2, "100 seconds", 100, TimeUnit.SECONDS);
+
+        // Two hours starts on the hour level and 100 seconds on the minute
+        // level. Each must cascade down to the second level to be removed
+        // within a second of its deadline.
+        time.set(70 * SECOND);
+        assertEquals(2, map.size());
+        time.set(99 * SECOND);
+        assertEquals(2, map.size());
+        time.set(101 * SECOND);
+        assertEquals(1, map.size());
+
+        time.set(90 * MINUTE);
+        assertEquals("two hours", map.get(1));
+        time.set(2 * HOUR - SECOND);
+        assertEquals(1, map.size());
+        time.set(2 * HOUR + SECOND);
+        assertEquals(0, map.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testExpiringOverflowLevel() {
+        AtomicLong time = new AtomicLong();
+        ExpiringHashMap<Integer, String> map =
+                new ExpiringHashMap<>(30, TimeUnit.DAYS, time::get);
+        map.add(1, "a month");
+        map.add(2, "a year", 365, TimeUnit.DAYS);
+
+        time.set(29 * DAY);
+        assertEquals(2, map.size());
+        assertEquals("a month", map.get(1));
+        time.set(30 * DAY - SECOND);
+        assertEquals(2, map.size());
+        time.set(30 * DAY + SECOND);
+        assertEquals(1, map.size());
+        time.set(365 * DAY - SECOND);
+        assertEquals("a year", map.get(2));
+        time.set(365 * DAY + SECOND);
+        assertEquals(0, map.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testExpiringCleanUp() {
+        AtomicLong time = new AtomicLong();
+        ExpiringHashMap<Integer, String> cleaned =
+                new ExpiringHashMap<>(1, TimeUnit.SECONDS, time::get);
+        ExpiringHashMap<Integer, String> idle =
+                new ExpiringHashMap<>(1, TimeUnit.SECONDS, time::get);
+        cleaned.add(1, "one");
+        idle.add(1, "one");
+
+        // Turning the clock back shows what the maps still hold without
+        // letting the read expire anything itself.
+        time.set(3 * SECOND);
+        cleaned.cleanUp();
+        time.set(SECOND / 2);
+        assertEquals(0, cleaned.size());
+        assertTrue(!cleaned.contains(1));
+        assertEquals(1, idle.size());
+        assertEquals("one", idle.get(1));
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testExpiringReaper() throws InterruptedException {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger reads = new AtomicInteger();
+        ExpiringHashMap<Integer, String> map =
+                new ExpiringHashMap<>(1, TimeUnit.SECONDS, () -> {
+                    reads.incrementAndGet();
+                    return time.get();
+                });
+        for (int i = 0; i < 100; i++) {
+            map.add(i, "" + i);
+        }
+        time.set(3 * SECOND);
+        int before = reads.get();
+        map.startReaper(1, TimeUnit.MILLISECONDS);
+        map.startReaper(1, TimeUnit.MILLISECONDS);
+        // Once the reaper has read the clock twice, its first clean up has
+        // finished.
+        while (reads.get() < before + 2) {
+            Thread.sleep(1);
+        }
+        map.close();
+        time.set(SECOND / 2);
+        assertEquals(0, map.size());
+        assertTrue(!map.contains(0));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testStatsDisabledRecordsNothing() {
+        addStuff();
+        directory.get(new MyString("BestLang"));
+        directory.contains(new MyString("Nobody"));
+        for (int i = 0; i < 20; i++) {
+            directory.add(new MyString("key" + i), "" + i);
+        }
+        HashMapStats stats = directory.stats();
+        assertEquals(25, stats.getSize());
+        assertEquals(0L, stats.getLookupCount());
+        assertEquals(0L, stats.getResizeCount());
+        assertEquals(0L, stats.getTotalResizeNanos());
+        assertEquals(0L, stats.getLastResizeNanos());
+        assertEquals(0, stats.getAverageProbesPerLookup(), 0);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testStatsProbesAndResizes() {
+        addStuff();
+        directory.setStatsEnabled(true);
+        // Bucket 8 holds Jonathan then BestLang; bucket 3 is empty.
+        assertEquals("TA: 1332", directory.get(new MyString("Jonathan")));
+        assertEquals("Swift", directory.get(new MyString("BestLang")));
+        assertTrue(!directory.contains(new MyString("Zzzzzzzz")));
+        assertNull(directory.getOrDefault(new MyString("Bob"), null));
+        HashMapStats stats = directory.stats();
+        assertEquals(4L, stats.getLookupCount());
+        assertEquals(5.0 / 4, stats.getAverageProbesPerLookup(), 1e-9);
+        assertEquals(5, stats.getSize());
+        assertEquals(11, stats.getCapacity());
+        assertEquals(5.0 / 11, stats.getLoadFactor(), 1e-9);
+        assertArrayEquals(new int[] {7, 3, 1, 0, 0, 0, 0, 0, 0, 0},
+                stats.getChainLengthHistogram());
+        assertEquals(2, stats.getLongestChain());
+        assertEquals(0L, stats.getResizeCount());
+
+        // The eighth entry pushes the load past the maximum.
+        directory.add(new MyString("a"), "1");
+        directory.add(new MyString("bb"), "2");
+        assertEquals(0L, directory.stats().getResizeCount());
+        directory.add(new MyString("ccc"), "3");
+        stats = directory.stats();
+        assertEquals(1L, stats.getResizeCount());
+        assertEquals(23, stats.getCapacity());
+        assertTrue(stats.getLastResizeNanos() > 0);
+        assertEquals(stats.getLastResizeNanos(), stats.getTotalResizeNanos());
+        // The next ten keys share a bucket, and the load factor grows the
+        // table once; the chain then grows it again, as the table is too
+        // short to hold trees.
+        for (int i = 0; i < 10; i++) {
+            directory.add(new MyString("key" + i), "" + i);
+        }
+        stats = directory.stats();
+        assertEquals(3L, stats.getResizeCount());
+        assertEquals(95, stats.getCapacity());
+        assertTrue(stats.getTotalResizeNanos() > stats.getLastResizeNanos());
+
+        // Turning statistics off keeps the counts but records no more.
+        directory.setStatsEnabled(false);
+        directory.get(new MyString("Jonathan"));
+        for (int i = 10; i < 40; i++) {
+            directory.add(new MyString("key" + i), "" + i);
+        }
+        assertEquals(4L, directory.stats().getLookupCount());
+        assertEquals(3L, directory.stats().getResizeCount());
+        directory.resetStats();
+        assertEquals(0L, directory.stats().getLookupCount());
+        assertEquals(0L, directory.stats().getTotalResizeNanos());
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testStatsMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        addStuff();
+        directory.setStatsEnabled(true);
+        ObjectName name = directory.registerMBean("studentTests");
+        try {
+            assertTrue(server.isRegistered(name));
+            directory.get(new MyString("BestLang"));
+            assertEquals(1L, server.getAttribute(name, "LookupCount"));
+            assertEquals(2.0, server.getAttribute(name,
+                    "AverageProbesPerLookup"));
+            assertEquals(5, server.getAttribute(name, "Size"));
+            try {
+                directory.registerMBean("studentTests");
+                fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertNotNull(e);
+            }
+        } finally {
+            directory.unregisterMBean();
+        }
+        assertTrue(!server.isRegistered(name));
+        directory.unregisterMBean();
+        try {
+            directory.registerMBean("a,b");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testSnapshotRoundTrip() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("map.bin");
+        try {
+            for (boolean powerOfTwo : new boolean[] {false, true}) {
+                HashMap<Integer, Long> map =
+                        new HashMap<>(0, 0.67, true, powerOfTwo);
+                Random random = new Random(1332);
+                for (int i = 0; i < 1000; i++) {
+                    map.add(random.nextInt(), (long) i);
+                }
+                map.add(Integer.MIN_VALUE, -1L);
+                map.add(0, 0L);
+                HashMapSnapshot.write(map, file, Serializer.ofInt(),
+                        Serializer.ofLong());
+                HashMap<Integer, Long> loaded = HashMapSnapshot.read(file,
+                        Serializer.ofInt(), Serializer.ofLong());
+                assertSameBuckets(map.toArray(), loaded.toArray());
+                assertEquals(map.size(), loaded.size());
+                assertEquals(powerOfTwo, loaded.usesPowerOfTwoSizing());
+                assertTrue(loaded.usesIncrementalResize());
+
+                // The loaded map hashes keys into the same buckets.
+                for (MapEntry<Integer, Long> entry : map) {
+                    assertEquals(entry.getValue(),
+                            loaded.get(entry.getKey()));
+                }
+                assertEquals(-1L, (long) loaded.remove(Integer.MIN_VALUE));
+                assertNull(loaded.add(Integer.MIN_VALUE, -2L));
+                assertEquals(-2L, (long) loaded.get(Integer.MIN_VALUE));
+            }
+
+            HashMapSnapshot.write(new HashMap<Integer, Long>(), file,
+                    Serializer.ofInt(), Serializer.ofLong());
+            HashMap<Integer, Long> empty = HashMapSnapshot.read(file,
+                    Serializer.ofInt(), Serializer.ofLong());
+            assertEquals(0, empty.size());
+            assertEquals(11, empty.toArray().length);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSnapshotBinaryFormat() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("map.bin");
+        try {
+            HashMap<Integer, Long> map = new HashMap<>();
+            map.add(3, 30L);
+            map.add(14, 140L);
+            map.add(5, 50L);
+            HashMapSnapshot.write(map, file, Serializer.ofInt(),
+                    Serializer.ofLong());
+
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            assertEquals(36 + 2 * 8 + 3 * 12, bytes.remaining());
+            assertEquals(0x484d534e, bytes.getInt());
+            assertEquals(1, bytes.getInt());
+            assertEquals(0, bytes.getInt());
+            assertEquals(4, bytes.getInt());
+            assertEquals(8, bytes.getInt());
+            assertEquals(11, bytes.getInt());
+            assertEquals(3, bytes.getInt());
+            assertEquals(0.67, bytes.getDouble(), 0);
+            // Bucket 3 holds 3 then 14; bucket 5 holds 5.
+            assertEquals(3, bytes.getInt());
+            assertEquals(2, bytes.getInt());
+            assertEquals(3, bytes.getInt());
+            assertEquals(30L, bytes.getLong());
+            assertEquals(14, bytes.getInt());
+            assertEquals(140L, bytes.getLong());
+            assertEquals(5, bytes.getInt());
+            assertEquals(1, bytes.getInt());
+            assertEquals(5, bytes.getInt());
+            assertEquals(50L, bytes.getLong());
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSnapshotTreeifiedBucket() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("map.bin");
+        try {
+            HashMap<Integer, Long> map =
+                    HashMap.withTableLength(97, 0.67, false, false);
+            // Multiples of 97 all land in bucket 0.
+            for (int i = 0; i < 20; i++) {
+                map.add(i * 97, (long) i);
+            }
+            map.add(1, 1L);
+            assertTrue(hasTreeBin(map));
+            HashMapSnapshot.write(map, file, Serializer.ofInt(),
+                    Serializer.ofLong());
+            HashMap<Integer, Long> loaded = HashMapSnapshot.read(file,
+                    Serializer.ofInt(), Serializer.ofLong());
+            assertTrue(hasTreeBin(loaded));
+            assertSameBuckets(map.toArray(), loaded.toArray());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, (long) loaded.get(i * 97));
+            }
+            // The tree still untreeifies once it shrinks.
+            for (int i = 0; i < 20 - TreeBin.UNTREEIFY_THRESHOLD; i++) {
+                loaded.remove(i * 97);
+            }
+            assertTrue(!hasTreeBin(loaded));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSnapshotTruncatedOrCorrupt() throws IOException {
+        Path dir = Files.createTempDirectory("snapshot");
+        Path file = dir.resolve("map.bin");
+        try {
+            HashMap<Integer, Long> map = new HashMap<>();
+            map.add(3, 30L);
+            map.add(14, 140L);
+            map.add(5, 50L);
+            HashMapSnapshot.write(map, file, Serializer.ofInt(),
+                    Serializer.ofLong());
+            byte[] good = Files.readAllBytes(file);
+
+            for (int length : new int[] {0, 10, 35, 36, 40, good.length - 1}) {
+                Files.write(file, Arrays.copyOf(good, length));
+                assertCorruptSnapshot(file);
+            }
+
+            // Bad magic number.
+            assertCorruptSnapshot(file, good, 0, 0);
+            // Backing array length of zero.
+            assertCorruptSnapshot(file, good, 20, 0);
+            // First bucket index past the end of the array.
+            assertCorruptSnapshot(file, good, 36, 11);
+            // First bucket count of zero, then more entries than the size.
+            assertCorruptSnapshot(file, good, 40, 0);
+            assertCorruptSnapshot(file, good, 40, 4);
+            // Second bucket index repeating the first.
+            assertCorruptSnapshot(file, good, 36 + 8 + 2 * 12, 3);
+
+            Files.write(file, good);
+            try {
+                HashMapSnapshot.read(file, Serializer.ofLong(),
+                        Serializer.ofLong());
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testCuckooDisplacementAndGrowth() {
+        CuckooHashMap<Integer, Integer> map = new CuckooHashMap<>(
+                CuckooHashMap.MAX_SUPPORTED_LOAD_FACTOR);
+        // At 95% full most adds have to displace keys to make room, and
+        // the tables double many times on the way.
+        Random random = new Random(2110);
+        java.util.HashMap<Integer, Integer> expected =
+                new java.util.HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt();
+            assertEquals(expected.put(key, i), map.add(key, i));
+        }
+        assertEquals(expected.size(), map.size());
+        assertTrue(map.stashSize() <= 8);
+        for (java.util.Map.Entry<Integer, Integer> entry
+                : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(expected.keySet(), map.keySet());
+
+        int removed = 0;
+        for (Integer key : expected.keySet()) {
+            if (removed++ % 2 == 0) {
+                assertEquals(expected.get(key), map.remove(key));
+                assertTrue(!map.contains(key));
+            }
+        }
+        assertEquals(expected.size() / 2, map.size());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testCuckooStashOverflow() {
+        CuckooHashMap<MyString, Integer> map = new CuckooHashMap<>();
+        // Every key has hash code 4, so only the 8 slots of its two
+        // buckets can hold them and the rest overflow into the stash.
+        // The tables are mostly empty, so they are not grown for it.
+        int count = 40;
+        for (int i = 0; i < count; i++) {
+            assertNull(map.add(collidingKey(i), i));
+            assertEquals(Math.max(0, i + 1 - 8), map.stashSize());
+        }
+        assertEquals(count, map.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) map.get(collidingKey(i)));
+        }
+        assertEquals(count - 1, (int) map.add(collidingKey(count - 1), -1));
+        assertEquals(-1, (int) map.get(collidingKey(count - 1)));
+        assertEquals(count, map.size());
+
+        // Removing a key from the tables pulls a stashed key into its
+        // slot, so the stash keeps shrinking until the buckets have room.
+        for (int i = 0; i < count; i++) {
+            map.remove(collidingKey(i));
+            int remaining = count - i - 1;
+            assertEquals(remaining, map.size());
+            assertEquals(Math.max(0, remaining - 8), map.stashSize());
+            assertTrue(!map.contains(collidingKey(i)));
+            if (i + 1 < count) {
+                assertTrue(map.contains(collidingKey(i + 1)));
+            }
+        }
+        map.add(collidingKey(0), 0);
+        assertEquals(0, map.stashSize());
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testComputeAndMerge() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        assertEquals(1, (int) map.compute(1, (k, v) -> v == null ? 1 : v + 1));
+        assertEquals(2, (int) map.compute(1, (k, v) -> v == null ? 1 : v + 1));
+        assertNull(map.compute(2, (k, v) -> null));
+        assertTrue(!map.contains(2));
+        // A null result removes the key.
+        assertNull(map.compute(1, (k, v) -> null));
+        assertTrue(!map.contains(1));
+        assertEquals(0, map.size());
+
+        assertEquals(5, (int) map.merge(3, 5, Integer::sum));
+        assertEquals(12, (int) map.merge(3, 7, Integer::sum));
+        assertNull(map.merge(3, 1, (a, b) -> null));
+        assertTrue(!map.contains(3));
+
+        assertEquals(16, (int) map.computeIfAbsent(4, k -> k * k));
+        assertEquals(16, (int) map.computeIfAbsent(4, k -> {
+            throw new AssertionError("Key is already in the map");
+        }));
+        assertNull(map.computeIfAbsent(5, k -> null));
+        assertTrue(!map.contains(5));
+        assertEquals(1, map.size());
+        try {
+            map.compute(null, (k, v) -> v);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testComputeGrowsOnlyWhenAdding() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        for (int i = 0; i < 7; i++) {
+            map.add(i, i);
+        }
+        // One more entry would push the load past the maximum.
+        assertEquals(11, map.toArray().length);
+        map.compute(0, (k, v) -> v + 1);
+        map.compute(20, (k, v) -> null);
+        map.merge(1, 1, Integer::sum);
+        map.computeIfAbsent(2, k -> -1);
+        map.computeIfAbsent(20, k -> null);
+        assertEquals(11, map.toArray().length);
+        map.compute(1, (k, v) -> null);
+        map.compute(1, (k, v) -> 1);
+        assertEquals(11, map.toArray().length);
+        assertEquals(7, map.size());
+
+        map.computeIfAbsent(20, k -> 20);
+        assertEquals(23, map.toArray().length);
+        map.compute(21, (k, v) -> 21);
+        map.merge(22, 22, Integer::sum);
+        assertEquals(10, map.size());
+        for (int i = 20; i < 23; i++) {
+            assertEquals(i, (int) map.get(i));
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testComputeFunctionChangingMap() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        map.add(1, 1);
+        try {
+            map.computeIfAbsent(2, k -> map.add(3, 3));
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        try {
+            map.compute(1, (k, v) -> map.remove(3));
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        try {
+            map.merge(1, 1, (a, b) -> map.add(4, 4));
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        // Replacing a value is not a structural change.
+        assertEquals(2, (int) map.compute(1, (k, v) -> map.add(1, 2) + 1));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testMissesDoNotThrow() {
+        addStuff();
+        assertTrue(!directory.contains(new MyString("Nobody")));
+        assertTrue(!directory.contains(new MyString("Jonathan ")));
+        assertEquals("none", directory.getOrDefault(new MyString("Nobody"),
+                "none"));
+        assertNull(directory.getOrDefault(new MyString("Zzzzzzzz"), null));
+        assertEquals("Swift", directory.getOrDefault(
+                new MyString("BestLang"), "none"));
+        try {
+            directory.getOrDefault(null, "none");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testSpliteratorSplitsCoverEveryEntry() {
+        HashMap<Integer, Integer> plain = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            plain.add(i, -i);
+        }
+        assertSplitsCoverEveryEntry(plain);
+
+        // During an incremental resize the unmigrated old buckets and the
+        // new array are split as one range.
+        HashMap<Integer, Integer> resizing = new HashMap<>(true);
+        for (int i = 0; i < 1000 || entriesInTable(resizing)
+                == resizing.size(); i++) {
+            resizing.add(i, -i);
+        }
+        assertTrue(entriesInTable(resizing) > 0);
+        assertSplitsCoverEveryEntry(resizing);
+        assertTrue(entriesInTable(resizing) < resizing.size());
+
+        assertSplitsCoverEveryEntry(new HashMap<Integer, Integer>());
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testParallelBulkOperations() {
+        HashMap<Integer, Integer> map = new HashMap<>(true);
+        long expectedSum = 0;
+        for (int i = 0; i < 20000 || entriesInTable(map) == map.size();
+                i++) {
+            map.add(i, i);
+            expectedSum += i;
+        }
+        int size = map.size();
+        assertEquals((long) size, map.stream().count());
+        assertEquals((long) size, map.parallelStream().count());
+        assertEquals(expectedSum, map.parallelStream()
+                .mapToLong(MapEntry::getValue).sum());
+
+        AtomicLong sum = new AtomicLong();
+        AtomicInteger calls = new AtomicInteger();
+        map.parallelForEach((k, v) -> {
+            assertEquals(k, v);
+            sum.addAndGet(v);
+            calls.incrementAndGet();
+        });
+        assertEquals(expectedSum, sum.get());
+        assertEquals(size, calls.get());
+
+        // Values are ints, so the sum wraps, but the same way every time.
+        assertEquals((int) expectedSum, (int) map.reduceValues(Integer::sum));
+        assertNull(new HashMap<Integer, Integer>().reduceValues(Integer::sum));
+        assertTrue(entriesInTable(map) < map.size());
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testSearch() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        int size = 100000;
+        for (int i = 0; i < size; i++) {
+            map.add(i, i);
+        }
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals(77777, (int) map.search((k, v) -> {
+            calls.incrementAndGet();
+            return v == 77777 ? k : null;
+        }));
+        calls.set(0);
+        assertNull(map.search((k, v) -> {
+            calls.incrementAndGet();
+            return null;
+        }));
+        assertEquals(size, calls.get());
+
+        // Every pair matches, so the search stops long before visiting
+        // them all.
+        calls.set(0);
+        assertNotNull(map.search((k, v) -> {
+            calls.incrementAndGet();
+            return k;
+        }));
+        assertTrue(calls.get() < size / 10);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testSpliteratorFailFast() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.add(i, i);
+        }
+        Spliterator<MapEntry<Integer, Integer>> split = map.spliterator();
+        assertTrue(split.tryAdvance(e -> { }));
+        map.add(100, 100);
+        try {
+            split.tryAdvance(e -> { });
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        split = map.spliterator();
+        map.remove(100);
+        try {
+            split.forEachRemaining(e -> { });
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        try {
+            map.stream().forEach(e -> map.add(-1, -1));
+            fail("Expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            assertNotNull(e);
+        }
+        // Replacing values is not a structural change.
+        map.stream().forEach(e -> map.add(e.getKey(), 0));
+        assertEquals(0, (int) map.reduceValues(Integer::sum));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFreezeEqualHashCodes() {
+        HashMap<MyString, Integer> map = new HashMap<>();
+        // 20 keys share hash code 4 and 5 have distinct hash codes, so 19
+        // of the colliding keys have to go to the overflow map.
+        for (int i = 0; i < 20; i++) {
+            map.add(collidingKey(i), i);
+        }
+        for (int i = 0; i < 5; i++) {
+            map.add(new MyString("abcdefghijkl".substring(0, i + 5)), 100 + i);
+        }
+        FrozenHashMap<MyString, Integer> frozen = map.freeze();
+        assertEquals(25, frozen.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) frozen.get(collidingKey(i)));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals(100 + i, (int) frozen.get(
+                    new MyString("abcdefghijkl".substring(0, i + 5))));
+        }
+        assertEquals(map.keySet(), frozen.keySet());
+        assertEquals(25, frozen.values().size());
+
+        // Misses that share the hash code, or have a new one.
+        assertTrue(!frozen.contains(collidingKey(20)));
+        assertEquals(-1, (int) frozen.getOrDefault(collidingKey(20), -1));
+        assertTrue(!frozen.contains(new MyString("abcdefghijkl")));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFreezeEmptyAndSingleKey() {
+        FrozenHashMap<Integer, Integer> empty =
+                new HashMap<Integer, Integer>().freeze();
+        assertEquals(0, empty.size());
+        assertTrue(!empty.contains(1));
+        assertNull(empty.getOrDefault(1, null));
+        assertTrue(empty.keySet().isEmpty());
+        assertTrue(empty.values().isEmpty());
+        try {
+            empty.get(1);
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            assertNotNull(e);
+        }
+
+        HashMap<Integer, Integer> map = new HashMap<>();
+        map.add(7, 70);
+        FrozenHashMap<Integer, Integer> one = map.freeze();
+        assertEquals(1, one.size());
+        assertEquals(70, (int) one.get(7));
+        // With one slot, every miss lands on the slot holding 7.
+        for (int key = -100; key < 100; key++) {
+            if (key != 7) {
+                assertTrue(!one.contains(key));
+                assertEquals(-1, (int) one.getOrDefault(key, -1));
+            }
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testFreezeMissesLandInOccupiedSlots() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            map.add(i, -i);
+        }
+        FrozenHashMap<Integer, Integer> frozen = map.freeze();
+        // Every slot holds a key, so each miss is caught by the key
+        // comparison rather than by an empty slot.
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(-i, (int) frozen.get(i));
+            assertTrue(!frozen.contains(i + 1000));
+            assertTrue(!frozen.contains(-i - 1));
+        }
+        try {
+            frozen.get(5000);
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            assertNotNull(e);
+        }
+        try {
+            frozen.add(1, 1);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            assertNotNull(e);
+        }
+        assertEquals(0, (int) map.remove(0));
+        assertEquals(0, (int) frozen.get(0));
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testLongChainGrowsSmallTable() {
+        // Every one-letter key has the same hash code, so they share a
+        // bucket. Below the minimum treeify capacity the table grows
+        // instead of converting the chain.
+        for (int i = 0; i < TreeBin.TREEIFY_THRESHOLD + 1; i++) {
+            directory.add(letter(i), "" + i);
+        }
+        MapEntry<MyString, String>[] table = directory.toArray();
+        assertTrue(table.length > 11);
+        assertTrue(table.length < TreeBin.MIN_TREEIFY_CAPACITY);
+        assertTrue(!hasTreeBin(directory));
+        assertEquals(TreeBin.TREEIFY_THRESHOLD + 1, chainLength(table[1]));
+        for (int i = 0; i < TreeBin.TREEIFY_THRESHOLD + 1; i++) {
+            assertEquals("" + i, directory.get(letter(i)));
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testTreeifyAndUntreeify() {
+        int count = 20;
+        for (int i = 0; i < count; i++) {
+            directory.add(letter(i), "" + i);
+        }
+        MapEntry<MyString, String>[] table = directory.toArray();
+        assertTrue(table.length >= TreeBin.MIN_TREEIFY_CAPACITY);
+        assertTrue(hasTreeBin(directory));
+
+        // toArray shows the tree's chain, in insertion order.
+        MapEntry<MyString, String> curr = table[1];
+        assertTrue(!(curr instanceof TreeBin));
+        for (int i = 0; i < count; i++) {
+            assertEquals(letter(i), curr.getKey());
+            curr = curr.getNext();
+        }
+        assertNull(curr);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals("" + i, directory.get(letter(i)));
+        }
+        assertTrue(!directory.contains(letter(count)));
+
+        // Removing down to the untreeify threshold restores a plain chain.
+        for (int i = 0; i < count - TreeBin.UNTREEIFY_THRESHOLD; i++) {
+            assertEquals("" + i, directory.remove(letter(i)));
+        }
+        assertTrue(!hasTreeBin(directory));
+        table = directory.toArray();
+        curr = table[1];
+        for (int i = count - TreeBin.UNTREEIFY_THRESHOLD; i < count; i++) {
+            assertEquals(letter(i), curr.getKey());
+            assertEquals("" + i, directory.get(letter(i)));
+            curr = curr.getNext();
+        }
+        assertNull(curr);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testTreeBinUntreeify() {
+        MapEntry<MyString, String> head = new MapEntry<>(letter(0), "0");
+        MapEntry<MyString, String> tail = head;
+        for (int i = 1; i < 10; i++) {
+            tail.setNext(new MapEntry<>(letter(i), "" + i));
+            tail = tail.getNext();
+        }
+        TreeBin<MyString, String> bin = new TreeBin<>(head);
+        assertEquals(10, bin.size());
+        assertEquals("3", bin.remove(letter(3)));
+        assertNull(bin.remove(letter(3)));
+
+        MapEntry<MyString, String> chain = bin.untreeify();
+        assertEquals(0, bin.size());
+        assertNull(bin.getNext());
+        int length = 0;
+        for (MapEntry<MyString, String> curr = chain; curr != null;
+                curr = curr.getNext()) {
+            assertTrue(!curr.getKey().equals(letter(3)));
+            length++;
+        }
+        assertEquals(9, length);
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testConcurrentAddRemoveAcrossResize() throws Exception {
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        int perThread = 5000;
+        // Each thread owns a range of keys, so the final contents are known
+        // even though every add and remove races with a transfer.
+        runThreads(THREADS, t -> {
+            int base = t * perThread;
+            for (int i = 0; i < perThread; i++) {
+                map.add(base + i, i);
+                assertEquals(i, (int) map.get(base + i));
+                if (i % 3 == 0) {
+                    assertEquals(i, (int) map.remove(base + i));
+                }
+                int size = map.size();
+                assertTrue(size >= 0 && size <= THREADS * perThread);
+            }
+        });
+
+        int expected = 0;
+        for (int key = 0; key < THREADS * perThread; key++) {
+            boolean present = key % perThread % 3 != 0;
+            assertEquals(present, map.contains(key));
+            if (present) {
+                expected++;
+            }
+        }
+        assertEquals(expected, map.size());
+        assertEquals(expected, map.keySet().size());
+        assertEquals(expected, map.values().size());
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testConcurrentReadsDuringTransfer() throws Exception {
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        int stable = 1000;
+        for (int i = 0; i < stable; i++) {
+            map.add(i, -i);
+        }
+        // Thread 0 grows the table many times over while the others read
+        // keys that never change, so reads keep crossing forwarding nodes.
+        runThreads(THREADS, t -> {
+            if (t == 0) {
+                for (int i = stable; i < 40 * stable; i++) {
+                    map.add(i, -i);
+                }
+            } else {
+                for (int round = 0; round < 40; round++) {
+                    for (int i = 0; i < stable; i++) {
+                        assertEquals(-i, (int) map.get(i));
+                        assertTrue(map.contains(i));
+                    }
+                }
+            }
+        });
+        assertEquals(40 * stable, map.size());
+    }
+
+    @Test(timeout = CONCURRENT_TIMEOUT)
+    public void testConcurrentKeySetIteratorRemove() throws Exception {
+        ConcurrentHashMap<Integer, Integer> map = new ConcurrentHashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            map.add(i, i);
+        }
+        // Every thread tries to remove every key, so most removals lose
+        // the race and must be ignored rather than throw.
+        runThreads(THREADS, t -> {
+            Iterator<Integer> it = map.keySet().iterator();
+            while (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        });
+        assertEquals(0, map.size());
+        assertTrue(map.keySet().isEmpty());
+        assertTrue(!map.keySet().remove(0));
+    }
+
     /**
      * Add a baseline of items to the hash map.
      */
@@ -166,6 +1757,227 @@ public class HashMapStudentTests {
         }
     }
 
+    /**
+     * Check that two backing arrays hold the same keys and values in the
+     * same buckets and chain order.
+     *
+     * @param expected backing array of the original map
+     * @param actual backing array of the loaded map
+     */
+    private static void assertSameBuckets(MapEntry<Integer, Long>[] expected,
+                                          MapEntry<Integer, Long>[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            MapEntry<Integer, Long> e = expected[i];
+            MapEntry<Integer, Long> a = actual[i];
+            while (e != null) {
+                assertNotNull(a);
+                assertEquals(e.getKey(), a.getKey());
+                assertEquals(e.getValue(), a.getValue());
+                e = e.getNext();
+                a = a.getNext();
+            }
+            assertNull(a);
+        }
+    }
+
+    /**
+     * Write a copy of a snapshot with one int overwritten, and check that
+     * reading it fails.
+     *
+     * @param file file to write the copy to
+     * @param good bytes of a valid snapshot
+     * @param offset byte offset of the int to overwrite
+     * @param value value to write there
+     * @throws IOException if the file cannot be written
+     */
+    private static void assertCorruptSnapshot(Path file, byte[] good,
+                                              int offset, int value)
+        throws IOException {
+        byte[] bad = good.clone();
+        ByteBuffer.wrap(bad).putInt(offset, value);
+        Files.write(file, bad);
+        assertCorruptSnapshot(file);
+    }
+
+    /**
+     * Check that reading a snapshot fails with IllegalArgumentException.
+     *
+     * @param file the snapshot to read
+     */
+    private static void assertCorruptSnapshot(Path file) {
+        try {
+            HashMapSnapshot.read(file, Serializer.ofInt(),
+                    Serializer.ofLong());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e);
+        }
+    }
+
+    /**
+     * Create a one-letter key. All of them have the same hash code.
+     *
+     * @param i index of the letter
+     * @return key holding the letter
+     */
+    private static MyString letter(int i) {
+        return new MyString(String.valueOf((char) ('a' + i)));
+    }
+
+    /**
+     * Create a four-character key. All of them have the same hash code.
+     *
+     * @param i number to put in the key, below 10000
+     * @return key holding the number
+     */
+    private static MyString collidingKey(int i) {
+        return new MyString(String.format("%04d", i));
+    }
+
+    /**
+     * Check whether any bucket of a map is a tree. toArray only copies the
+     * backing array to put each tree's chain in place of the tree.
+     *
+     * @param map map to inspect, not in the middle of an incremental resize
+     * @return whether the map has a tree bin
+     */
+    private static boolean hasTreeBin(HashMap<?, ?> map) {
+        return map.toArray() != map.toArray();
+    }
+
+    /**
+     * Count the entries of a chain.
+     *
+     * @param head first entry of the chain
+     * @return number of entries
+     */
+    private static int chainLength(MapEntry<?, ?> head) {
+        int length = 0;
+        for (MapEntry<?, ?> curr = head; curr != null;
+                curr = curr.getNext()) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Check that forEach visits every key once with its value, in the
+     * same order as the iterator.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     * @param map map to walk
+     */
+    private static <K, V> void assertForEachVisitsAll(HashMap<K, V> map) {
+        List<K> keys = new ArrayList<>();
+        List<V> values = new ArrayList<>();
+        map.forEach((k, v) -> {
+            keys.add(k);
+            values.add(v);
+        });
+        assertEquals(map.size(), keys.size());
+        assertEquals(map.size(), new HashSet<>(keys).size());
+        int i = 0;
+        for (MapEntry<K, V> entry : map) {
+            assertEquals(entry.getKey(), keys.get(i));
+            assertEquals(entry.getValue(), values.get(i));
+            i++;
+        }
+    }
+
+    /**
+     * Count the entries reachable from the current backing array, which
+     * during an incremental resize is fewer than the size.
+     *
+     * @param map map to inspect
+     * @return number of entries in the backing array
+     */
+    private static int entriesInTable(HashMap<?, ?> map) {
+        int count = 0;
+        for (MapEntry<?, ?> head : map.toArray()) {
+            count += chainLength(head);
+        }
+        return count;
+    }
+
+    /**
+     * Split a map's spliterator as far as it goes, walk every piece, and
+     * check that every entry turns up exactly once.
+     *
+     * @param map map to split
+     */
+    private static void assertSplitsCoverEveryEntry(
+            HashMap<Integer, Integer> map) {
+        List<Spliterator<MapEntry<Integer, Integer>>> pieces =
+                new ArrayList<>();
+        pieces.add(map.spliterator());
+        for (int i = 0; i < pieces.size(); i++) {
+            Spliterator<MapEntry<Integer, Integer>> prefix =
+                    pieces.get(i).trySplit();
+            if (prefix != null) {
+                pieces.add(prefix);
+                i--;
+            }
+        }
+        assertTrue(pieces.size() > 1 || map.size() == 0);
+        Set<Integer> seen = new HashSet<>();
+        int count = 0;
+        for (Spliterator<MapEntry<Integer, Integer>> piece : pieces) {
+            // Take one entry at a time from half of the pieces.
+            if (count % 2 == 0) {
+                while (piece.tryAdvance(e -> seen.add(e.getKey()))) {
+                    count++;
+                }
+            } else {
+                int[] visited = new int[1];
+                piece.forEachRemaining(e -> {
+                    seen.add(e.getKey());
+                    visited[0]++;
+                });
+                count += visited[0];
+            }
+        }
+        assertEquals(map.size(), count);
+        assertEquals(map.size(), seen.size());
+        for (Integer key : seen) {
+            assertTrue(map.contains(key));
+        }
+    }
+
+    /**
+     * Run a body on several threads at once and rethrow the first failure.
+     *
+     * @param count number of threads to start
+     * @param body work for each thread, given its index
+     * @throws Exception if a thread failed or the wait was interrupted
+     */
+    private static void runThreads(int count, IntConsumer body)
+        throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[count];
+        for (int t = 0; t < count; t++) {
+            int index = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    body.accept(index);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Throwable e = failure.get();
+        if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new AssertionError(e);
+        }
+    }
+
     private static class MyString {
         private String s;
 
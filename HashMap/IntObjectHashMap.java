@@ -0,0 +1,261 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map specialized for {@code int} keys, using linear probing as its
+ * collision policy.
+ *
+ * Keys are stored in a primitive {@code int[]} and values in a parallel
+ * array, so there is no entry object, no boxed key and no pointer to follow
+ * per probe. A slot is empty when its value is {@code null}, which is safe
+ * because null values are never allowed into the map. Removal shifts the
+ * following entries of the cluster back instead of leaving tombstones.
+ *
+ * The {@code HashMapInterface} methods box their key; use the {@code int}
+ * overloads on hot paths.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class IntObjectHashMap<V> implements HashMapInterface<Integer, V> {
+
+    /**
+     * Starting capacity of the backing arrays. Must be a power of two.
+     */
+    public static final int STARTING_CAPACITY = 16;
+
+    private int[] keys;
+    private V[] values;
+    private int size;
+
+    /**
+     * Create a hash map with no entries.
+     */
+    public IntObjectHashMap() {
+        keys = new int[STARTING_CAPACITY];
+        values = (V[]) new Object[STARTING_CAPACITY];
+    }
+
+    @Override
+    public V add(Integer key, V value) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return add(key.intValue(), value);
+    }
+
+    /**
+     * Adds the given key-value pair to the hash map without boxing the key.
+     *
+     * @param key key to add into the hash map.
+     * @param value value to add into the hash map.
+     * @throws IllegalArgumentException if value is null.
+     * @return null if the key was not already in the map. If it was in the
+     * map, return the old value associated with it.
+     */
+    public V add(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        if ((double) (size + 1) / keys.length > MAX_LOAD_FACTOR) {
+            resizeHelper();
+        }
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                V toReturn = values[i];
+                values[i] = value;
+                return toReturn;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V remove(Integer key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return remove(key.intValue());
+    }
+
+    /**
+     * Removes the value associated with the key without boxing the key.
+     *
+     * @param key the key to remove.
+     * @throws java.util.NoSuchElementException if the key does not exist.
+     * @return the value previously associated with the key.
+     */
+    public V remove(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            throw new NoSuchElementException("No element found");
+        }
+        V toReturn = values[i];
+        shiftBack(i);
+        size--;
+        return toReturn;
+    }
+
+    @Override
+    public V get(Integer key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return get(key.intValue());
+    }
+
+    /**
+     * Gets the value associated with the given key without boxing the key.
+     *
+     * @param key the key to search for.
+     * @throws java.util.NoSuchElementException if the key is not in the map.
+     * @return the value associated with the given key.
+     */
+    public V get(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            throw new NoSuchElementException("No element found");
+        }
+        return values[i];
+    }
+
+    @Override
+    public boolean contains(Integer key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return contains(key.intValue());
+    }
+
+    /**
+     * Returns whether or not the key is in the map without boxing the key.
+     *
+     * @param key the key to search for.
+     * @return whether or not the key is in the map.
+     */
+    public boolean contains(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        keys = new int[STARTING_CAPACITY];
+        values = (V[]) new Object[STARTING_CAPACITY];
+        size = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Integer> keySet() {
+        HashSet<Integer> keySet = new HashSet<>();
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                keySet.add(keys[i]);
+            }
+        }
+        return keySet;
+    }
+
+    @Override
+    public List<V> values() {
+        ArrayList<V> valueList = new ArrayList<>(size);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                valueList.add(values[i]);
+            }
+        }
+        return valueList;
+    }
+
+    /**
+     * Helper method to find the slot holding a key.
+     * @param key the key to search for
+     * @return index of the slot, or -1 if the key is not in the map
+     */
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (values[i] != null) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Helper method for remove.
+     * Empties slot i and moves every later entry of the same cluster that
+     * would no longer be reachable back into the hole.
+     * @param i index of the slot being emptied
+     */
+    private void shiftBack(int i) {
+        int mask = keys.length - 1;
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (values[j] != null) {
+            int home = mix(keys[j]) & mask;
+            // Move j into the hole unless its home lies cyclically in
+            // (hole, j], in which case it is still reachable.
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        values[hole] = null;
+    }
+
+    /**
+     * Helper method to resize.
+     * Doubles the length of the backing arrays and reinserts every entry.
+     */
+    private void resizeHelper() {
+        int[] oldKeys = keys;
+        V[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = (V[]) new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int j = mix(oldKeys[i]) & mask;
+                while (values[j] != null) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a key so that sequential keys do not form long
+     * clusters. This is the murmur3 32-bit finalizer.
+     * @param key the key to mix
+     * @return the mixed hash
+     */
+    static int mix(int key) {
+        int h = key;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
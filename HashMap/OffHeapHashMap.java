@@ -0,0 +1,505 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A hash map whose entries live in a memory-mapped file instead of on the
+ * Java heap, using linear probing as its collision policy.
+ *
+ * Keys and values are stored as fixed-size records written by the given
+ * serializers, so the garbage collector never sees them. Each slot holds a
+ * state byte, a hash of the key's bytes, the key and the value. Hashes are
+ * taken over the serialized bytes rather than from {@code hashCode()}, so
+ * they stay valid when the file is reopened by another JVM, and opening an
+ * existing file picks up its entries without rebuilding anything.
+ *
+ * The backing array length is a power of two and doubles when the load
+ * would exceed MAX_LOAD_FACTOR. A resize writes the new table to a
+ * temporary file next to the map file and then moves it into place.
+ * Mappings that are replaced or closed are released right away rather
+ * than left for the garbage collector.
+ *
+ * The whole file is a single mapping, and Java maps at most
+ * {@code Integer.MAX_VALUE} bytes at once, so the file is limited to just
+ * under 2GB. The number of slots is the largest power of two whose slots
+ * fit in that, and at most MAX_LOAD_FACTOR of them can be full. With
+ * 4 byte keys and 8 byte values, for example, a slot takes 17 bytes, the
+ * table stops at 2^26 slots and the map holds about 45 million entries.
+ * Adding past the limit throws IllegalStateException and leaves the map
+ * unchanged.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class OffHeapHashMap<K, V> implements HashMapInterface<K, V>,
+        AutoCloseable {
+
+    /**
+     * Starting number of slots. Must be a power of two.
+     */
+    public static final int STARTING_CAPACITY = 16;
+
+    private static final int MAGIC = 0x48415348;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int KEY_SIZE_OFFSET = 8;
+    private static final int VALUE_SIZE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 20;
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+
+    private final Path file;
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final int keySize;
+    private final int slotSize;
+    private final ByteBuffer scratch;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int size;
+
+    /**
+     * Open the hash map stored in a file, creating an empty one if the file
+     * does not exist yet.
+     *
+     * @param file the file backing the map
+     * @param keySerializer serializer for keys
+     * @param valueSerializer serializer for values
+     * @throws IllegalArgumentException if any argument is null, or if the
+     * file holds a map with different key or value sizes
+     * @throws java.io.UncheckedIOException if the file cannot be opened
+     */
+    public OffHeapHashMap(Path file, Serializer<K> keySerializer,
+                          Serializer<V> valueSerializer) {
+        if (file == null || keySerializer == null
+                || valueSerializer == null) {
+            throw new IllegalArgumentException("Argument is null");
+        }
+        this.file = file;
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        keySize = keySerializer.size();
+        slotSize = 1 + Integer.BYTES + keySize + valueSerializer.size();
+        scratch = ByteBuffer.allocate(keySize);
+        try {
+            if (Files.exists(file) && Files.size(file) > 0) {
+                open();
+            } else {
+                create(file, STARTING_CAPACITY);
+                open();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V add(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        if ((double) (size + 1) / capacity > MAX_LOAD_FACTOR) {
+            resizeHelper();
+        }
+        int hash = serializeKey(key);
+        int mask = capacity - 1;
+        int i = hash & mask;
+        while (buffer.get(offset(i)) == FULL) {
+            if (keyMatches(i, hash)) {
+                V toReturn = readValue(i);
+                writeValue(i, value);
+                return toReturn;
+            }
+            i = (i + 1) & mask;
+        }
+        int offset = offset(i);
+        buffer.put(offset, FULL);
+        buffer.putInt(offset + 1, hash);
+        buffer.position(offset + 1 + Integer.BYTES);
+        scratch.rewind();
+        buffer.put(scratch);
+        writeValue(i, value);
+        setSize(size + 1);
+        return null;
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            throw new NoSuchElementException("No element found");
+        }
+        V toReturn = readValue(i);
+        shiftBack(i);
+        setSize(size - 1);
+        return toReturn;
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        int i = indexOf(key);
+        if (i < 0) {
+            throw new NoSuchElementException("No element found");
+        }
+        return readValue(i);
+    }
+
+    @Override
+    public boolean contains(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key or value is null");
+        }
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public void clear() {
+        try {
+            channel.close();
+            unmap(buffer);
+            buffer = null;
+            create(file, STARTING_CAPACITY);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<K> keySet() {
+        HashSet<K> keySet = new HashSet<>();
+        for (int i = 0; i < capacity; i++) {
+            if (buffer.get(offset(i)) == FULL) {
+                buffer.position(offset(i) + 1 + Integer.BYTES);
+                keySet.add(keySerializer.read(buffer));
+            }
+        }
+        return keySet;
+    }
+
+    @Override
+    public List<V> values() {
+        ArrayList<V> valueList = new ArrayList<>(size);
+        for (int i = 0; i < capacity; i++) {
+            if (buffer.get(offset(i)) == FULL) {
+                valueList.add(readValue(i));
+            }
+        }
+        return valueList;
+    }
+
+    /**
+     * Writes any changes still in memory out to the file.
+     */
+    public void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Flushes the map and closes the file. The map cannot be used after
+     * it is closed; open the file again to get its contents back.
+     *
+     * @throws java.io.UncheckedIOException if the file cannot be closed
+     */
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+            unmap(buffer);
+            buffer = null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to map the file and read its header.
+     * @throws IOException if the file cannot be mapped
+     */
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.close();
+            throw new IllegalArgumentException("Not a hash map file");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                channel.size());
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC
+                || buffer.getInt(VERSION_OFFSET) != VERSION) {
+            channel.close();
+            unmap(buffer);
+            buffer = null;
+            throw new IllegalArgumentException("Not a hash map file");
+        }
+        if (buffer.getInt(KEY_SIZE_OFFSET) != keySize
+                || buffer.getInt(VALUE_SIZE_OFFSET)
+                != valueSerializer.size()) {
+            channel.close();
+            unmap(buffer);
+            buffer = null;
+            throw new IllegalArgumentException(
+                    "File was written with different serializers");
+        }
+        capacity = buffer.getInt(CAPACITY_OFFSET);
+        size = buffer.getInt(SIZE_OFFSET);
+    }
+
+    /**
+     * Helper method to write an empty table of the given capacity.
+     * @param target the file to write
+     * @param slots number of slots, a power of two
+     * @throws IOException if the file cannot be written
+     */
+    private void create(Path target, int slots) throws IOException {
+        long length = HEADER_SIZE + (long) slots * slotSize;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Map is too large to map");
+        }
+        try (FileChannel out = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE, 0,
+                    length);
+            map.putInt(MAGIC_OFFSET, MAGIC);
+            map.putInt(VERSION_OFFSET, VERSION);
+            map.putInt(KEY_SIZE_OFFSET, keySize);
+            map.putInt(VALUE_SIZE_OFFSET, valueSerializer.size());
+            map.putInt(CAPACITY_OFFSET, slots);
+            map.putInt(SIZE_OFFSET, 0);
+            map.force();
+            unmap(map);
+        }
+    }
+
+    /**
+     * Helper method to resize.
+     * Copies every full slot into a doubled table in a temporary file, then
+     * moves that file over the map file and maps it. The old mapping is
+     * released before the move, so the old file's pages are freed at once.
+     */
+    private void resizeHelper() {
+        Path temp = file.resolveSibling(file.getFileName() + ".resize");
+        int newCapacity = capacity * 2;
+        try {
+            create(temp, newCapacity);
+            try (FileChannel out = FileChannel.open(temp,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer map = out.map(FileChannel.MapMode.READ_WRITE,
+                        0, out.size());
+                int mask = newCapacity - 1;
+                for (int i = 0; i < capacity; i++) {
+                    int from = offset(i);
+                    if (buffer.get(from) == FULL) {
+                        int j = buffer.getInt(from + 1) & mask;
+                        while (map.get(HEADER_SIZE + j * slotSize) == FULL) {
+                            j = (j + 1) & mask;
+                        }
+                        int to = HEADER_SIZE + j * slotSize;
+                        for (int b = 0; b < slotSize; b++) {
+                            map.put(to + b, buffer.get(from + b));
+                        }
+                    }
+                }
+                map.putInt(SIZE_OFFSET, size);
+                map.force();
+                unmap(map);
+            }
+            channel.close();
+            unmap(buffer);
+            buffer = null;
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method to release a mapping right away. A mapping is otherwise
+     * only released when the garbage collector finds its buffer unreachable,
+     * which can keep every old table of a growing map mapped at once. The
+     * buffer must not be used afterwards. If the running JVM offers no way
+     * to do this, the mapping is left for the garbage collector.
+     * @param map the mapping to release
+     */
+    private static void unmap(MappedByteBuffer map) {
+        if (map == null) {
+            return;
+        }
+        try {
+            // Java 9 and later.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                    ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), map);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            try {
+                // Java 8.
+                Method cleanerMethod = map.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(map);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                // Left for the garbage collector.
+            }
+        }
+    }
+
+    /**
+     * Helper method for remove.
+     * Empties slot i and moves every later entry of the same cluster that
+     * would no longer be reachable back into the hole.
+     * @param i index of the slot being emptied
+     */
+    private void shiftBack(int i) {
+        int mask = capacity - 1;
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (buffer.get(offset(j)) == FULL) {
+            int home = buffer.getInt(offset(j) + 1) & mask;
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                int from = offset(j);
+                int to = offset(hole);
+                for (int b = 0; b < slotSize; b++) {
+                    buffer.put(to + b, buffer.get(from + b));
+                }
+                hole = j;
+            }
+            j = (j + 1) & mask;
+        }
+        buffer.put(offset(hole), EMPTY);
+    }
+
+    /**
+     * Helper method to find the slot holding a key.
+     * @param key the key to search for
+     * @return index of the slot, or -1 if the key is not in the map
+     */
+    private int indexOf(K key) {
+        int hash = serializeKey(key);
+        int mask = capacity - 1;
+        int i = hash & mask;
+        while (buffer.get(offset(i)) == FULL) {
+            if (keyMatches(i, hash)) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Helper method to write a key into the scratch buffer and hash its
+     * bytes with FNV-1a followed by the murmur3 finalizer.
+     * @param key the key to serialize
+     * @return hash of the key's bytes
+     */
+    private int serializeKey(K key) {
+        scratch.clear();
+        keySerializer.write(key, scratch);
+        int h = 0x811c9dc5;
+        for (int b = 0; b < keySize; b++) {
+            h = (h ^ scratch.get(b)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Helper method to compare the key in a slot with the scratch buffer.
+     * @param i index of a full slot
+     * @param hash hash of the key in the scratch buffer
+     * @return whether the slot holds that key
+     */
+    private boolean keyMatches(int i, int hash) {
+        int offset = offset(i);
+        if (buffer.getInt(offset + 1) != hash) {
+            return false;
+        }
+        int keyOffset = offset + 1 + Integer.BYTES;
+        for (int b = 0; b < keySize; b++) {
+            if (buffer.get(keyOffset + b) != scratch.get(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method to read the value of a slot.
+     * @param i index of a full slot
+     * @return the value
+     */
+    private V readValue(int i) {
+        buffer.position(offset(i) + 1 + Integer.BYTES + keySize);
+        return valueSerializer.read(buffer);
+    }
+
+    /**
+     * Helper method to write the value of a slot.
+     * @param i index of a full slot
+     * @param value the value to write
+     */
+    private void writeValue(int i, V value) {
+        buffer.position(offset(i) + 1 + Integer.BYTES + keySize);
+        valueSerializer.write(value, buffer);
+    }
+
+    /**
+     * Helper method to update the size in memory and in the header.
+     * @param newSize the new size
+     */
+    private void setSize(int newSize) {
+        size = newSize;
+        buffer.putInt(SIZE_OFFSET, newSize);
+    }
+
+    /**
+     * Helper method to get the byte offset of a slot.
+     * @param i index of the slot
+     * @return offset of the slot's state byte
+     */
+    private int offset(int i) {
+        return HEADER_SIZE + i * slotSize;
+    }
+}
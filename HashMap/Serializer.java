@@ -0,0 +1,113 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values of one type to and from a fixed number of bytes, so
+ * they can be stored outside the Java heap.
+ *
+ * Every value must take exactly {@code size()} bytes, and equal values
+ * must be written as equal bytes, since stored keys are compared byte by
+ * byte rather than with {@code equals}.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public interface Serializer<T> {
+
+    /**
+     * Returns the number of bytes every value takes.
+     *
+     * @return size of one value in bytes
+     */
+    int size();
+
+    /**
+     * Writes a value at the buffer's position, advancing it by
+     * {@code size()} bytes.
+     *
+     * @param value the value to write, never null
+     * @param buffer the buffer to write to
+     */
+    void write(T value, ByteBuffer buffer);
+
+    /**
+     * Reads a value at the buffer's position, advancing it by
+     * {@code size()} bytes.
+     *
+     * @param buffer the buffer to read from
+     * @return the value read
+     */
+    T read(ByteBuffer buffer);
+
+    /**
+     * Returns a serializer for Integer values.
+     *
+     * @return a 4 byte serializer
+     */
+    static Serializer<Integer> ofInt() {
+        return new Serializer<Integer>() {
+            @Override
+            public int size() {
+                return Integer.BYTES;
+            }
+
+            @Override
+            public void write(Integer value, ByteBuffer buffer) {
+                buffer.putInt(value);
+            }
+
+            @Override
+            public Integer read(ByteBuffer buffer) {
+                return buffer.getInt();
+            }
+        };
+    }
+
+    /**
+     * Returns a serializer for Long values.
+     *
+     * @return an 8 byte serializer
+     */
+    static Serializer<Long> ofLong() {
+        return new Serializer<Long>() {
+            @Override
+            public int size() {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void write(Long value, ByteBuffer buffer) {
+                buffer.putLong(value);
+            }
+
+            @Override
+            public Long read(ByteBuffer buffer) {
+                return buffer.getLong();
+            }
+        };
+    }
+
+    /**
+     * Returns a serializer for Double values. Values are stored as their
+     * raw bits, so 0.0 and -0.0 are different keys.
+     *
+     * @return an 8 byte serializer
+     */
+    static Serializer<Double> ofDouble() {
+        return new Serializer<Double>() {
+            @Override
+            public int size() {
+                return Double.BYTES;
+            }
+
+            @Override
+            public void write(Double value, ByteBuffer buffer) {
+                buffer.putDouble(value);
+            }
+
+            @Override
+            public Double read(ByteBuffer buffer) {
+                return buffer.getDouble();
+            }
+        };
+    }
+}
@@ -0,0 +1,427 @@
+/**
+ * A bucket of a {@code HashMap} whose chain grew too long, kept as an AVL
+ * tree so that lookups in it take O(log n) instead of O(n).
+ *
+ * The bin sits in the backing array in place of the first entry of the
+ * chain. Its own key and value are always null, and {@code getNext()}
+ * returns the first real entry, so the entries can still be walked as an
+ * ordinary chain. The tree is ordered by hash code, then by
+ * {@code compareTo} when the keys are mutually comparable, and finally by
+ * insertion order. Keys that tie on everything but insertion order are
+ * found by searching both subtrees, as with a chain.
+ *
+ * The rotations follow the ones in AVL, but heights are stored in the
+ * nodes instead of being recomputed from the leaves.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class TreeBin<K, V> extends MapEntry<K, V> {
+
+    /**
+     * Chains longer than this are converted into a tree.
+     */
+    public static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * Trees that shrink to this many entries are converted back to a chain.
+     */
+    public static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * Chains are only converted into trees in backing arrays at least this
+     * long. In a smaller array a long chain is more likely crowding than
+     * colliding hash codes, so the array is grown instead.
+     */
+    public static final int MIN_TREEIFY_CAPACITY = 64;
+
+    private TreeEntry<K, V> root;
+    private TreeEntry<K, V> last;
+    private int size;
+    private long sequence;
+
+    /**
+     * Create a tree holding every entry of a chain, in chain order.
+     *
+     * @param head first entry of the chain to convert
+     */
+    public TreeBin(MapEntry<K, V> head) {
+        super(null, null);
+        for (MapEntry<K, V> curr = head; curr != null;
+                curr = curr.getNext()) {
+            put(curr.getKey(), curr.getValue());
+        }
+    }
+
+    /**
+     * Finds the entry for a key.
+     *
+     * @param key the key to search for
+     * @return the entry holding the key, or null if it is not in this bin
+     */
+    public MapEntry<K, V> find(K key) {
+        return findHelper(root, key.hashCode(), key);
+    }
+
+    /**
+     * Adds a key-value pair, or replaces the value if the key is present.
+     * New entries are appended to the end of the chain.
+     *
+     * @param key key to add
+     * @param value value to add
+     * @return the old value, or null if the key was not already present
+     */
+    public V put(K key, V value) {
+        int hash = key.hashCode();
+        TreeEntry<K, V> found = findHelper(root, hash, key);
+        if (found != null) {
+            V toReturn = found.getValue();
+            found.setValue(value);
+            return toReturn;
+        }
+        TreeEntry<K, V> entry = new TreeEntry<>(key, value, hash, sequence++);
+        root = addHelper(root, entry);
+        if (last == null) {
+            setNext(entry);
+        } else {
+            last.setNext(entry);
+            entry.prev = last;
+        }
+        last = entry;
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the entry for a key.
+     *
+     * @param key the key to remove
+     * @return the removed value, or null if the key was not in this bin
+     */
+    public V remove(K key) {
+        TreeEntry<K, V> target = findHelper(root, key.hashCode(), key);
+        if (target == null) {
+            return null;
+        }
+        root = removeHelper(root, target);
+        TreeEntry<K, V> next = (TreeEntry<K, V>) target.getNext();
+        if (target.prev == null) {
+            setNext(next);
+        } else {
+            target.prev.setNext(next);
+        }
+        if (next == null) {
+            last = target.prev;
+        } else {
+            next.prev = target.prev;
+        }
+        size--;
+        return target.getValue();
+    }
+
+    /**
+     * Returns the number of entries in this bin.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of levels of the tree, the most entries a lookup
+     * compares against when no hash codes are equal.
+     *
+     * @return number of levels, 0 if the bin is empty
+     */
+    public int levels() {
+        return height(root) + 1;
+    }
+
+    /**
+     * Converts this bin back into a plain chain, keeping the chain order.
+     * The tree links of every entry are cleared and the bin is left empty,
+     * so the chain does not keep the old tree reachable.
+     *
+     * @return first entry of the chain
+     */
+    public MapEntry<K, V> untreeify() {
+        MapEntry<K, V> head = getNext();
+        for (MapEntry<K, V> curr = head; curr != null;
+                curr = curr.getNext()) {
+            TreeEntry<K, V> entry = (TreeEntry<K, V>) curr;
+            entry.left = null;
+            entry.right = null;
+            entry.prev = null;
+        }
+        setNext(null);
+        root = null;
+        last = null;
+        size = 0;
+        return head;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TreeBin[");
+        for (MapEntry<K, V> curr = getNext(); curr != null;
+                curr = curr.getNext()) {
+            sb.append(curr);
+            if (curr.getNext() != null) {
+                sb.append(", ");
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * Helper method for find, put and remove.
+     * Descends by hash and comparable order, and searches both subtrees
+     * when neither can tell the keys apart.
+     * @param current current node
+     * @param hash hash code of the key
+     * @param key the key to search for
+     * @return the node holding the key, or null if there is none
+     */
+    private TreeEntry<K, V> findHelper(TreeEntry<K, V> current, int hash,
+                                       K key) {
+        while (current != null) {
+            if (hash < current.hash) {
+                current = current.left;
+            } else if (hash > current.hash) {
+                current = current.right;
+            } else if (key.equals(current.getKey())) {
+                return current;
+            } else {
+                int c = compareComparables(key, current.getKey());
+                if (c < 0) {
+                    current = current.left;
+                } else if (c > 0) {
+                    current = current.right;
+                } else {
+                    TreeEntry<K, V> found =
+                            findHelper(current.left, hash, key);
+                    if (found != null) {
+                        return found;
+                    }
+                    current = current.right;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper method for put.
+     * @param current current node
+     * @param entry the new node
+     * @return the current node used for recursion
+     */
+    private TreeEntry<K, V> addHelper(TreeEntry<K, V> current,
+                                      TreeEntry<K, V> entry) {
+        if (current == null) {
+            return entry;
+        }
+        if (order(entry, current) < 0) {
+            current.left = addHelper(current.left, entry);
+        } else {
+            current.right = addHelper(current.right, entry);
+        }
+        return rotateHelper(current);
+    }
+
+    /**
+     * Helper method for remove.
+     * Unlinks the target node, putting its in-order successor in its place
+     * when it has two children.
+     * @param current current node
+     * @param target the node to remove
+     * @return the current node used for recursion
+     */
+    private TreeEntry<K, V> removeHelper(TreeEntry<K, V> current,
+                                         TreeEntry<K, V> target) {
+        if (current == target) {
+            if (current.left == null) {
+                return current.right;
+            }
+            if (current.right == null) {
+                return current.left;
+            }
+            TreeEntry<K, V> successor = current.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = removeMinHelper(current.right);
+            successor.left = current.left;
+            return rotateHelper(successor);
+        }
+        if (order(target, current) < 0) {
+            current.left = removeHelper(current.left, target);
+        } else {
+            current.right = removeHelper(current.right, target);
+        }
+        return rotateHelper(current);
+    }
+
+    /**
+     * Helper method for removeHelper.
+     * @param current current node
+     * @return the subtree without its smallest node
+     */
+    private TreeEntry<K, V> removeMinHelper(TreeEntry<K, V> current) {
+        if (current.left == null) {
+            return current.right;
+        }
+        current.left = removeMinHelper(current.left);
+        return rotateHelper(current);
+    }
+
+    /**
+     * Helper method for rotation.
+     * Updates the height of a node and rotates when the absolute value of
+     * its balance factor is 2.
+     * @param current the parent's node
+     * @return new parent's node
+     */
+    private TreeEntry<K, V> rotateHelper(TreeEntry<K, V> current) {
+        update(current);
+        int balance = balanceFactor(current);
+        if (balance == 2) {
+            if (balanceFactor(current.left) < 0) {
+                current.left = rotateLeft(current.left);
+            }
+            return rotateRight(current);
+        }
+        if (balance == -2) {
+            if (balanceFactor(current.right) > 0) {
+                current.right = rotateRight(current.right);
+            }
+            return rotateLeft(current);
+        }
+        return current;
+    }
+
+    /**
+     * Helper method rotateLeft.
+     * @param current the parent's node
+     * @return new parent's node
+     */
+    private TreeEntry<K, V> rotateLeft(TreeEntry<K, V> current) {
+        TreeEntry<K, V> right = current.right;
+        current.right = right.left;
+        right.left = current;
+        update(current);
+        update(right);
+        return right;
+    }
+
+    /**
+     * Helper method rotateRight.
+     * @param current the parent's node
+     * @return new parent's node
+     */
+    private TreeEntry<K, V> rotateRight(TreeEntry<K, V> current) {
+        TreeEntry<K, V> left = current.left;
+        current.left = left.right;
+        left.right = current;
+        update(current);
+        update(left);
+        return left;
+    }
+
+    /**
+     * Helper method to recompute the height of a node from its children.
+     * @param current node to update
+     */
+    private void update(TreeEntry<K, V> current) {
+        current.height = 1 + Math.max(height(current.left),
+                height(current.right));
+    }
+
+    /**
+     * Helper method to get the height of a possibly empty subtree.
+     * @param current root of the subtree
+     * @return its height, or -1 if it is empty
+     */
+    private int height(TreeEntry<K, V> current) {
+        return current == null ? -1 : current.height;
+    }
+
+    /**
+     * Helper method to get the balance factor of a node.
+     * @param current the node
+     * @return height of the left subtree minus height of the right subtree
+     */
+    private int balanceFactor(TreeEntry<K, V> current) {
+        return height(current.left) - height(current.right);
+    }
+
+    /**
+     * Helper method giving the total order of the tree.
+     * @param a first node
+     * @param b second node
+     * @return negative, zero or positive as a sorts before, with or after b
+     */
+    private int order(TreeEntry<K, V> a, TreeEntry<K, V> b) {
+        if (a.hash != b.hash) {
+            return a.hash < b.hash ? -1 : 1;
+        }
+        int c = compareComparables(a.getKey(), b.getKey());
+        if (c != 0) {
+            return c;
+        }
+        return Long.compare(a.sequence, b.sequence);
+    }
+
+    /**
+     * Helper method to compare two keys when they are of the same class and
+     * that class is Comparable.
+     * @param a first key
+     * @param b second key
+     * @return the result of compareTo, or 0 if the keys are not comparable
+     */
+    @SuppressWarnings("unchecked")
+    private static int compareComparables(Object a, Object b) {
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return Integer.signum(((Comparable<Object>) a).compareTo(b));
+        }
+        return 0;
+    }
+
+    /**
+     * An entry of a tree bin. It stays linked into the bin's chain through
+     * {@code next} and {@code prev}, and into the tree through
+     * {@code left} and {@code right}.
+     */
+    private static class TreeEntry<K, V> extends MapEntry<K, V> {
+        private final int hash;
+        private final long sequence;
+        private TreeEntry<K, V> left;
+        private TreeEntry<K, V> right;
+        private TreeEntry<K, V> prev;
+        private int height;
+
+        /**
+         * Create a tree entry.
+         * @param key key for this entry
+         * @param value value for this entry
+         * @param hash hash code of the key
+         * @param sequence insertion order, used to break ties
+         */
+        TreeEntry(K key, V value, int hash, long sequence) {
+            super(key, value);
+            this.hash = hash;
+            this.sequence = sequence;
+        }
+    }
+}
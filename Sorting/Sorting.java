@@ -1,7 +1,10 @@
-import java.util.Queue;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
-import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ToLongFunction;
 
 /**
  * Your implementation of various sorting algorithms.
@@ -11,6 +14,50 @@ import java.util.LinkedList;
  */
 public class Sorting {
 
+    /**
+     * Ranges this short are finished with insertion sort instead of being
+     * partitioned further.
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /**
+     * Ranges this short are sorted sequentially by parallelQuickSort
+     * instead of being split into more tasks.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * Number of times in a row one run must win a merge before
+     * adaptiveMergeSort starts galloping.
+     */
+    private static final int MIN_GALLOP = 7;
+
+    /**
+     * Ranges longer than this take the median of three medians as the
+     * pivot in pdqSort instead of the median of three elements.
+     */
+    private static final int NINTHER_THRESHOLD = 128;
+
+    /**
+     * Number of elements pdqSort may move while checking whether a range
+     * that needed no swaps is already sorted.
+     */
+    private static final int PARTIAL_INSERTION_LIMIT = 8;
+
+    /**
+     * Number of elements pdqSort on ints scans at a time in each block
+     * of a block partition.
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * Number of bits in each digit of the radix sorts, and the number and
+     * mask of the digit values.
+     */
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX - 1;
+
     /**
      * Implement cocktail shaker sort.
      *
@@ -109,6 +156,80 @@ public class Sorting {
         }
     }
 
+    /**
+     * Implement insertion sort for ints, comparing them directly instead of
+     * boxing them for a Comparator.
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n^2)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array that must be sorted after the method runs
+     */
+    public static void insertionSort(int[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        insertionSortRange(arr, 0, arr.length - 1);
+    }
+
+    /**
+     * Implement insertion sort for longs, comparing them directly instead of
+     * boxing them for a Comparator.
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n^2)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array that must be sorted after the method runs
+     */
+    public static void insertionSort(long[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        insertionSortRange(arr, 0, arr.length - 1);
+    }
+
+    /**
+     * Implement insertion sort for doubles, comparing them directly instead of
+     * boxing them for a Comparator.
+     *
+     * NaN is put last and -0.0 before 0.0, as in {@code Arrays.sort}.
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n^2)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array that must be sorted after the method runs
+     */
+    public static void insertionSort(double[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int negativeZeros = clearNegativeZeros(arr);
+        int end = moveNaNsToEnd(arr);
+        insertionSortRange(arr, 0, end - 1);
+        restoreNegativeZeros(arr, end, negativeZeros);
+    }
+
     /**
      * Implement selection sort.
      *
@@ -210,7 +331,7 @@ public class Sorting {
         }
         swap(arr, pivotIndex, high);
         j--;
-        while (i < j) {
+        while (i <= j) {
             while (i <= j
                     && comp.compare(arr[i], arr[high]) < 0) {
                 i++;
@@ -219,11 +340,12 @@ public class Sorting {
                     && comp.compare(arr[j], arr[high]) > 0) {
                 j--;
             }
-            if (i < j) {
-                swap(arr, i, j);
-                i++;
-                j--;
+            if (i >= j) {
+                break;
             }
+            swap(arr, i, j);
+            i++;
+            j--;
         }
         swap(arr, i, high);
         partition(arr, low, i - 1, rand, comp);
@@ -231,198 +353,2911 @@ public class Sorting {
     }
 
     /**
-     * Helper method to swap two elements
-     * @param arr array that contains the elements
-     * @param i index of the first element
-     * @param j index of the second element
+     * Implement dual-pivot quick sort.
+     *
+     * Each pass picks two pivots from five evenly spaced samples and splits
+     * the range into the elements below the smaller pivot, between the
+     * two, and above the larger one. Ranges of at most
+     * INSERTION_SORT_THRESHOLD elements are finished with insertion sort.
+     * Only the two smaller parts are sorted recursively while the largest
+     * is handled by the same call, so the stack never gets deeper than
+     * O(log n).
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n^2)
+     *
+     * And a best case running time of:
+     *  O(n log n)
+     *
+     * Note that there may be duplicates in the array.
+     *
+     * @throws IllegalArgumentException if the array or comparator is null
      * @param <T> data type to sort
+     * @param arr the array that must be sorted after the method runs
+     * @param comparator the Comparator used to compare the data in arr
      */
-    private static <T> void swap(T[] arr, int i, int j) {
-        T temp = arr[i];
-        arr[i] = arr[j];
-        arr[j] = temp;
+    public static <T> void dualPivotQuickSort(T[] arr,
+                                              Comparator<T> comparator) {
+        if (arr == null || comparator == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        dualPivotH(arr, 0, arr.length - 1, comparator);
     }
 
     /**
-     * Implement merge sort.
+     * Implement parallel quick sort.
+     *
+     * Works like dualPivotQuickSort, but the parts of each split are
+     * sorted as separate tasks in the common ForkJoinPool, down to ranges
+     * of PARALLEL_THRESHOLD elements, so large arrays are sorted on every
+     * core. The comparator may be called from several threads at once.
      *
      * It should be:
-     *  stable
+     *  in-place
      *
      * Have a worst case running time of:
-     *  O(n log n)
+     *  O(n^2)
      *
      * And a best case running time of:
      *  O(n log n)
      *
-     * You can create more arrays to run mergesort, but at the end,
-     * everything should be merged back into the original T[]
-     * which was passed in.
-     *
-     * ********************* IMPORTANT ************************
-     * FAILURE TO DO SO MAY CAUSE ClassCastException AND CAUSE
-     * YOUR METHOD TO FAIL ALL THE TESTS FOR MERGE SORT
-     * ********************************************************
-     *
-     * Any duplicates in the array should be in the same relative position after
-     * sorting as they were before sorting.
+     * Note that there may be duplicates in the array.
      *
      * @throws IllegalArgumentException if the array or comparator is null
      * @param <T> data type to sort
-     * @param arr the array to be sorted
+     * @param arr the array that must be sorted after the method runs
      * @param comparator the Comparator used to compare the data in arr
      */
-    public static <T> void mergeSort(T[] arr, Comparator<T> comparator) {
+    public static <T> void parallelQuickSort(T[] arr,
+                                             Comparator<T> comparator) {
         if (arr == null || comparator == null) {
             throw new IllegalArgumentException("Invalid arguments");
         }
-        T[] temp = mergeH(arr, comparator);
-        for (int i = 0; i < arr.length; i++) {
-            arr[i] = temp[i];
-        }
+        ForkJoinPool.commonPool().invoke(
+                new QuickSortTask<>(arr, 0, arr.length - 1, comparator));
     }
 
     /**
-     * Helper method for mergeSort.
-     * It makes the array separated.
+     * Helper method for dualPivotQuickSort.
+     * Recurses into the two smaller parts of each split and loops on the
+     * largest.
      * @param <T> data type to sort
-     * @param arr the array to be sorted
-     * @param comparator the Comparator used to compare the data in arr
-     * @return the completed array
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
      */
-    private static <T> T[] mergeH(T[] arr, Comparator<T> comparator) {
-        if (arr.length <= 1) {
-            return arr;
-        }
-        T[] left = (T[]) new Object[(arr.length / 2)];
-        T[] right = (T[]) new Object[(arr.length - left.length)];
-        T[] result;
-        int middle = arr.length / 2;
-        int j = 0;
-        for (int i = 0; i < arr.length; i++) {
-            if (i < middle) {
-                left[i] = arr[i];
+    private static <T> void dualPivotH(T[] arr, int low, int high,
+                                       Comparator<T> comp) {
+        while (high - low + 1 > INSERTION_SORT_THRESHOLD) {
+            int[] pivots = dualPivotPartition(arr, low, high, comp);
+            int lt = pivots[0];
+            int gt = pivots[1];
+            // With equal pivots everything between them equals the pivots.
+            boolean middle = comp.compare(arr[lt], arr[gt]) < 0;
+            int leftSize = lt - low;
+            int middleSize = middle ? gt - lt - 1 : 0;
+            int rightSize = high - gt;
+            if (leftSize >= middleSize && leftSize >= rightSize) {
+                if (middle) {
+                    dualPivotH(arr, lt + 1, gt - 1, comp);
+                }
+                dualPivotH(arr, gt + 1, high, comp);
+                high = lt - 1;
+            } else if (rightSize >= middleSize) {
+                dualPivotH(arr, low, lt - 1, comp);
+                if (middle) {
+                    dualPivotH(arr, lt + 1, gt - 1, comp);
+                }
+                low = gt + 1;
             } else {
-                right[j] = arr[i];
-                j++;
+                dualPivotH(arr, low, lt - 1, comp);
+                dualPivotH(arr, gt + 1, high, comp);
+                low = lt + 1;
+                high = gt - 1;
             }
         }
-        left = mergeH(left, comparator);
-        right = mergeH(right, comparator);
-        result = merge(left, right, comparator);
-        return result;
+        insertionSortRange(arr, low, high, comp);
     }
 
     /**
-     * Helper method for mergeH.
-     * It sorts and combines left and right array.
-     * @param left left side of the array
-     * @param right right side of the array
-     * @param comparator the Comparator used to compare the data in arr
+     * Helper method for dualPivotH and QuickSortTask.
+     * Sorts five evenly spaced samples, moves the second and fourth to the
+     * ends of the range as pivots, and partitions the range around them.
      * @param <T> data type to sort
-     * @return the combined array
+     * @param arr the array being sorted
+     * @param low first index of the range, at least 8 before high
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     * @return final indexes of the smaller and the larger pivot
      */
-    private static <T> T[] merge(T[] left, T[] right,
-                                 Comparator<T> comparator) {
-
-        T[] result = (T[]) new Object[left.length + right.length];
-        int i = 0;
-        int j = 0;
-        int k = 0;
-        while (i < left.length && j < right.length) {
-            if (comparator.compare(left[i], right[j]) <= 0) {
-                result[k] = left[i];
-                k++;
-                i++;
-            } else if (j < right.length
-                    && comparator.compare(right[j], left[i]) < 0) {
-                result[k] = right[j];
-                k++;
-                j++;
+    private static <T> int[] dualPivotPartition(T[] arr, int low, int high,
+                                                Comparator<T> comp) {
+        int length = high - low + 1;
+        int seventh = (length >> 3) + (length >> 6) + 1;
+        int[] samples = new int[5];
+        samples[2] = (low + high) >>> 1;
+        samples[1] = samples[2] - seventh;
+        samples[0] = samples[1] - seventh;
+        samples[3] = samples[2] + seventh;
+        samples[4] = samples[3] + seventh;
+        for (int i = 1; i < samples.length; i++) {
+            T sample = arr[samples[i]];
+            int j = i - 1;
+            while (j >= 0 && comp.compare(sample, arr[samples[j]]) < 0) {
+                arr[samples[j + 1]] = arr[samples[j]];
+                j--;
             }
+            arr[samples[j + 1]] = sample;
         }
-        if (i < left.length) {
-            for (int x = i; x < left.length; x++) {
-                result[k] = left[x];
-                k++;
+        swap(arr, samples[1], low);
+        swap(arr, samples[3], high);
+        T p = arr[low];
+        T q = arr[high];
+        int less = low + 1;
+        int great = high - 1;
+        for (int k = less; k <= great; k++) {
+            T current = arr[k];
+            if (comp.compare(current, p) < 0) {
+                arr[k] = arr[less];
+                arr[less++] = current;
+            } else if (comp.compare(current, q) > 0) {
+                while (k < great && comp.compare(arr[great], q) > 0) {
+                    great--;
+                }
+                arr[k] = arr[great];
+                arr[great--] = current;
+                current = arr[k];
+                if (comp.compare(current, p) < 0) {
+                    arr[k] = arr[less];
+                    arr[less++] = current;
+                }
             }
         }
-        if (j < right.length) {
-            for (int x = j; x < right.length; x++) {
-                result[k] = right[x];
-                k++;
+        arr[low] = arr[less - 1];
+        arr[less - 1] = p;
+        arr[high] = arr[great + 1];
+        arr[great + 1] = q;
+        return new int[] {less - 1, great + 1};
+    }
+
+    /**
+     * Helper method to insertion sort part of an array, shifting elements
+     * instead of swapping them.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     */
+    private static <T> void insertionSortRange(T[] arr, int low, int high,
+                                               Comparator<T> comp) {
+        for (int i = low + 1; i <= high; i++) {
+            T current = arr[i];
+            int j = i - 1;
+            while (j >= low && comp.compare(current, arr[j]) < 0) {
+                arr[j + 1] = arr[j];
+                j--;
             }
+            arr[j + 1] = current;
         }
-        return result;
     }
 
+    /**
+     * Sorts a range for parallelQuickSort: splits it with one dual-pivot
+     * partition and sorts the parts as subtasks, or sorts it directly once
+     * it is short. Tasks are never serialized.
+     * @param <T> data type to sort
+     */
+    @SuppressWarnings("serial")
+    private static class QuickSortTask<T> extends RecursiveAction {
+        private final T[] arr;
+        private final int low;
+        private final int high;
+        private final Comparator<T> comp;
+
+        /**
+         * Create a task for one range.
+         * @param arr the array being sorted
+         * @param low first index of the range
+         * @param high last index of the range
+         * @param comp the Comparator used to compare the data in arr
+         */
+        QuickSortTask(T[] arr, int low, int high, Comparator<T> comp) {
+            this.arr = arr;
+            this.low = low;
+            this.high = high;
+            this.comp = comp;
+        }
+
+        @Override
+        protected void compute() {
+            if (high - low + 1 <= PARALLEL_THRESHOLD) {
+                dualPivotH(arr, low, high, comp);
+                return;
+            }
+            int[] pivots = dualPivotPartition(arr, low, high, comp);
+            int lt = pivots[0];
+            int gt = pivots[1];
+            QuickSortTask<T> left = new QuickSortTask<>(arr, low, lt - 1, comp);
+            QuickSortTask<T> right =
+                    new QuickSortTask<>(arr, gt + 1, high, comp);
+            if (comp.compare(arr[lt], arr[gt]) < 0) {
+                invokeAll(left, new QuickSortTask<>(arr, lt + 1, gt - 1, comp),
+                        right);
+            } else {
+                invokeAll(left, right);
+            }
+        }
+    }
 
     /**
-     * Implement radix sort.
+     * Implement pattern-defeating quick sort, an introsort in the style of
+     * Orson Peters' pdqsort.
      *
-     * Remember you CANNOT convert the ints to strings at any point in your
-     * code!
+     * The pivot is the median of the first, middle and last elements, or
+     * for ranges longer than NINTHER_THRESHOLD the median of three such
+     * medians. When the pivot equals the element just before the range,
+     * which is known to be no greater than anything in it, every element
+     * equal to the pivot is gathered on the left and skipped, so inputs
+     * with many duplicates are split three ways and take O(n log k) time
+     * for k distinct values. A split that leaves less than an eighth on
+     * one side swaps a few elements around to break up the pattern that
+     * caused it, and a split that moved nothing is followed by an
+     * insertion sort that gives up after a few moves, which finishes
+     * sorted input in O(n). After 2 log n levels a range is heap sorted,
+     * and only the smaller part of each split is sorted recursively, so
+     * the sort needs no Random, never takes more than O(n log n) time and
+     * never uses more than O(log n) stack.
      *
      * It should be:
-     *  stable
+     *  in-place
      *
      * Have a worst case running time of:
-     *  O(kn)
+     *  O(n log n)
      *
      * And a best case running time of:
-     *  O(kn)
+     *  O(n)
      *
-     * Any duplicates in the array should be in the same relative position after
-     * sorting as they were before sorting. (stable)
+     * Note that there may be duplicates in the array.
      *
-     * DO NOT USE {@code Math.pow()} in your sort. Instead, if you need to, use
-     * the provided {@code pow()} method below.
+     * @throws IllegalArgumentException if the array or comparator is null
+     * @param <T> data type to sort
+     * @param arr the array that must be sorted after the method runs
+     * @param comparator the Comparator used to compare the data in arr
+     */
+    public static <T> void pdqSort(T[] arr, Comparator<T> comparator) {
+        if (arr == null || comparator == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        if (arr.length > 1) {
+            pdqH(arr, 0, arr.length - 1, comparator, depthLimit(arr.length),
+                    true);
+        }
+    }
+
+    /**
+     * Implement pattern-defeating quick sort for ints.
      *
-     * You may use an ArrayList or LinkedList if you wish, but it may only be
-     * used inside radix sort and any radix sort helpers. Do NOT use these
-     * classes with other sorts.
+     * Works like pdqSort for objects, but partitions in blocks
+     * (Edelkamp and Weiss, "BlockQuicksort"). The element on each side
+     * that is out of place is not found with a branch per element, which
+     * is mispredicted half the time on random data. Instead a block of
+     * BLOCK_SIZE elements is scanned without branches, recording the
+     * offsets of the out of place ones, and the recorded elements are
+     * then swapped pairwise.
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
      *
      * @throws IllegalArgumentException if the array is null
-     * @param arr the array to be sorted
-     * @return the sorted array
+     * @param arr the array that must be sorted after the method runs
      */
-    public static int[] radixSort(int[] arr) {
+    public static void pdqSort(int[] arr) {
         if (arr == null) {
             throw new IllegalArgumentException("Invalid arguments");
         }
-        radixH(arr, 1);
-        return arr;
+        if (arr.length > 1) {
+            pdqH(arr, 0, arr.length - 1, depthLimit(arr.length), true,
+                    new int[2 * BLOCK_SIZE]);
+        }
     }
 
     /**
-     * Helper mothod for radix.
-     * @param arr the array to be sorted
-     * @param exp exponent value
+     * Implement quick sort for ints, comparing them directly instead of
+     * boxing them for a Comparator. This is pdqSort(int[]), so it needs no
+     * Random and its worst case is O(n log n).
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array that must be sorted after the method runs
      */
-    private static void radixH(int[] arr, int exp) {
-        Queue[] q = new Queue[10];
-        for (int i = 0; i < 10; i++) {
-            q[i] = new LinkedList();
-        }
+    public static void quickSort(int[] arr) {
+        pdqSort(arr);
+    }
 
-        int mod = pow(10, exp);
-        int div = mod / 10;
-        int index;
-        for (int anArr : arr) {
-            index = Math.abs((anArr % mod) / div);
-            q[index].add(anArr);
+    /**
+     * Implement quick sort for longs, comparing them directly instead of
+     * boxing them for a Comparator. Works like pdqSort(int[]).
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array that must be sorted after the method runs
+     */
+    public static void quickSort(long[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
         }
-        if (q[0].size() == arr.length) {
-            return;
+        if (arr.length > 1) {
+            pdqH(arr, 0, arr.length - 1, depthLimit(arr.length), true,
+                    new int[2 * BLOCK_SIZE]);
         }
-        int count = 0;
-        for (int i = 0; i < 10; i++) {
-            while (!q[i].isEmpty()) {
-                arr[count] = (int) q[i].remove();
-                count++;
-            }
+    }
+
+    /**
+     * Implement quick sort for doubles, comparing them directly instead of
+     * boxing them for a Comparator. Works like pdqSort(int[]).
+     *
+     * NaN is put last and -0.0 before 0.0, as in {@code Arrays.sort}.
+     *
+     * It should be:
+     *  in-place
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array that must be sorted after the method runs
+     */
+    public static void quickSort(double[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int negativeZeros = clearNegativeZeros(arr);
+        int end = moveNaNsToEnd(arr);
+        if (end > 1) {
+            pdqH(arr, 0, end - 1, depthLimit(end), true,
+                    new int[2 * BLOCK_SIZE]);
+        }
+        restoreNegativeZeros(arr, end, negativeZeros);
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Sorts a range, recursing into the smaller part of each split and
+     * looping on the larger.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     * @param depth number of levels left before heap sorting
+     * @param leftmost whether the range starts at the start of the array,
+     * so there is no smaller element before it
+     */
+    private static <T> void pdqH(T[] arr, int low, int high,
+                                 Comparator<T> comp, int depth,
+                                 boolean leftmost) {
+        while (true) {
+            int size = high - low + 1;
+            if (size <= INSERTION_SORT_THRESHOLD) {
+                insertionSortRange(arr, low, high, comp);
+                return;
+            }
+            if (depth-- == 0) {
+                heapSort(arr, low, high, comp);
+                return;
+            }
+            choosePivot(arr, low, high, comp);
+            if (!leftmost && comp.compare(arr[low - 1], arr[low]) >= 0) {
+                low = partitionLeft(arr, low, high, comp) + 1;
+                continue;
+            }
+            int pivot = partitionRight(arr, low, high, comp);
+            boolean alreadyPartitioned = pivot < 0;
+            if (alreadyPartitioned) {
+                pivot = ~pivot;
+            }
+            int leftSize = pivot - low;
+            int rightSize = high - pivot;
+            if (leftSize < size / 8 || rightSize < size / 8) {
+                breakPatterns(arr, low, pivot - 1);
+                breakPatterns(arr, pivot + 1, high);
+            } else if (alreadyPartitioned
+                    && partialInsertionSort(arr, low, pivot - 1, comp)
+                    && partialInsertionSort(arr, pivot + 1, high, comp)) {
+                return;
+            }
+            if (leftSize < rightSize) {
+                pdqH(arr, low, pivot - 1, comp, depth, leftmost);
+                low = pivot + 1;
+                leftmost = false;
+            } else {
+                pdqH(arr, pivot + 1, high, comp, depth, false);
+                high = pivot - 1;
+            }
+        }
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Moves the pivot, the median of three or of three medians, to the
+     * start of the range, leaving an element no smaller than it after it.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     */
+    private static <T> void choosePivot(T[] arr, int low, int high,
+                                        Comparator<T> comp) {
+        int size = high - low + 1;
+        int mid = low + size / 2;
+        if (size > NINTHER_THRESHOLD) {
+            sort3(arr, low, mid, high, comp);
+            sort3(arr, low + 1, mid - 1, high - 1, comp);
+            sort3(arr, low + 2, mid + 1, high - 2, comp);
+            sort3(arr, mid - 1, mid, mid + 1, comp);
+            swap(arr, low, mid);
+        } else {
+            sort3(arr, mid, low, high, comp);
+        }
+    }
+
+    /**
+     * Helper method to sort three elements of an array in place.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param a index of the element to get the smallest
+     * @param b index of the element to get the median
+     * @param c index of the element to get the largest
+     * @param comp the Comparator used to compare the data in arr
+     */
+    private static <T> void sort3(T[] arr, int a, int b, int c,
+                                  Comparator<T> comp) {
+        if (comp.compare(arr[b], arr[a]) < 0) {
+            swap(arr, a, b);
+        }
+        if (comp.compare(arr[c], arr[b]) < 0) {
+            swap(arr, b, c);
+            if (comp.compare(arr[b], arr[a]) < 0) {
+                swap(arr, a, b);
+            }
+        }
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Partitions a range around the pivot at its start into elements less
+     * than the pivot followed by elements not less than it.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     * @return the final index of the pivot, bitwise negated if no element
+     * had to be moved
+     */
+    private static <T> int partitionRight(T[] arr, int low, int high,
+                                          Comparator<T> comp) {
+        T pivot = arr[low];
+        int i = low;
+        int j = high + 1;
+        // choosePivot left an element no smaller than the pivot after it.
+        while (comp.compare(arr[++i], pivot) < 0) {
+            continue;
+        }
+        if (i - 1 == low) {
+            while (i < j && comp.compare(arr[--j], pivot) >= 0) {
+                continue;
+            }
+        } else {
+            while (comp.compare(arr[--j], pivot) >= 0) {
+                continue;
+            }
+        }
+        boolean alreadyPartitioned = i >= j;
+        while (i < j) {
+            swap(arr, i, j);
+            while (comp.compare(arr[++i], pivot) < 0) {
+                continue;
+            }
+            while (comp.compare(arr[--j], pivot) >= 0) {
+                continue;
+            }
+        }
+        int pivotIndex = i - 1;
+        arr[low] = arr[pivotIndex];
+        arr[pivotIndex] = pivot;
+        return alreadyPartitioned ? ~pivotIndex : pivotIndex;
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Partitions a range around the pivot at its start into elements equal
+     * to the pivot followed by elements greater than it. Only used when
+     * nothing in the range is less than the pivot.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     * @return index of the last element equal to the pivot
+     */
+    private static <T> int partitionLeft(T[] arr, int low, int high,
+                                         Comparator<T> comp) {
+        T pivot = arr[low];
+        int i = low;
+        int j = high + 1;
+        while (comp.compare(pivot, arr[--j]) < 0) {
+            continue;
+        }
+        if (j == high) {
+            while (i < j && comp.compare(pivot, arr[++i]) >= 0) {
+                continue;
+            }
+        } else {
+            while (comp.compare(pivot, arr[++i]) >= 0) {
+                continue;
+            }
+        }
+        while (i < j) {
+            swap(arr, i, j);
+            while (comp.compare(pivot, arr[--j]) < 0) {
+                continue;
+            }
+            while (comp.compare(pivot, arr[++i]) >= 0) {
+                continue;
+            }
+        }
+        arr[low] = arr[j];
+        arr[j] = pivot;
+        return j;
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Insertion sorts a range, giving up once PARTIAL_INSERTION_LIMIT
+     * elements have been moved.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     * @return whether the range is now sorted
+     */
+    private static <T> boolean partialInsertionSort(T[] arr, int low,
+                                                    int high,
+                                                    Comparator<T> comp) {
+        int moves = 0;
+        for (int i = low + 1; i <= high; i++) {
+            T current = arr[i];
+            int j = i - 1;
+            while (j >= low && comp.compare(current, arr[j]) < 0) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+            moves += i - 1 - j;
+            if (moves > PARTIAL_INSERTION_LIMIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Swaps elements near both ends of a range with elements a quarter of
+     * the way in, so a pattern that led to a bad split is not repeated.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static <T> void breakPatterns(T[] arr, int low, int high) {
+        int size = high - low + 1;
+        if (size >= INSERTION_SORT_THRESHOLD) {
+            int quarter = size / 4;
+            swap(arr, low, low + quarter);
+            swap(arr, high, high - quarter);
+            if (size > NINTHER_THRESHOLD) {
+                swap(arr, low + 1, low + quarter + 1);
+                swap(arr, low + 2, low + quarter + 2);
+                swap(arr, high - 1, high - quarter - 1);
+                swap(arr, high - 2, high - quarter - 2);
+            }
+        }
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Heap sorts a range, for ranges that have been split too many times.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param comp the Comparator used to compare the data in arr
+     */
+    private static <T> void heapSort(T[] arr, int low, int high,
+                                     Comparator<T> comp) {
+        int n = high - low + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(arr, low, i, n, comp);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(arr, low, low + end);
+            siftDown(arr, low, 0, end, comp);
+        }
+    }
+
+    /**
+     * Helper method for heapSort.
+     * Moves an element down a max heap until both its children are no
+     * larger.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param base index of the root of the heap
+     * @param i position in the heap of the element to move
+     * @param n number of elements in the heap
+     * @param comp the Comparator used to compare the data in arr
+     */
+    private static <T> void siftDown(T[] arr, int base, int i, int n,
+                                     Comparator<T> comp) {
+        T value = arr[base + i];
+        int child = 2 * i + 1;
+        while (child < n) {
+            if (child + 1 < n && comp.compare(arr[base + child + 1],
+                    arr[base + child]) > 0) {
+                child++;
+            }
+            if (comp.compare(arr[base + child], value) <= 0) {
+                break;
+            }
+            arr[base + i] = arr[base + child];
+            i = child;
+            child = 2 * i + 1;
+        }
+        arr[base + i] = value;
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Sorts a range of ints, recursing into the smaller part of each split
+     * and looping on the larger.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param depth number of levels left before heap sorting
+     * @param leftmost whether the range starts at the start of the array,
+     * so there is no smaller element before it
+     * @param offsets scratch space for the block partition
+     */
+    private static void pdqH(int[] arr, int low, int high, int depth,
+                             boolean leftmost, int[] offsets) {
+        while (true) {
+            int size = high - low + 1;
+            if (size <= INSERTION_SORT_THRESHOLD) {
+                insertionSortRange(arr, low, high);
+                return;
+            }
+            if (depth-- == 0) {
+                heapSort(arr, low, high);
+                return;
+            }
+            choosePivot(arr, low, high);
+            if (!leftmost && arr[low - 1] >= arr[low]) {
+                low = partitionLeft(arr, low, high) + 1;
+                continue;
+            }
+            int pivot = blockPartition(arr, low, high, offsets);
+            boolean alreadyPartitioned = pivot < 0;
+            if (alreadyPartitioned) {
+                pivot = ~pivot;
+            }
+            int leftSize = pivot - low;
+            int rightSize = high - pivot;
+            if (leftSize < size / 8 || rightSize < size / 8) {
+                breakPatterns(arr, low, pivot - 1);
+                breakPatterns(arr, pivot + 1, high);
+            } else if (alreadyPartitioned
+                    && partialInsertionSort(arr, low, pivot - 1)
+                    && partialInsertionSort(arr, pivot + 1, high)) {
+                return;
+            }
+            if (leftSize < rightSize) {
+                pdqH(arr, low, pivot - 1, depth, leftmost, offsets);
+                low = pivot + 1;
+                leftmost = false;
+            } else {
+                pdqH(arr, pivot + 1, high, depth, false, offsets);
+                high = pivot - 1;
+            }
+        }
+    }
+
+    /**
+     * Helper method for pdqSort on ints.
+     * Moves the pivot, the median of three or of three medians, to the
+     * start of the range.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void choosePivot(int[] arr, int low, int high) {
+        int size = high - low + 1;
+        int mid = low + size / 2;
+        if (size > NINTHER_THRESHOLD) {
+            sort3(arr, low, mid, high);
+            sort3(arr, low + 1, mid - 1, high - 1);
+            sort3(arr, low + 2, mid + 1, high - 2);
+            sort3(arr, mid - 1, mid, mid + 1);
+            swap(arr, low, mid);
+        } else {
+            sort3(arr, mid, low, high);
+        }
+    }
+
+    /**
+     * Helper method to sort three ints of an array in place.
+     * @param arr the array being sorted
+     * @param a index of the element to get the smallest
+     * @param b index of the element to get the median
+     * @param c index of the element to get the largest
+     */
+    private static void sort3(int[] arr, int a, int b, int c) {
+        if (arr[b] < arr[a]) {
+            swap(arr, a, b);
+        }
+        if (arr[c] < arr[b]) {
+            swap(arr, b, c);
+            if (arr[b] < arr[a]) {
+                swap(arr, a, b);
+            }
+        }
+    }
+
+    /**
+     * Helper method for pdqSort on ints.
+     * Partitions a range around the pivot at its start into elements less
+     * than the pivot followed by elements not less than it. While more
+     * than two blocks are left, a block at each end is scanned without
+     * branches for the offsets of its misplaced elements, and misplaced
+     * pairs are swapped until one block is used up. The few elements left
+     * in the middle are partitioned one at a time.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param offsets scratch space of 2 * BLOCK_SIZE ints
+     * @return the final index of the pivot, bitwise negated if no element
+     * had to be moved
+     */
+    private static int blockPartition(int[] arr, int low, int high,
+                                      int[] offsets) {
+        int pivot = arr[low];
+        int left = low + 1;
+        int right = high;
+        int numLeft = 0;
+        int numRight = 0;
+        int startLeft = 0;
+        int startRight = 0;
+        boolean alreadyPartitioned = true;
+        while (right - left + 1 > 2 * BLOCK_SIZE) {
+            if (numLeft == 0) {
+                startLeft = 0;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offsets[numLeft] = i;
+                    numLeft += arr[left + i] >= pivot ? 1 : 0;
+                }
+            }
+            if (numRight == 0) {
+                startRight = BLOCK_SIZE;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offsets[BLOCK_SIZE + numRight] = i;
+                    numRight += arr[right - i] < pivot ? 1 : 0;
+                }
+            }
+            int count = Math.min(numLeft, numRight);
+            for (int k = 0; k < count; k++) {
+                swap(arr, left + offsets[startLeft + k],
+                        right - offsets[startRight + k]);
+            }
+            if (count > 0) {
+                alreadyPartitioned = false;
+            }
+            numLeft -= count;
+            numRight -= count;
+            startLeft += count;
+            startRight += count;
+            if (numLeft == 0) {
+                left += BLOCK_SIZE;
+            }
+            if (numRight == 0) {
+                right -= BLOCK_SIZE;
+            }
+        }
+        // Everything before left is less than the pivot and everything
+        // after right is not, so partition what is between one by one.
+        while (true) {
+            while (left <= right && arr[left] < pivot) {
+                left++;
+            }
+            while (left <= right && arr[right] >= pivot) {
+                right--;
+            }
+            if (left > right) {
+                break;
+            }
+            swap(arr, left++, right--);
+            alreadyPartitioned = false;
+        }
+        int pivotIndex = left - 1;
+        arr[low] = arr[pivotIndex];
+        arr[pivotIndex] = pivot;
+        return alreadyPartitioned ? ~pivotIndex : pivotIndex;
+    }
+
+    /**
+     * Helper method for pdqSort on ints.
+     * Partitions a range around the pivot at its start into elements equal
+     * to the pivot followed by elements greater than it. Only used when
+     * nothing in the range is less than the pivot.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @return index of the last element equal to the pivot
+     */
+    private static int partitionLeft(int[] arr, int low, int high) {
+        int pivot = arr[low];
+        int i = low;
+        int j = high + 1;
+        while (pivot < arr[--j]) {
+            continue;
+        }
+        if (j == high) {
+            while (i < j && pivot >= arr[++i]) {
+                continue;
+            }
+        } else {
+            while (pivot >= arr[++i]) {
+                continue;
+            }
+        }
+        while (i < j) {
+            swap(arr, i, j);
+            while (pivot < arr[--j]) {
+                continue;
+            }
+            while (pivot >= arr[++i]) {
+                continue;
+            }
+        }
+        arr[low] = arr[j];
+        arr[j] = pivot;
+        return j;
+    }
+
+    /**
+     * Helper method for pdqSort on ints.
+     * Insertion sorts a range, giving up once PARTIAL_INSERTION_LIMIT
+     * elements have been moved.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @return whether the range is now sorted
+     */
+    private static boolean partialInsertionSort(int[] arr, int low,
+                                                int high) {
+        int moves = 0;
+        for (int i = low + 1; i <= high; i++) {
+            int current = arr[i];
+            int j = i - 1;
+            while (j >= low && current < arr[j]) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+            moves += i - 1 - j;
+            if (moves > PARTIAL_INSERTION_LIMIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method for pdqSort on ints.
+     * Swaps elements near both ends of a range with elements a quarter of
+     * the way in, so a pattern that led to a bad split is not repeated.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void breakPatterns(int[] arr, int low, int high) {
+        int size = high - low + 1;
+        if (size >= INSERTION_SORT_THRESHOLD) {
+            int quarter = size / 4;
+            swap(arr, low, low + quarter);
+            swap(arr, high, high - quarter);
+            if (size > NINTHER_THRESHOLD) {
+                swap(arr, low + 1, low + quarter + 1);
+                swap(arr, low + 2, low + quarter + 2);
+                swap(arr, high - 1, high - quarter - 1);
+                swap(arr, high - 2, high - quarter - 2);
+            }
+        }
+    }
+
+    /**
+     * Helper method for pdqSort on ints.
+     * Heap sorts a range, for ranges that have been split too many times.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void heapSort(int[] arr, int low, int high) {
+        int n = high - low + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(arr, low, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(arr, low, low + end);
+            siftDown(arr, low, 0, end);
+        }
+    }
+
+    /**
+     * Helper method for heapSort on ints.
+     * Moves an element down a max heap until both its children are no
+     * larger.
+     * @param arr the array being sorted
+     * @param base index of the root of the heap
+     * @param i position in the heap of the element to move
+     * @param n number of elements in the heap
+     */
+    private static void siftDown(int[] arr, int base, int i, int n) {
+        int value = arr[base + i];
+        int child = 2 * i + 1;
+        while (child < n) {
+            if (child + 1 < n && arr[base + child + 1] > arr[base + child]) {
+                child++;
+            }
+            if (arr[base + child] <= value) {
+                break;
+            }
+            arr[base + i] = arr[base + child];
+            i = child;
+            child = 2 * i + 1;
+        }
+        arr[base + i] = value;
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Sorts a range of longs, recursing into the smaller part of each split
+     * and looping on the larger.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param depth number of levels left before heap sorting
+     * @param leftmost whether the range starts at the start of the array,
+     * so there is no smaller element before it
+     * @param offsets scratch space for the block partition
+     */
+    private static void pdqH(long[] arr, int low, int high, int depth,
+                             boolean leftmost, int[] offsets) {
+        while (true) {
+            int size = high - low + 1;
+            if (size <= INSERTION_SORT_THRESHOLD) {
+                insertionSortRange(arr, low, high);
+                return;
+            }
+            if (depth-- == 0) {
+                heapSort(arr, low, high);
+                return;
+            }
+            choosePivot(arr, low, high);
+            if (!leftmost && arr[low - 1] >= arr[low]) {
+                low = partitionLeft(arr, low, high) + 1;
+                continue;
+            }
+            int pivot = blockPartition(arr, low, high, offsets);
+            boolean alreadyPartitioned = pivot < 0;
+            if (alreadyPartitioned) {
+                pivot = ~pivot;
+            }
+            int leftSize = pivot - low;
+            int rightSize = high - pivot;
+            if (leftSize < size / 8 || rightSize < size / 8) {
+                breakPatterns(arr, low, pivot - 1);
+                breakPatterns(arr, pivot + 1, high);
+            } else if (alreadyPartitioned
+                    && partialInsertionSort(arr, low, pivot - 1)
+                    && partialInsertionSort(arr, pivot + 1, high)) {
+                return;
+            }
+            if (leftSize < rightSize) {
+                pdqH(arr, low, pivot - 1, depth, leftmost, offsets);
+                low = pivot + 1;
+                leftmost = false;
+            } else {
+                pdqH(arr, pivot + 1, high, depth, false, offsets);
+                high = pivot - 1;
+            }
+        }
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Moves the pivot, the median of three or of three medians, to the
+     * start of the range.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void choosePivot(long[] arr, int low, int high) {
+        int size = high - low + 1;
+        int mid = low + size / 2;
+        if (size > NINTHER_THRESHOLD) {
+            sort3(arr, low, mid, high);
+            sort3(arr, low + 1, mid - 1, high - 1);
+            sort3(arr, low + 2, mid + 1, high - 2);
+            sort3(arr, mid - 1, mid, mid + 1);
+            swap(arr, low, mid);
+        } else {
+            sort3(arr, mid, low, high);
+        }
+    }
+
+    /**
+     * Helper method to sort three longs of an array in place.
+     * @param arr the array being sorted
+     * @param a index of the element to get the smallest
+     * @param b index of the element to get the median
+     * @param c index of the element to get the largest
+     */
+    private static void sort3(long[] arr, int a, int b, int c) {
+        if (arr[b] < arr[a]) {
+            swap(arr, a, b);
+        }
+        if (arr[c] < arr[b]) {
+            swap(arr, b, c);
+            if (arr[b] < arr[a]) {
+                swap(arr, a, b);
+            }
+        }
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Partitions a range around the pivot at its start into elements less
+     * than the pivot followed by elements not less than it. While more
+     * than two blocks are left, a block at each end is scanned without
+     * branches for the offsets of its misplaced elements, and misplaced
+     * pairs are swapped until one block is used up. The few elements left
+     * in the middle are partitioned one at a time.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param offsets scratch space of 2 * BLOCK_SIZE ints
+     * @return the final index of the pivot, bitwise negated if no element
+     * had to be moved
+     */
+    private static int blockPartition(long[] arr, int low, int high,
+                                      int[] offsets) {
+        long pivot = arr[low];
+        int left = low + 1;
+        int right = high;
+        int numLeft = 0;
+        int numRight = 0;
+        int startLeft = 0;
+        int startRight = 0;
+        boolean alreadyPartitioned = true;
+        while (right - left + 1 > 2 * BLOCK_SIZE) {
+            if (numLeft == 0) {
+                startLeft = 0;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offsets[numLeft] = i;
+                    numLeft += arr[left + i] >= pivot ? 1 : 0;
+                }
+            }
+            if (numRight == 0) {
+                startRight = BLOCK_SIZE;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offsets[BLOCK_SIZE + numRight] = i;
+                    numRight += arr[right - i] < pivot ? 1 : 0;
+                }
+            }
+            int count = Math.min(numLeft, numRight);
+            for (int k = 0; k < count; k++) {
+                swap(arr, left + offsets[startLeft + k],
+                        right - offsets[startRight + k]);
+            }
+            if (count > 0) {
+                alreadyPartitioned = false;
+            }
+            numLeft -= count;
+            numRight -= count;
+            startLeft += count;
+            startRight += count;
+            if (numLeft == 0) {
+                left += BLOCK_SIZE;
+            }
+            if (numRight == 0) {
+                right -= BLOCK_SIZE;
+            }
+        }
+        // Everything before left is less than the pivot and everything
+        // after right is not, so partition what is between one by one.
+        while (true) {
+            while (left <= right && arr[left] < pivot) {
+                left++;
+            }
+            while (left <= right && arr[right] >= pivot) {
+                right--;
+            }
+            if (left > right) {
+                break;
+            }
+            swap(arr, left++, right--);
+            alreadyPartitioned = false;
+        }
+        int pivotIndex = left - 1;
+        arr[low] = arr[pivotIndex];
+        arr[pivotIndex] = pivot;
+        return alreadyPartitioned ? ~pivotIndex : pivotIndex;
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Partitions a range around the pivot at its start into elements equal
+     * to the pivot followed by elements greater than it. Only used when
+     * nothing in the range is less than the pivot.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @return index of the last element equal to the pivot
+     */
+    private static int partitionLeft(long[] arr, int low, int high) {
+        long pivot = arr[low];
+        int i = low;
+        int j = high + 1;
+        while (pivot < arr[--j]) {
+            continue;
+        }
+        if (j == high) {
+            while (i < j && pivot >= arr[++i]) {
+                continue;
+            }
+        } else {
+            while (pivot >= arr[++i]) {
+                continue;
+            }
+        }
+        while (i < j) {
+            swap(arr, i, j);
+            while (pivot < arr[--j]) {
+                continue;
+            }
+            while (pivot >= arr[++i]) {
+                continue;
+            }
+        }
+        arr[low] = arr[j];
+        arr[j] = pivot;
+        return j;
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Insertion sorts a range, giving up once PARTIAL_INSERTION_LIMIT
+     * elements have been moved.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @return whether the range is now sorted
+     */
+    private static boolean partialInsertionSort(long[] arr, int low,
+                                                int high) {
+        int moves = 0;
+        for (int i = low + 1; i <= high; i++) {
+            long current = arr[i];
+            int j = i - 1;
+            while (j >= low && current < arr[j]) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+            moves += i - 1 - j;
+            if (moves > PARTIAL_INSERTION_LIMIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Swaps elements near both ends of a range with elements a quarter of
+     * the way in, so a pattern that led to a bad split is not repeated.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void breakPatterns(long[] arr, int low, int high) {
+        int size = high - low + 1;
+        if (size >= INSERTION_SORT_THRESHOLD) {
+            int quarter = size / 4;
+            swap(arr, low, low + quarter);
+            swap(arr, high, high - quarter);
+            if (size > NINTHER_THRESHOLD) {
+                swap(arr, low + 1, low + quarter + 1);
+                swap(arr, low + 2, low + quarter + 2);
+                swap(arr, high - 1, high - quarter - 1);
+                swap(arr, high - 2, high - quarter - 2);
+            }
+        }
+    }
+
+    /**
+     * Helper method for quickSort on longs.
+     * Heap sorts a range, for ranges that have been split too many times.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void heapSort(long[] arr, int low, int high) {
+        int n = high - low + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(arr, low, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(arr, low, low + end);
+            siftDown(arr, low, 0, end);
+        }
+    }
+
+    /**
+     * Helper method for heapSort on longs.
+     * Moves an element down a max heap until both its children are no
+     * larger.
+     * @param arr the array being sorted
+     * @param base index of the root of the heap
+     * @param i position in the heap of the element to move
+     * @param n number of elements in the heap
+     */
+    private static void siftDown(long[] arr, int base, int i, int n) {
+        long value = arr[base + i];
+        int child = 2 * i + 1;
+        while (child < n) {
+            if (child + 1 < n && arr[base + child + 1] > arr[base + child]) {
+                child++;
+            }
+            if (arr[base + child] <= value) {
+                break;
+            }
+            arr[base + i] = arr[base + child];
+            i = child;
+            child = 2 * i + 1;
+        }
+        arr[base + i] = value;
+    }
+
+    /**
+     * Helper method to insertion sort part of an array of longs.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void insertionSortRange(long[] arr, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            long current = arr[i];
+            int j = i - 1;
+            while (j >= low && current < arr[j]) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+        }
+    }
+
+    /**
+     * Helper method to swap two longs
+     * @param arr array that contains the elements
+     * @param i index of the first element
+     * @param j index of the second element
+     */
+    private static void swap(long[] arr, int i, int j) {
+        long temp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = temp;
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Sorts a range of doubles, recursing into the smaller part of each split
+     * and looping on the larger.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param depth number of levels left before heap sorting
+     * @param leftmost whether the range starts at the start of the array,
+     * so there is no smaller element before it
+     * @param offsets scratch space for the block partition
+     */
+    private static void pdqH(double[] arr, int low, int high, int depth,
+                             boolean leftmost, int[] offsets) {
+        while (true) {
+            int size = high - low + 1;
+            if (size <= INSERTION_SORT_THRESHOLD) {
+                insertionSortRange(arr, low, high);
+                return;
+            }
+            if (depth-- == 0) {
+                heapSort(arr, low, high);
+                return;
+            }
+            choosePivot(arr, low, high);
+            if (!leftmost && arr[low - 1] >= arr[low]) {
+                low = partitionLeft(arr, low, high) + 1;
+                continue;
+            }
+            int pivot = blockPartition(arr, low, high, offsets);
+            boolean alreadyPartitioned = pivot < 0;
+            if (alreadyPartitioned) {
+                pivot = ~pivot;
+            }
+            int leftSize = pivot - low;
+            int rightSize = high - pivot;
+            if (leftSize < size / 8 || rightSize < size / 8) {
+                breakPatterns(arr, low, pivot - 1);
+                breakPatterns(arr, pivot + 1, high);
+            } else if (alreadyPartitioned
+                    && partialInsertionSort(arr, low, pivot - 1)
+                    && partialInsertionSort(arr, pivot + 1, high)) {
+                return;
+            }
+            if (leftSize < rightSize) {
+                pdqH(arr, low, pivot - 1, depth, leftmost, offsets);
+                low = pivot + 1;
+                leftmost = false;
+            } else {
+                pdqH(arr, pivot + 1, high, depth, false, offsets);
+                high = pivot - 1;
+            }
+        }
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Moves the pivot, the median of three or of three medians, to the
+     * start of the range.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void choosePivot(double[] arr, int low, int high) {
+        int size = high - low + 1;
+        int mid = low + size / 2;
+        if (size > NINTHER_THRESHOLD) {
+            sort3(arr, low, mid, high);
+            sort3(arr, low + 1, mid - 1, high - 1);
+            sort3(arr, low + 2, mid + 1, high - 2);
+            sort3(arr, mid - 1, mid, mid + 1);
+            swap(arr, low, mid);
+        } else {
+            sort3(arr, mid, low, high);
+        }
+    }
+
+    /**
+     * Helper method to sort three doubles of an array in place.
+     * @param arr the array being sorted
+     * @param a index of the element to get the smallest
+     * @param b index of the element to get the median
+     * @param c index of the element to get the largest
+     */
+    private static void sort3(double[] arr, int a, int b, int c) {
+        if (arr[b] < arr[a]) {
+            swap(arr, a, b);
+        }
+        if (arr[c] < arr[b]) {
+            swap(arr, b, c);
+            if (arr[b] < arr[a]) {
+                swap(arr, a, b);
+            }
+        }
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Partitions a range around the pivot at its start into elements less
+     * than the pivot followed by elements not less than it. While more
+     * than two blocks are left, a block at each end is scanned without
+     * branches for the offsets of its misplaced elements, and misplaced
+     * pairs are swapped until one block is used up. The few elements left
+     * in the middle are partitioned one at a time.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param offsets scratch space of 2 * BLOCK_SIZE ints
+     * @return the final index of the pivot, bitwise negated if no element
+     * had to be moved
+     */
+    private static int blockPartition(double[] arr, int low, int high,
+                                      int[] offsets) {
+        double pivot = arr[low];
+        int left = low + 1;
+        int right = high;
+        int numLeft = 0;
+        int numRight = 0;
+        int startLeft = 0;
+        int startRight = 0;
+        boolean alreadyPartitioned = true;
+        while (right - left + 1 > 2 * BLOCK_SIZE) {
+            if (numLeft == 0) {
+                startLeft = 0;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offsets[numLeft] = i;
+                    numLeft += arr[left + i] >= pivot ? 1 : 0;
+                }
+            }
+            if (numRight == 0) {
+                startRight = BLOCK_SIZE;
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    offsets[BLOCK_SIZE + numRight] = i;
+                    numRight += arr[right - i] < pivot ? 1 : 0;
+                }
+            }
+            int count = Math.min(numLeft, numRight);
+            for (int k = 0; k < count; k++) {
+                swap(arr, left + offsets[startLeft + k],
+                        right - offsets[startRight + k]);
+            }
+            if (count > 0) {
+                alreadyPartitioned = false;
+            }
+            numLeft -= count;
+            numRight -= count;
+            startLeft += count;
+            startRight += count;
+            if (numLeft == 0) {
+                left += BLOCK_SIZE;
+            }
+            if (numRight == 0) {
+                right -= BLOCK_SIZE;
+            }
+        }
+        // Everything before left is less than the pivot and everything
+        // after right is not, so partition what is between one by one.
+        while (true) {
+            while (left <= right && arr[left] < pivot) {
+                left++;
+            }
+            while (left <= right && arr[right] >= pivot) {
+                right--;
+            }
+            if (left > right) {
+                break;
+            }
+            swap(arr, left++, right--);
+            alreadyPartitioned = false;
+        }
+        int pivotIndex = left - 1;
+        arr[low] = arr[pivotIndex];
+        arr[pivotIndex] = pivot;
+        return alreadyPartitioned ? ~pivotIndex : pivotIndex;
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Partitions a range around the pivot at its start into elements equal
+     * to the pivot followed by elements greater than it. Only used when
+     * nothing in the range is less than the pivot.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @return index of the last element equal to the pivot
+     */
+    private static int partitionLeft(double[] arr, int low, int high) {
+        double pivot = arr[low];
+        int i = low;
+        int j = high + 1;
+        while (pivot < arr[--j]) {
+            continue;
+        }
+        if (j == high) {
+            while (i < j && pivot >= arr[++i]) {
+                continue;
+            }
+        } else {
+            while (pivot >= arr[++i]) {
+                continue;
+            }
+        }
+        while (i < j) {
+            swap(arr, i, j);
+            while (pivot < arr[--j]) {
+                continue;
+            }
+            while (pivot >= arr[++i]) {
+                continue;
+            }
+        }
+        arr[low] = arr[j];
+        arr[j] = pivot;
+        return j;
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Insertion sorts a range, giving up once PARTIAL_INSERTION_LIMIT
+     * elements have been moved.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @return whether the range is now sorted
+     */
+    private static boolean partialInsertionSort(double[] arr, int low,
+                                                int high) {
+        int moves = 0;
+        for (int i = low + 1; i <= high; i++) {
+            double current = arr[i];
+            int j = i - 1;
+            while (j >= low && current < arr[j]) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+            moves += i - 1 - j;
+            if (moves > PARTIAL_INSERTION_LIMIT) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Swaps elements near both ends of a range with elements a quarter of
+     * the way in, so a pattern that led to a bad split is not repeated.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void breakPatterns(double[] arr, int low, int high) {
+        int size = high - low + 1;
+        if (size >= INSERTION_SORT_THRESHOLD) {
+            int quarter = size / 4;
+            swap(arr, low, low + quarter);
+            swap(arr, high, high - quarter);
+            if (size > NINTHER_THRESHOLD) {
+                swap(arr, low + 1, low + quarter + 1);
+                swap(arr, low + 2, low + quarter + 2);
+                swap(arr, high - 1, high - quarter - 1);
+                swap(arr, high - 2, high - quarter - 2);
+            }
+        }
+    }
+
+    /**
+     * Helper method for quickSort on doubles.
+     * Heap sorts a range, for ranges that have been split too many times.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void heapSort(double[] arr, int low, int high) {
+        int n = high - low + 1;
+        for (int i = n / 2 - 1; i >= 0; i--) {
+            siftDown(arr, low, i, n);
+        }
+        for (int end = n - 1; end > 0; end--) {
+            swap(arr, low, low + end);
+            siftDown(arr, low, 0, end);
+        }
+    }
+
+    /**
+     * Helper method for heapSort on doubles.
+     * Moves an element down a max heap until both its children are no
+     * larger.
+     * @param arr the array being sorted
+     * @param base index of the root of the heap
+     * @param i position in the heap of the element to move
+     * @param n number of elements in the heap
+     */
+    private static void siftDown(double[] arr, int base, int i, int n) {
+        double value = arr[base + i];
+        int child = 2 * i + 1;
+        while (child < n) {
+            if (child + 1 < n && arr[base + child + 1] > arr[base + child]) {
+                child++;
+            }
+            if (arr[base + child] <= value) {
+                break;
+            }
+            arr[base + i] = arr[base + child];
+            i = child;
+            child = 2 * i + 1;
+        }
+        arr[base + i] = value;
+    }
+
+    /**
+     * Helper method to insertion sort part of an array of doubles.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void insertionSortRange(double[] arr, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            double current = arr[i];
+            int j = i - 1;
+            while (j >= low && current < arr[j]) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+        }
+    }
+
+    /**
+     * Helper method to swap two doubles
+     * @param arr array that contains the elements
+     * @param i index of the first element
+     * @param j index of the second element
+     */
+    private static void swap(double[] arr, int i, int j) {
+        double temp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = temp;
+    }
+
+    /**
+     * Helper method for pdqSort.
+     * Computes how many levels a range of n elements may be split before
+     * it is heap sorted.
+     * @param n number of elements
+     * @return 2 log n, rounded down
+     */
+    private static int depthLimit(int n) {
+        return 2 * (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(n));
+    }
+
+    /**
+     * Helper method to swap two elements
+     * @param arr array that contains the elements
+     * @param i index of the first element
+     * @param j index of the second element
+     * @param <T> data type to sort
+     */
+    private static <T> void swap(T[] arr, int i, int j) {
+        T temp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = temp;
+    }
+
+    /**
+     * Helper method to swap two ints
+     * @param arr array that contains the elements
+     * @param i index of the first element
+     * @param j index of the second element
+     */
+    private static void swap(int[] arr, int i, int j) {
+        int temp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = temp;
+    }
+
+    /**
+     * Implement merge sort.
+     *
+     * It should be:
+     *  stable
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * You can create more arrays to run mergesort, but at the end,
+     * everything should be merged back into the original T[]
+     * which was passed in.
+     *
+     * ********************* IMPORTANT ************************
+     * FAILURE TO DO SO MAY CAUSE ClassCastException AND CAUSE
+     * YOUR METHOD TO FAIL ALL THE TESTS FOR MERGE SORT
+     * ********************************************************
+     *
+     * Any duplicates in the array should be in the same relative position after
+     * sorting as they were before sorting.
+     *
+     * This allocates one buffer and runs the bottom-up merge sort of the
+     * three-argument mergeSort, which skips merging runs that are already
+     * in order, so sorted input takes n - 1 comparisons.
+     *
+     * @throws IllegalArgumentException if the array or comparator is null
+     * @param <T> data type to sort
+     * @param arr the array to be sorted
+     * @param comparator the Comparator used to compare the data in arr
+     */
+    public static <T> void mergeSort(T[] arr, Comparator<T> comparator) {
+        mergeSort(arr, comparator, null);
+    }
+
+    /**
+     * Implement merge sort using the given buffer as its only scratch
+     * space, so a buffer reused across calls makes sorting allocation
+     * free.
+     *
+     * The sort works bottom-up without recursion, merging runs of length
+     * 1, 2, 4 and so on in place. Each merge copies only its left run into
+     * the buffer, and is skipped, after one comparison, when the two runs
+     * are already in order, so sorted input is handled in O(n).
+     *
+     * It should be:
+     *  stable
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array or comparator is null,
+     * or the buffer is shorter than the array
+     * @param <T> data type to sort
+     * @param arr the array to be sorted
+     * @param comparator the Comparator used to compare the data in arr
+     * @param buffer scratch space of at least arr.length elements whose
+     * contents are overwritten, or null to allocate one
+     */
+    public static <T> void mergeSort(T[] arr, Comparator<T> comparator,
+                                     T[] buffer) {
+        if (arr == null || comparator == null
+                || (buffer != null && buffer.length < arr.length)) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        if (buffer == null) {
+            buffer = (T[]) new Object[arr.length];
+        }
+        int n = arr.length;
+        int width = 1;
+        while (width < n) {
+            for (int low = 0; low < n - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(mid, n - width) + width;
+                if (comparator.compare(arr[mid - 1], arr[mid]) > 0) {
+                    merge(arr, buffer, low, mid, high, comparator);
+                }
+            }
+            if (width >= n - width) {
+                return;
+            }
+            width *= 2;
+        }
+    }
+
+    /**
+     * Helper method for mergeSort.
+     * Merges the sorted runs arr[low, mid) and arr[mid, high) in place,
+     * copying the left run into the buffer first. Ties go to the left run
+     * to keep the sort stable.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param buffer scratch space, used at the same indexes as arr
+     * @param low first index of the left run
+     * @param mid first index of the right run
+     * @param high one past the last index of the right run
+     * @param comparator the Comparator used to compare the data in arr
+     */
+    private static <T> void merge(T[] arr, T[] buffer, int low, int mid,
+                                  int high, Comparator<T> comparator) {
+        System.arraycopy(arr, low, buffer, low, mid - low);
+        int i = low;
+        int j = mid;
+        int k = low;
+        while (i < mid && j < high) {
+            if (comparator.compare(arr[j], buffer[i]) < 0) {
+                arr[k++] = arr[j++];
+            } else {
+                arr[k++] = buffer[i++];
+            }
+        }
+        // Whatever is left of the right run is already in place.
+        System.arraycopy(buffer, i, arr, k, mid - i);
+    }
+
+    /**
+     * Implement merge sort for ints, comparing them directly instead of
+     * boxing them for a Comparator. Works bottom-up like the generic
+     * mergeSort, with one buffer.
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     */
+    public static void mergeSort(int[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int n = arr.length;
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(mid, n - width) + width;
+                if (arr[mid - 1] > arr[mid]) {
+                    merge(arr, buffer, low, mid, high);
+                }
+            }
+            if (width >= n - width) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Helper method for mergeSort on ints.
+     * Merges the sorted runs arr[low, mid) and arr[mid, high) in place,
+     * copying the left run into the buffer first.
+     * @param arr the array being sorted
+     * @param buffer scratch space, used at the same indexes as arr
+     * @param low first index of the left run
+     * @param mid first index of the right run
+     * @param high one past the last index of the right run
+     */
+    private static void merge(int[] arr, int[] buffer, int low, int mid,
+                              int high) {
+        System.arraycopy(arr, low, buffer, low, mid - low);
+        int i = low;
+        int j = mid;
+        int k = low;
+        while (i < mid && j < high) {
+            if (arr[j] < buffer[i]) {
+                arr[k++] = arr[j++];
+            } else {
+                arr[k++] = buffer[i++];
+            }
+        }
+        // Whatever is left of the right run is already in place.
+        System.arraycopy(buffer, i, arr, k, mid - i);
+    }
+
+    /**
+     * Implement merge sort for longs, comparing them directly instead of
+     * boxing them for a Comparator. Works bottom-up like the generic
+     * mergeSort, with one buffer.
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     */
+    public static void mergeSort(long[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int n = arr.length;
+        long[] buffer = new long[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(mid, n - width) + width;
+                if (arr[mid - 1] > arr[mid]) {
+                    merge(arr, buffer, low, mid, high);
+                }
+            }
+            if (width >= n - width) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Helper method for mergeSort on longs.
+     * Merges the sorted runs arr[low, mid) and arr[mid, high) in place,
+     * copying the left run into the buffer first.
+     * @param arr the array being sorted
+     * @param buffer scratch space, used at the same indexes as arr
+     * @param low first index of the left run
+     * @param mid first index of the right run
+     * @param high one past the last index of the right run
+     */
+    private static void merge(long[] arr, long[] buffer, int low, int mid,
+                              int high) {
+        System.arraycopy(arr, low, buffer, low, mid - low);
+        int i = low;
+        int j = mid;
+        int k = low;
+        while (i < mid && j < high) {
+            if (arr[j] < buffer[i]) {
+                arr[k++] = arr[j++];
+            } else {
+                arr[k++] = buffer[i++];
+            }
+        }
+        // Whatever is left of the right run is already in place.
+        System.arraycopy(buffer, i, arr, k, mid - i);
+    }
+
+    /**
+     * Implement merge sort for doubles, comparing them directly instead of
+     * boxing them for a Comparator. Works bottom-up like the generic
+     * mergeSort, with one buffer.
+     *
+     * NaN is put last and -0.0 before 0.0, as in {@code Arrays.sort}.
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     */
+    public static void mergeSort(double[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int negativeZeros = clearNegativeZeros(arr);
+        int n = moveNaNsToEnd(arr);
+        double[] buffer = new double[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int low = 0; low < n - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(mid, n - width) + width;
+                if (arr[mid - 1] > arr[mid]) {
+                    merge(arr, buffer, low, mid, high);
+                }
+            }
+            if (width >= n - width) {
+                break;
+            }
+        }
+        restoreNegativeZeros(arr, n, negativeZeros);
+    }
+
+    /**
+     * Helper method for mergeSort on doubles.
+     * Merges the sorted runs arr[low, mid) and arr[mid, high) in place,
+     * copying the left run into the buffer first.
+     * @param arr the array being sorted
+     * @param buffer scratch space, used at the same indexes as arr
+     * @param low first index of the left run
+     * @param mid first index of the right run
+     * @param high one past the last index of the right run
+     */
+    private static void merge(double[] arr, double[] buffer, int low, int mid,
+                              int high) {
+        System.arraycopy(arr, low, buffer, low, mid - low);
+        int i = low;
+        int j = mid;
+        int k = low;
+        while (i < mid && j < high) {
+            if (arr[j] < buffer[i]) {
+                arr[k++] = arr[j++];
+            } else {
+                arr[k++] = buffer[i++];
+            }
+        }
+        // Whatever is left of the right run is already in place.
+        System.arraycopy(buffer, i, arr, k, mid - i);
+    }
+
+    /**
+     * Helper method for the double sorts.
+     * Turns every -0.0 into 0.0, since the two cannot be told apart with
+     * comparisons.
+     * @param arr the array being sorted
+     * @return number of -0.0 found
+     */
+    private static int clearNegativeZeros(double[] arr) {
+        int count = 0;
+        for (int i = 0; i < arr.length; i++) {
+            if (arr[i] == 0.0 && Double.doubleToRawLongBits(arr[i]) != 0) {
+                arr[i] = 0.0;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Helper method for the double sorts.
+     * Moves every NaN to the end of the array, since NaN cannot be ordered
+     * with comparisons.
+     * @param arr the array being sorted
+     * @return number of elements that are not NaN, now at the front
+     */
+    private static int moveNaNsToEnd(double[] arr) {
+        int end = arr.length;
+        for (int i = end - 1; i >= 0; i--) {
+            if (Double.isNaN(arr[i])) {
+                double nan = arr[i];
+                arr[i] = arr[--end];
+                arr[end] = nan;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Helper method for the double sorts.
+     * Turns the first zeros of the sorted array back into the -0.0 that
+     * clearNegativeZeros removed.
+     * @param arr the sorted array
+     * @param end number of elements that are not NaN
+     * @param count number of -0.0 to restore
+     */
+    private static void restoreNegativeZeros(double[] arr, int end,
+                                             int count) {
+        if (count == 0) {
+            return;
+        }
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (arr[mid] < 0.0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < low + count; i++) {
+            arr[i] = -0.0;
+        }
+    }
+
+
+    /**
+     * Implement an adaptive merge sort that takes advantage of order
+     * already present in the input.
+     *
+     * The array is scanned for runs that are already ascending, or
+     * strictly descending and then reversed. Runs shorter than
+     * INSERTION_SORT_THRESHOLD are extended with binary insertion sort.
+     * Runs are merged in the order of the powersort policy (Munro and
+     * Wild, "Nearly Optimal Mergesorts"), which gives each boundary between
+     * two runs a power from where their midpoints fall in the array and
+     * merges deeper boundaries first, so the merge tree is close to optimal
+     * for the run lengths found. Merges gallop: the parts of the two runs
+     * already in place are found with exponential searches and skipped,
+     * and while one run keeps winning its elements are copied in blocks.
+     *
+     * It should be:
+     *  stable
+     *
+     * Have a worst case running time of:
+     *  O(n log n)
+     *
+     * And a best case running time of:
+     *  O(n), for input made of few runs
+     *
+     * @throws IllegalArgumentException if the array or comparator is null
+     * @param <T> data type to sort
+     * @param arr the array to be sorted
+     * @param comparator the Comparator used to compare the data in arr
+     */
+    public static <T> void adaptiveMergeSort(T[] arr,
+                                             Comparator<T> comparator) {
+        if (arr == null || comparator == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int n = arr.length;
+        if (n < 2) {
+            return;
+        }
+        int end = extendRun(arr, 0, n, comparator);
+        if (end == n) {
+            return;
+        }
+        T[] buffer = (T[]) new Object[n];
+        // Powers strictly increase up the stack, so it holds at most one
+        // run per bit of an int.
+        int[] runStart = new int[Integer.SIZE + 1];
+        int[] runPower = new int[Integer.SIZE + 1];
+        int top = 0;
+        int start = 0;
+        while (end < n) {
+            int nextEnd = extendRun(arr, end, n, comparator);
+            int power = nodePower(n, start, end, nextEnd);
+            while (top > 0 && runPower[top - 1] > power) {
+                top--;
+                gallopingMerge(arr, buffer, runStart[top], start, end,
+                        comparator);
+                start = runStart[top];
+            }
+            runStart[top] = start;
+            runPower[top] = power;
+            top++;
+            start = end;
+            end = nextEnd;
+        }
+        while (top > 0) {
+            top--;
+            gallopingMerge(arr, buffer, runStart[top], start, n, comparator);
+            start = runStart[top];
+        }
+    }
+
+    /**
+     * Helper method for adaptiveMergeSort.
+     * Finds the run starting at low, reversing it if it is strictly
+     * descending, and extends it with binary insertion sort if it is short.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the run
+     * @param n length of the array
+     * @param comparator the Comparator used to compare the data in arr
+     * @return one past the last index of the run
+     */
+    private static <T> int extendRun(T[] arr, int low, int n,
+                                     Comparator<T> comparator) {
+        int end = low + 1;
+        if (end == n) {
+            return end;
+        }
+        if (comparator.compare(arr[end], arr[low]) < 0) {
+            end++;
+            while (end < n && comparator.compare(arr[end], arr[end - 1]) < 0) {
+                end++;
+            }
+            // Strictly descending, so reversing keeps the sort stable.
+            for (int i = low, j = end - 1; i < j; i++, j--) {
+                swap(arr, i, j);
+            }
+        } else {
+            end++;
+            while (end < n
+                    && comparator.compare(arr[end], arr[end - 1]) >= 0) {
+                end++;
+            }
+        }
+        if (end - low < INSERTION_SORT_THRESHOLD && end < n) {
+            int sorted = end;
+            end = Math.min(n, low + INSERTION_SORT_THRESHOLD);
+            binaryInsertionSort(arr, low, sorted, end, comparator);
+        }
+        return end;
+    }
+
+    /**
+     * Helper method for extendRun.
+     * Sorts arr[low, high) given that arr[low, start) is already sorted,
+     * finding where each further element goes with a binary search. Equal
+     * elements are placed after the ones already there to keep the sort
+     * stable.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param start first index not yet in order
+     * @param high one past the last index of the range
+     * @param comparator the Comparator used to compare the data in arr
+     */
+    private static <T> void binaryInsertionSort(T[] arr, int low, int start,
+                                                int high,
+                                                Comparator<T> comparator) {
+        for (int i = start; i < high; i++) {
+            T current = arr[i];
+            int left = low;
+            int right = i;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (comparator.compare(current, arr[mid]) < 0) {
+                    right = mid;
+                } else {
+                    left = mid + 1;
+                }
+            }
+            System.arraycopy(arr, left, arr, left + 1, i - left);
+            arr[left] = current;
+        }
+    }
+
+    /**
+     * Helper method for adaptiveMergeSort.
+     * Computes the powersort power of the boundary between the adjacent
+     * runs arr[startA, startB) and arr[startB, endB): the number of leading
+     * bits the positions of their midpoints, as fractions of n, share.
+     * @param n length of the array
+     * @param startA first index of the left run
+     * @param startB first index of the right run
+     * @param endB one past the last index of the right run
+     * @return the power of the boundary
+     */
+    private static int nodePower(int n, int startA, int startB, int endB) {
+        long left = (long) startA + startB;
+        long right = (long) startB + endB;
+        int a = (int) ((left << 30) / n);
+        int b = (int) ((right << 30) / n);
+        return Integer.numberOfLeadingZeros(a ^ b);
+    }
+
+    /**
+     * Helper method for adaptiveMergeSort.
+     * Merges the sorted runs arr[low, mid) and arr[mid, high) in place.
+     * The ends of both runs that are already in place are skipped first.
+     * The rest of the left run is copied into the buffer and merged one
+     * element at a time until one run has won MIN_GALLOP times in a row,
+     * then by galloping, copying the elements that win next in blocks
+     * found by exponential search, until the blocks get short again. Ties
+     * go to the left run to keep the sort stable.
+     * @param <T> data type to sort
+     * @param arr the array being sorted
+     * @param buffer scratch space, used at the same indexes as arr
+     * @param low first index of the left run
+     * @param mid first index of the right run
+     * @param high one past the last index of the right run
+     * @param comparator the Comparator used to compare the data in arr
+     */
+    private static <T> void gallopingMerge(T[] arr, T[] buffer, int low,
+                                           int mid, int high,
+                                           Comparator<T> comparator) {
+        if (comparator.compare(arr[mid - 1], arr[mid]) <= 0) {
+            return;
+        }
+        low = gallopRight(arr[mid], arr, low, mid, comparator);
+        high = gallopLeft(arr[mid - 1], arr, mid, high, comparator);
+        System.arraycopy(arr, low, buffer, low, mid - low);
+        int i = low;
+        int j = mid;
+        int k = low;
+        // The last element of the left run goes after the right run, so
+        // the right run always runs out first.
+        while (j < high) {
+            int leftWins = 0;
+            int rightWins = 0;
+            while (j < high && leftWins < MIN_GALLOP
+                    && rightWins < MIN_GALLOP) {
+                if (comparator.compare(arr[j], buffer[i]) < 0) {
+                    arr[k++] = arr[j++];
+                    rightWins++;
+                    leftWins = 0;
+                } else {
+                    arr[k++] = buffer[i++];
+                    leftWins++;
+                    rightWins = 0;
+                }
+            }
+            while (j < high) {
+                int to = gallopRight(arr[j], buffer, i, mid, comparator);
+                leftWins = to - i;
+                System.arraycopy(buffer, i, arr, k, leftWins);
+                k += leftWins;
+                i = to;
+                arr[k++] = arr[j++];
+                to = gallopLeft(buffer[i], arr, j, high, comparator);
+                rightWins = to - j;
+                System.arraycopy(arr, j, arr, k, rightWins);
+                k += rightWins;
+                j = to;
+                arr[k++] = buffer[i++];
+                if (leftWins < MIN_GALLOP && rightWins < MIN_GALLOP) {
+                    break;
+                }
+            }
+        }
+        System.arraycopy(buffer, i, arr, k, mid - i);
+    }
+
+    /**
+     * Helper method for gallopingMerge.
+     * Finds the first element of a sorted range greater than key, with an
+     * exponential search from the start of the range.
+     * @param <T> data type to sort
+     * @param key the element to place
+     * @param arr the array holding the range
+     * @param from first index of the range
+     * @param to one past the last index of the range
+     * @param comparator the Comparator used to compare the data in arr
+     * @return index of the first element greater than key, or to
+     */
+    private static <T> int gallopRight(T key, T[] arr, int from, int to,
+                                       Comparator<T> comparator) {
+        int low = from;
+        int high = from;
+        int step = 1;
+        while (high < to && comparator.compare(key, arr[high]) >= 0) {
+            low = high + 1;
+            high = (int) Math.min((long) low + step, to);
+            step <<= 1;
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(key, arr[mid]) >= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Helper method for gallopingMerge.
+     * Finds the first element of a sorted range greater than or equal to
+     * key, with an exponential search from the start of the range.
+     * @param <T> data type to sort
+     * @param key the element to place
+     * @param arr the array holding the range
+     * @param from first index of the range
+     * @param to one past the last index of the range
+     * @param comparator the Comparator used to compare the data in arr
+     * @return index of the first element not less than key, or to
+     */
+    private static <T> int gallopLeft(T key, T[] arr, int from, int to,
+                                      Comparator<T> comparator) {
+        int low = from;
+        int high = from;
+        int step = 1;
+        while (high < to && comparator.compare(key, arr[high]) > 0) {
+            low = high + 1;
+            high = (int) Math.min((long) low + step, to);
+            step <<= 1;
+        }
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(key, arr[mid]) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Implement radix sort.
+     *
+     * Remember you CANNOT convert the ints to strings at any point in your
+     * code!
+     *
+     * It should be:
+     *  stable
+     *
+     * Have a worst case running time of:
+     *  O(kn)
+     *
+     * And a best case running time of:
+     *  O(kn)
+     *
+     * Any duplicates in the array should be in the same relative position after
+     * sorting as they were before sorting. (stable)
+     *
+     * DO NOT USE {@code Math.pow()} in your sort. Instead, if you need to, use
+     * the provided {@code pow()} method below.
+     *
+     * You may use an ArrayList or LinkedList if you wish, but it may only be
+     * used inside radix sort and any radix sort helpers. Do NOT use these
+     * classes with other sorts.
+     *
+     * This is a least significant digit first sort on 8-bit digits. One
+     * read of the array counts every digit of every element, then each
+     * digit is sorted with a prefix sum and one scatter into a single
+     * scratch array, the two arrays trading places after each pass. A pass
+     * is skipped when all elements share that digit. The sign bit is
+     * flipped when reading digits, so negative numbers sort before
+     * positive ones.
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     * @return the sorted array
+     */
+    public static int[] radixSort(int[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int n = arr.length;
+        if (n < 2) {
+            return arr;
+        }
+        int passes = Integer.SIZE / RADIX_BITS;
+        int[][] counts = new int[passes][RADIX];
+        for (int value : arr) {
+            int key = value ^ Integer.MIN_VALUE;
+            for (int pass = 0; pass < passes; pass++) {
+                counts[pass][(key >>> (pass * RADIX_BITS)) & RADIX_MASK]++;
+            }
+        }
+        int[] src = arr;
+        int[] dst = new int[n];
+        for (int pass = 0; pass < passes; pass++) {
+            int shift = pass * RADIX_BITS;
+            int[] count = counts[pass];
+            if (count[((src[0] ^ Integer.MIN_VALUE) >>> shift)
+                    & RADIX_MASK] == n) {
+                continue;
+            }
+            toOffsets(count);
+            for (int value : src) {
+                int digit = ((value ^ Integer.MIN_VALUE) >>> shift)
+                        & RADIX_MASK;
+                dst[count[digit]++] = value;
+            }
+            int[] temp = src;
+            src = dst;
+            dst = temp;
+        }
+        if (src != arr) {
+            System.arraycopy(src, 0, arr, 0, n);
+        }
+        return arr;
+    }
+
+    /**
+     * Sorts an array of longs with the same least significant digit first
+     * radix sort as radixSort(int[]), in eight passes at most.
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     * @return the sorted array
+     */
+    public static long[] radixSort(long[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        radixLongH(arr, null);
+        return arr;
+    }
+
+    /**
+     * Sorts an array of floats with a radix sort, in the same order as
+     * {@code Arrays.sort}: -0.0 comes before 0.0 and NaN comes last.
+     *
+     * The bits of each float are turned into an int that orders the same
+     * way, by flipping every bit but the sign of negative numbers, and the
+     * ints are sorted with radixSort(int[]).
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     * @return the sorted array
+     */
+    public static float[] radixSort(float[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int[] keys = new int[arr.length];
+        for (int i = 0; i < arr.length; i++) {
+            int bits = Float.floatToIntBits(arr[i]);
+            keys[i] = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+        }
+        radixSort(keys);
+        for (int i = 0; i < arr.length; i++) {
+            int key = keys[i];
+            arr[i] = Float.intBitsToFloat(
+                    key ^ ((key >> 31) & Integer.MAX_VALUE));
+        }
+        return arr;
+    }
+
+    /**
+     * Sorts an array of doubles with a radix sort, in the same order as
+     * {@code Arrays.sort}: -0.0 comes before 0.0 and NaN comes last.
+     *
+     * The bits of each double are turned into a long that orders the same
+     * way, by flipping every bit but the sign of negative numbers, and the
+     * longs are sorted as in radixSort(long[]).
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     * @return the sorted array
+     */
+    public static double[] radixSort(double[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        long[] keys = new long[arr.length];
+        for (int i = 0; i < arr.length; i++) {
+            long bits = Double.doubleToLongBits(arr[i]);
+            keys[i] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+        radixLongH(keys, null);
+        for (int i = 0; i < arr.length; i++) {
+            long key = keys[i];
+            arr[i] = Double.longBitsToDouble(
+                    key ^ ((key >> 63) & Long.MAX_VALUE));
+        }
+        return arr;
+    }
+
+    /**
+     * Sorts objects by a long key taken from each of them, with a least
+     * significant digit first radix sort. The comparator is never used:
+     * every key is extracted exactly once, and the objects move along with
+     * their keys.
+     *
+     * It is:
+     *  stable
+     *
+     * And has a running time of:
+     *  O(kn), with at most eight passes
+     *
+     * @throws IllegalArgumentException if the array or key is null
+     * @param <T> data type to sort
+     * @param arr the array to be sorted
+     * @param key extracts the key to sort by from an element
+     */
+    public static <T> void radixSortBy(T[] arr, ToLongFunction<T> key) {
+        if (arr == null || key == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        long[] keys = new long[arr.length];
+        for (int i = 0; i < arr.length; i++) {
+            keys[i] = key.applyAsLong(arr[i]);
+        }
+        radixLongH(keys, arr);
+    }
+
+    /**
+     * Sorts an array of ints with a most significant digit first radix sort
+     * spread over the common ForkJoinPool.
+     *
+     * The array is cut into one chunk per thread, and each chunk's task
+     * counts the top 8-bit digit of its elements. The per-chunk counts give
+     * every chunk its own disjoint region of each digit's bucket, so the
+     * chunks then scatter their elements into a scratch array in parallel
+     * without sharing anything. Each bucket is copied back and sorted in
+     * place, American flag style, on the next digit by its own task, and
+     * buckets larger than PARALLEL_THRESHOLD are again sorted as separate
+     * tasks. Arrays shorter than PARALLEL_THRESHOLD are sorted with
+     * radixSort(int[]).
+     *
+     * It is:
+     *  not stable, which cannot be seen for ints
+     *
+     * And has a running time of:
+     *  O(kn)
+     *
+     * @throws IllegalArgumentException if the array is null
+     * @param arr the array to be sorted
+     * @return the sorted array
+     */
+    public static int[] parallelRadixSort(int[] arr) {
+        if (arr == null) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+        int n = arr.length;
+        if (n < PARALLEL_THRESHOLD) {
+            return radixSort(arr);
+        }
+        int shift = Integer.SIZE - RADIX_BITS;
+        int chunks = Math.max(1, Math.min(
+                ForkJoinPool.getCommonPoolParallelism(),
+                n / PARALLEL_THRESHOLD));
+        RadixChunkTask[] tasks = new RadixChunkTask[chunks];
+        for (int c = 0; c < chunks; c++) {
+            tasks[c] = new RadixChunkTask(arr, (int) ((long) c * n / chunks),
+                    (int) ((long) (c + 1) * n / chunks), shift);
+        }
+        RecursiveAction.invokeAll(tasks);
+
+        // Give each chunk the start of its region in every bucket.
+        int[] bucketStart = new int[RADIX + 1];
+        int pos = 0;
+        for (int digit = 0; digit < RADIX; digit++) {
+            bucketStart[digit] = pos;
+            for (RadixChunkTask task : tasks) {
+                int count = task.next[digit];
+                task.next[digit] = pos;
+                pos += count;
+            }
+        }
+        bucketStart[RADIX] = n;
+        int[] scratch = new int[n];
+        for (RadixChunkTask task : tasks) {
+            task.reinitialize();
+            task.dst = scratch;
+        }
+        RecursiveAction.invokeAll(tasks);
+
+        List<RadixTask> buckets = new ArrayList<>();
+        for (int digit = 0; digit < RADIX; digit++) {
+            if (bucketStart[digit + 1] > bucketStart[digit]) {
+                buckets.add(new RadixTask(arr, scratch, bucketStart[digit],
+                        bucketStart[digit + 1] - 1, shift - RADIX_BITS));
+            }
+        }
+        RecursiveAction.invokeAll(buckets);
+        return arr;
+    }
+
+    /**
+     * Helper method for the long, double and key extracting radix sorts.
+     * Sorts the keys on 8-bit digits, moving the matching items along with
+     * them if there are any.
+     * @param keys the keys to be sorted
+     * @param items the items to reorder with the keys, or null
+     */
+    private static void radixLongH(long[] keys, Object[] items) {
+        int n = keys.length;
+        if (n < 2) {
+            return;
+        }
+        int passes = Long.SIZE / RADIX_BITS;
+        int[][] counts = new int[passes][RADIX];
+        for (long value : keys) {
+            long key = value ^ Long.MIN_VALUE;
+            for (int pass = 0; pass < passes; pass++) {
+                counts[pass][(int) (key >>> (pass * RADIX_BITS))
+                        & RADIX_MASK]++;
+            }
+        }
+        long[] src = keys;
+        long[] dst = new long[n];
+        Object[] srcItems = items;
+        Object[] dstItems = items == null ? null : new Object[n];
+        for (int pass = 0; pass < passes; pass++) {
+            int shift = pass * RADIX_BITS;
+            int[] count = counts[pass];
+            if (count[(int) ((src[0] ^ Long.MIN_VALUE) >>> shift)
+                    & RADIX_MASK] == n) {
+                continue;
+            }
+            toOffsets(count);
+            for (int i = 0; i < n; i++) {
+                int digit = (int) ((src[i] ^ Long.MIN_VALUE) >>> shift)
+                        & RADIX_MASK;
+                int to = count[digit]++;
+                dst[to] = src[i];
+                if (srcItems != null) {
+                    dstItems[to] = srcItems[i];
+                }
+            }
+            long[] temp = src;
+            src = dst;
+            dst = temp;
+            Object[] tempItems = srcItems;
+            srcItems = dstItems;
+            dstItems = tempItems;
+        }
+        if (src != keys) {
+            System.arraycopy(src, 0, keys, 0, n);
+            if (items != null) {
+                System.arraycopy(srcItems, 0, items, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Helper method for parallelRadixSort.
+     * Sorts a range in place on its digits from shift down, one American
+     * flag pass per digit. Buckets larger than PARALLEL_THRESHOLD are added
+     * to forks to be sorted as separate tasks, and the rest are sorted
+     * here.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     * @param shift position of the lowest bit of the digit to sort on
+     * @param forks receives the buckets to sort as separate tasks
+     */
+    private static void msdRadixH(int[] arr, int low, int high, int shift,
+                                  List<RadixTask> forks) {
+        if (high - low + 1 <= INSERTION_SORT_THRESHOLD) {
+            insertionSortRange(arr, low, high);
+            return;
+        }
+        int[] count = new int[RADIX];
+        // Skip the digits all elements share.
+        while (true) {
+            for (int i = low; i <= high; i++) {
+                count[radixDigit(arr[i], shift)]++;
+            }
+            if (count[radixDigit(arr[low], shift)] != high - low + 1) {
+                break;
+            }
+            if (shift == 0) {
+                return;
+            }
+            count[radixDigit(arr[low], shift)] = 0;
+            shift -= RADIX_BITS;
+        }
+        int[] next = new int[RADIX];
+        int[] end = new int[RADIX];
+        int pos = low;
+        for (int digit = 0; digit < RADIX; digit++) {
+            next[digit] = pos;
+            pos += count[digit];
+            end[digit] = pos;
+        }
+        // Move each element straight to the next free place of its bucket,
+        // taking the element that was there along to its own bucket.
+        for (int digit = 0; digit < RADIX; digit++) {
+            while (next[digit] < end[digit]) {
+                int value = arr[next[digit]];
+                int d = radixDigit(value, shift);
+                while (d != digit) {
+                    int temp = arr[next[d]];
+                    arr[next[d]++] = value;
+                    value = temp;
+                    d = radixDigit(value, shift);
+                }
+                arr[next[digit]++] = value;
+            }
+        }
+        if (shift == 0) {
+            return;
+        }
+        int from = low;
+        for (int digit = 0; digit < RADIX; digit++) {
+            int to = end[digit] - 1;
+            if (to - from + 1 > PARALLEL_THRESHOLD) {
+                forks.add(new RadixTask(arr, null, from, to,
+                        shift - RADIX_BITS));
+            } else if (to > from) {
+                msdRadixH(arr, from, to, shift - RADIX_BITS, forks);
+            }
+            from = end[digit];
+        }
+    }
+
+    /**
+     * Helper method to read one 8-bit digit of an int, with the sign bit
+     * flipped so negative numbers come first.
+     * @param value the int to read
+     * @param shift position of the lowest bit of the digit
+     * @return the digit
+     */
+    private static int radixDigit(int value, int shift) {
+        return ((value ^ Integer.MIN_VALUE) >>> shift) & RADIX_MASK;
+    }
+
+    /**
+     * Helper method to insertion sort part of an array of ints.
+     * @param arr the array being sorted
+     * @param low first index of the range
+     * @param high last index of the range
+     */
+    private static void insertionSortRange(int[] arr, int low, int high) {
+        for (int i = low + 1; i <= high; i++) {
+            int current = arr[i];
+            int j = i - 1;
+            while (j >= low && current < arr[j]) {
+                arr[j + 1] = arr[j];
+                j--;
+            }
+            arr[j + 1] = current;
+        }
+    }
+
+    /**
+     * One chunk of the top-level pass of parallelRadixSort. Run once it
+     * counts each digit of its chunk into next. The caller then turns next
+     * into the chunk's start in each bucket and sets dst, and run again it
+     * scatters the chunk into dst.
+     */
+    @SuppressWarnings("serial")
+    private static class RadixChunkTask extends RecursiveAction {
+        private final int[] arr;
+        private final int from;
+        private final int to;
+        private final int shift;
+        private final int[] next = new int[RADIX];
+        private int[] dst;
+
+        /**
+         * Create a task for one chunk.
+         * @param arr the array being sorted
+         * @param from first index of the chunk
+         * @param to index after the last of the chunk
+         * @param shift position of the lowest bit of the digit
+         */
+        RadixChunkTask(int[] arr, int from, int to, int shift) {
+            this.arr = arr;
+            this.from = from;
+            this.to = to;
+            this.shift = shift;
+        }
+
+        @Override
+        protected void compute() {
+            if (dst == null) {
+                for (int i = from; i < to; i++) {
+                    next[radixDigit(arr[i], shift)]++;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    int value = arr[i];
+                    dst[next[radixDigit(value, shift)]++] = value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts one bucket for parallelRadixSort, first copying it back from
+     * the scratch array if there is one, and forking its large buckets as
+     * further tasks.
+     */
+    @SuppressWarnings("serial")
+    private static class RadixTask extends RecursiveAction {
+        private final int[] arr;
+        private final int[] src;
+        private final int low;
+        private final int high;
+        private final int shift;
+
+        /**
+         * Create a task for one bucket.
+         * @param arr the array being sorted
+         * @param src array to copy the bucket from first, or null
+         * @param low first index of the bucket
+         * @param high last index of the bucket
+         * @param shift position of the lowest bit of the digit to sort on
+         */
+        RadixTask(int[] arr, int[] src, int low, int high, int shift) {
+            this.arr = arr;
+            this.src = src;
+            this.low = low;
+            this.high = high;
+            this.shift = shift;
+        }
+
+        @Override
+        protected void compute() {
+            if (src != null) {
+                System.arraycopy(src, low, arr, low, high - low + 1);
+            }
+            List<RadixTask> forks = new ArrayList<>();
+            msdRadixH(arr, low, high, shift, forks);
+            invokeAll(forks);
+        }
+    }
+
+    /**
+     * Helper method for the radix sorts.
+     * Turns the count of each digit into the index where the first element
+     * with that digit goes.
+     * @param count number of elements with each digit
+     */
+    private static void toOffsets(int[] count) {
+        int sum = 0;
+        for (int digit = 0; digit < count.length; digit++) {
+            int c = count[digit];
+            count[digit] = sum;
+            sum += c;
         }
-        radixH(arr, exp + 1);
     }
 
 
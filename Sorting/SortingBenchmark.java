@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Benchmark for the comparison sorts of Sorting, run side by side with
+ * {@code Arrays.sort}. The same inputs are also sorted as int arrays with
+ * the primitive overloads, to show what boxing and the Comparator cost.
+ *
+ * Every combination of sort, input shape and size is measured for time and
+ * number of comparisons. The shapes are random, few distinct values,
+ * sorted, reversed, append-ordered with 1% of the elements out of place,
+ * and sawtooth runs of 1000. Each case is warmed up before it is measured,
+ * and a checksum of the results is printed so the JIT cannot drop the work.
+ *
+ * Run with {@code java SortingBenchmark [sizes] [rounds]}, for example
+ * {@code java SortingBenchmark 1000,1000000 5}. Sizes default to 1000,
+ * 100000 and 1000000, and rounds to 3.
+ *
+ * @author Min Ho Lee
+ * @version 1.0
+ */
+public class SortingBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {1000, 100000, 1000000};
+    private static final String[] SHAPES = {
+        "random", "few-values", "sorted", "reversed", "append-ordered",
+        "sawtooth"
+    };
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int FEW_VALUES = 16;
+    private static final int OUT_OF_ORDER_PERCENT = 1;
+    private static final int SAWTOOTH_RUN = 1000;
+
+    private static long checksum;
+    private static long comparisons;
+
+    private static final Comparator<Integer> COUNTING = (a, b) -> {
+        comparisons++;
+        return Integer.compare(a, b);
+    };
+
+    /**
+     * A sort of an Integer array, so every algorithm runs through the same
+     * loop.
+     */
+    private interface Sort {
+        /**
+         * Sorts the array.
+         * @param arr the array to sort
+         * @param comparator the Comparator to sort with
+         */
+        void sort(Integer[] arr, Comparator<Integer> comparator);
+    }
+
+    /**
+     * A sort of an int array, for the primitive overloads.
+     */
+    private interface IntSort {
+        /**
+         * Sorts the array.
+         * @param arr the array to sort
+         */
+        void sort(int[] arr);
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args optional comma separated sizes, then optional number of
+     * measured rounds
+     */
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        int rounds = 3;
+        if (args.length > 0) {
+            String[] parts = args[0].split(",");
+            sizes = new int[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                sizes[i] = Integer.parseInt(parts[i].trim());
+            }
+        }
+        if (args.length > 1) {
+            rounds = Integer.parseInt(args[1]);
+        }
+        System.out.printf("%-18s %-15s %-10s %10s %10s%n", "sort", "input",
+                "size", "ns/elem", "cmp/elem");
+        for (int size : sizes) {
+            for (String shape : SHAPES) {
+                Integer[] input = generate(shape, size);
+                runCase("mergeSort", input, shape, rounds,
+                    Sorting::mergeSort);
+                runCase("adaptiveMergeSort", input, shape, rounds,
+                    Sorting::adaptiveMergeSort);
+                runCase("quickSort", input, shape, rounds,
+                    (arr, comparator) -> Sorting.quickSort(arr, comparator,
+                        new Random(size)));
+                runCase("pdqSort", input, shape, rounds, Sorting::pdqSort);
+                runCase("Arrays.sort", input, shape, rounds, Arrays::sort);
+                int[] primitive = new int[size];
+                for (int i = 0; i < size; i++) {
+                    primitive[i] = input[i];
+                }
+                runIntCase("mergeSort(int[])", primitive, shape, rounds,
+                    Sorting::mergeSort);
+                runIntCase("quickSort(int[])", primitive, shape, rounds,
+                    Sorting::quickSort);
+                runIntCase("Arrays.sort(int[])", primitive, shape, rounds,
+                    Arrays::sort);
+            }
+        }
+        System.out.println("checksum " + checksum);
+    }
+
+    /**
+     * Helper method to measure one sort on one input.
+     * @param name name of the sort to print
+     * @param input the unsorted input, left unchanged
+     * @param shape name of the input shape to print
+     * @param rounds number of measured rounds
+     * @param sort the sort to run
+     */
+    private static void runCase(String name, Integer[] input, String shape,
+                                int rounds, Sort sort) {
+        long nanos = 0;
+        long compared = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+            Integer[] arr = input.clone();
+            comparisons = 0;
+            long start = System.nanoTime();
+            sort.sort(arr, COUNTING);
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS) {
+                nanos += elapsed;
+                compared += comparisons;
+            }
+            checksum += arr.length == 0 ? 0 : arr[arr.length / 2];
+        }
+        double elements = (double) rounds * Math.max(1, input.length);
+        System.out.printf("%-18s %-15s %-10d %10.1f %10.2f%n", name, shape,
+                input.length, nanos / elements, compared / elements);
+    }
+
+    /**
+     * Helper method to measure one primitive sort on one input. These sorts
+     * take no Comparator, so no comparisons are counted.
+     * @param name name of the sort to print
+     * @param input the unsorted input, left unchanged
+     * @param shape name of the input shape to print
+     * @param rounds number of measured rounds
+     * @param sort the sort to run
+     */
+    private static void runIntCase(String name, int[] input, String shape,
+                                   int rounds, IntSort sort) {
+        long nanos = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + rounds; round++) {
+            int[] arr = input.clone();
+            long start = System.nanoTime();
+            sort.sort(arr);
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS) {
+                nanos += elapsed;
+            }
+            checksum += arr.length == 0 ? 0 : arr[arr.length / 2];
+        }
+        double elements = (double) rounds * Math.max(1, input.length);
+        System.out.printf("%-18s %-15s %-10d %10.1f %10s%n", name, shape,
+                input.length, nanos / elements, "-");
+    }
+
+    /**
+     * Helper method to build an input.
+     * @param shape one of SHAPES
+     * @param size number of elements
+     * @return the input
+     */
+    private static Integer[] generate(String shape, int size) {
+        Random random = new Random(size);
+        Integer[] arr = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            switch (shape) {
+                case "random":
+                    arr[i] = random.nextInt();
+                    break;
+                case "few-values":
+                    arr[i] = random.nextInt(FEW_VALUES);
+                    break;
+                case "sorted":
+                    arr[i] = i;
+                    break;
+                case "reversed":
+                    arr[i] = size - i;
+                    break;
+                case "append-ordered":
+                    arr[i] = random.nextInt(100) < OUT_OF_ORDER_PERCENT
+                            ? random.nextInt(size) : i;
+                    break;
+                default:
+                    arr[i] = i % SAWTOOTH_RUN;
+                    break;
+            }
+        }
+        return arr;
+    }
+}
@@ -1,10 +1,14 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Random;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -15,6 +19,8 @@ public class SortingStudentTests {
     private TeachingAssistant[] tasByName;
     private ComparatorPlus<TeachingAssistant> comp;
     private static final int TIMEOUT = 200;
+    private static final int LARGE_TIMEOUT = 2000;
+    private static final int[] SIZES = {0, 1, 2, 3, 31, 32, 33, 1000, 20000};
 
     @Before
     public void setUp() {
@@ -90,6 +96,17 @@ public class SortingStudentTests {
                 comp.getCount() <= 48);
     }
 
+    @Test(timeout = TIMEOUT)
+    public void testMergeSortSortedInput() {
+        Sorting.mergeSort(tasByName, comp);
+        for (int i = 1; i < tasByName.length; i++) {
+            assertTrue(tasByName[i].getName().compareTo(
+                    tasByName[i - 1].getName()) >= 0);
+        }
+        assertTrue("Number of comparisons: " + comp.getCount(),
+                comp.getCount() <= tasByName.length - 1);
+    }
+
     @Test(timeout = TIMEOUT)
     public void testRadixSort() {
         int[] unsortedArray = new int[] {54, 28, 58, 84, 20, 122, 85, 3};
@@ -97,6 +114,486 @@ public class SortingStudentTests {
         assertArrayEquals(sortedArray, Sorting.radixSort(unsortedArray));
     }
 
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testRadixSortNegativesAndEdgeValues() {
+        int[] arr = {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 1, -256,
+            255, 256, -257, Integer.MIN_VALUE, 0, 1 << 24, -(1 << 24)};
+        int[] expected = arr.clone();
+        Arrays.sort(expected);
+        assertSame(arr, Sorting.radixSort(arr));
+        assertArrayEquals(expected, arr);
+
+        for (int n : SIZES) {
+            for (int[] pattern : patterns(n)) {
+                expected = pattern.clone();
+                Arrays.sort(expected);
+                assertArrayEquals(expected, Sorting.radixSort(pattern));
+            }
+            // Values that differ only in their top byte, so every pass
+            // but the last is skipped.
+            int[] topByte = new int[n];
+            for (int i = 0; i < n; i++) {
+                topByte[i] = (n - i) << 24;
+            }
+            expected = topByte.clone();
+            Arrays.sort(expected);
+            assertArrayEquals(expected, Sorting.radixSort(topByte));
+        }
+    }
+
+    @Test(timeout = TIMEOUT, expected = IllegalArgumentException.class)
+    public void testRadixSortNull() {
+        Sorting.radixSort((int[]) null);
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testRadixSortLongs() {
+        long[] arr = {0, -1, Long.MAX_VALUE, Long.MIN_VALUE, 1L << 32,
+            -(1L << 56), Integer.MIN_VALUE, Integer.MAX_VALUE, 1L << 56, -1};
+        long[] expected = arr.clone();
+        Arrays.sort(expected);
+        assertSame(arr, Sorting.radixSort(arr));
+        assertArrayEquals(expected, arr);
+
+        for (int n : SIZES) {
+            for (int[] pattern : patterns(n)) {
+                long[] values = new long[n];
+                for (int i = 0; i < n; i++) {
+                    values[i] = pattern[i] * 0x100000001L;
+                }
+                expected = values.clone();
+                Arrays.sort(expected);
+                assertArrayEquals(expected, Sorting.radixSort(values));
+            }
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testRadixSortFloatsAndDoubles() {
+        double[] doubles = {0.0, -0.0, Double.NaN, 1.5, -1.5,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE,
+            -Double.MAX_VALUE, 0.0, Double.NaN, -0.0};
+        float[] floats = new float[doubles.length];
+        for (int i = 0; i < doubles.length; i++) {
+            floats[i] = (float) doubles[i];
+        }
+        Random random = new Random(2110);
+        double[] randomDoubles = new double[20000];
+        float[] randomFloats = new float[20000];
+        for (int i = 0; i < randomDoubles.length; i++) {
+            randomDoubles[i] = random.nextGaussian() * 1e6;
+            randomFloats[i] = (float) randomDoubles[i];
+        }
+
+        // Arrays.equals tells -0.0 from 0.0, so this checks their order.
+        for (double[] arr : new double[][] {doubles, randomDoubles}) {
+            double[] expected = arr.clone();
+            Arrays.sort(expected);
+            assertSame(arr, Sorting.radixSort(arr));
+            assertTrue(Arrays.equals(expected, arr));
+        }
+        for (float[] arr : new float[][] {floats, randomFloats}) {
+            float[] expected = arr.clone();
+            Arrays.sort(expected);
+            assertSame(arr, Sorting.radixSort(arr));
+            assertTrue(Arrays.equals(expected, arr));
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testRadixSortByIsStable() {
+        TeachingAssistant[] expected = tas.clone();
+        Arrays.sort(expected, Comparator.comparingInt(
+                TeachingAssistant::getAge));
+        Sorting.radixSortBy(tas, TeachingAssistant::getAge);
+        assertArrayEquals(expected, tas);
+
+        // Few distinct keys, some negative, so most elements tie.
+        Random random = new Random(1332);
+        long[] keys = new long[20000];
+        Integer[] items = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = (random.nextInt(8) - 4) * (1L << 40);
+            items[i] = i;
+        }
+        Integer[] expectedItems = items.clone();
+        Arrays.sort(expectedItems, Comparator.comparingLong(i -> keys[i]));
+        Sorting.radixSortBy(items, i -> keys[i]);
+        assertArrayEquals(expectedItems, items);
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testParallelRadixSort() {
+        // Around the parallel threshold of 8192 and well past it.
+        for (int n : new int[] {0, 1, 8191, 8192, 100000}) {
+            for (int[] pattern : patterns(n)) {
+                int[] expected = pattern.clone();
+                Arrays.sort(expected);
+                assertSame(pattern, Sorting.parallelRadixSort(pattern));
+                assertArrayEquals(expected, pattern);
+            }
+        }
+
+        // Buckets far larger than the threshold on every digit, and
+        // values that only differ below the top digit.
+        Random random = new Random(1332);
+        int[][] inputs = new int[3][100000];
+        for (int i = 0; i < 100000; i++) {
+            inputs[0][i] = random.nextInt(3) - 1;
+            inputs[1][i] = random.nextInt(1 << 16) | 0x7f000000;
+            inputs[2][i] = random.nextBoolean()
+                    ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        for (int[] input : inputs) {
+            int[] expected = input.clone();
+            Arrays.sort(expected);
+            assertArrayEquals(expected, Sorting.parallelRadixSort(input));
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testAdaptiveMergeSortIsStable() {
+        TeachingAssistant[] expected = tas.clone();
+        Arrays.sort(expected, TeachingAssistant.getAgeComparator());
+        Sorting.adaptiveMergeSort(tas, TeachingAssistant.getAgeComparator());
+        assertArrayEquals(expected, tas);
+
+        // Sorting indexes by the value at each index shows whether ties
+        // kept their order, including ties inside descending runs.
+        for (int n : SIZES) {
+            for (int[] pattern : patterns(n)) {
+                assertStableSort(pattern);
+            }
+            int[] descendingTies = new int[n];
+            for (int i = 0; i < n; i++) {
+                descendingTies[i] = (n - i) / 3;
+            }
+            assertStableSort(descendingTies);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testAdaptiveMergeSortPresortedInput() {
+        int n = 10000;
+        Integer[] sorted = new Integer[n];
+        Integer[] reversed = new Integer[n];
+        Integer[] twoRuns = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+            reversed[i] = n - i;
+            twoRuns[i] = i < n / 2 ? 2 * i : 2 * (i - n / 2) + 1;
+        }
+
+        // One run, ascending or strictly descending, takes n - 1
+        // comparisons to find and nothing to merge.
+        for (Integer[] arr : new Integer[][] {sorted, reversed}) {
+            ComparatorPlus<Integer> counting = countingComparator();
+            Sorting.adaptiveMergeSort(arr, counting);
+            assertTrue("Number of comparisons: " + counting.getCount(),
+                    counting.getCount() == n - 1);
+            for (int i = 1; i < n; i++) {
+                assertTrue(arr[i - 1] < arr[i]);
+            }
+        }
+
+        // Two interleaving runs cost n comparisons to find and one linear
+        // merge, plus a little for galloping that does not pay off.
+        ComparatorPlus<Integer> counting = countingComparator();
+        Sorting.adaptiveMergeSort(twoRuns, counting);
+        assertTrue("Number of comparisons: " + counting.getCount(),
+                counting.getCount() <= 3 * n);
+        for (int i = 0; i < n; i++) {
+            assertTrue(twoRuns[i] == i);
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testPdqSort() {
+        Sorting.pdqSort(tas, comp);
+        assertArrayEquals(tasByName, tas);
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testPdqSortOnPatterns() {
+        for (int n : SIZES) {
+            for (int[] pattern : patterns(n)) {
+                Integer[] expected = boxed(pattern);
+                Arrays.sort(expected);
+                Integer[] actual = boxed(pattern);
+                Sorting.pdqSort(actual, Comparator.naturalOrder());
+                assertArrayEquals(expected, actual);
+
+                int[] ints = pattern.clone();
+                Arrays.sort(pattern);
+                Sorting.pdqSort(ints);
+                assertArrayEquals(pattern, ints);
+            }
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testPdqSortDuplicatesAreLinear() {
+        // Sorted input and a handful of distinct values both avoid the
+        // O(n log n) cost of the general case.
+        int n = 100000;
+        Random random = new Random(1332);
+        Integer[] sorted = new Integer[n];
+        Integer[] fewDistinct = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+            fewDistinct[i] = random.nextInt(3);
+        }
+        for (Integer[] arr : new Integer[][] {sorted, fewDistinct}) {
+            ComparatorPlus<Integer> counting = countingComparator();
+            Sorting.pdqSort(arr, counting);
+            assertTrue("Number of comparisons: " + counting.getCount(),
+                    counting.getCount() <= 4 * n);
+            for (int i = 1; i < n; i++) {
+                assertTrue(arr[i - 1] <= arr[i]);
+            }
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testPdqSortAgainstAdversary() {
+        // McIlroy's adversary ("A Killer Adversary for Quicksort") makes
+        // up the values as the sort compares them so that every pivot is
+        // as bad as possible, which makes a plain quick sort quadratic.
+        int n = 10000;
+        int[] values = new int[n];
+        Arrays.fill(values, n);
+        Integer[] items = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            items[i] = i;
+        }
+        ComparatorPlus<Integer> adversary = new ComparatorPlus<Integer>() {
+            private int solid;
+            private int candidate = -1;
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                incrementCount();
+                if (values[a] == n && values[b] == n) {
+                    values[a == candidate ? a : b] = solid++;
+                }
+                if (values[a] == n) {
+                    candidate = a;
+                } else if (values[b] == n) {
+                    candidate = b;
+                }
+                return Integer.compare(values[a], values[b]);
+            }
+        };
+        Sorting.pdqSort(items, adversary);
+        for (int i = 1; i < n; i++) {
+            assertTrue(values[items[i - 1]] <= values[items[i]]);
+        }
+        // n log2 n is about 133000 here. A quick sort without a depth
+        // limit, like dualPivotQuickSort, takes over 12 million.
+        assertTrue("Number of comparisons: " + adversary.getCount(),
+                adversary.getCount() <= 5 * 133000);
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testPrimitiveOverloads() {
+        List<Consumer<int[]>> intSorts = Arrays.asList(
+                Sorting::insertionSort, Sorting::quickSort,
+                Sorting::mergeSort);
+        List<Consumer<long[]>> longSorts = Arrays.asList(
+                Sorting::insertionSort, Sorting::quickSort,
+                Sorting::mergeSort);
+        List<Consumer<double[]>> doubleSorts = Arrays.asList(
+                Sorting::insertionSort, Sorting::quickSort,
+                Sorting::mergeSort);
+        for (int n : SIZES) {
+            for (int[] pattern : patterns(n)) {
+                int[] expected = pattern.clone();
+                Arrays.sort(expected);
+                long[] expectedLongs = new long[n];
+                double[] expectedDoubles = new double[n];
+                for (int i = 0; i < n; i++) {
+                    expectedLongs[i] = expected[i] * 0x100000001L;
+                    expectedDoubles[i] = expected[i] / 8.0;
+                }
+                for (int s = 0; s < intSorts.size(); s++) {
+                    // Insertion sort is quadratic, so spare it the largest.
+                    if (s == 0 && n > 1000) {
+                        continue;
+                    }
+                    int[] ints = pattern.clone();
+                    long[] longs = new long[n];
+                    double[] doubles = new double[n];
+                    for (int i = 0; i < n; i++) {
+                        longs[i] = pattern[i] * 0x100000001L;
+                        doubles[i] = pattern[i] / 8.0;
+                    }
+                    intSorts.get(s).accept(ints);
+                    longSorts.get(s).accept(longs);
+                    doubleSorts.get(s).accept(doubles);
+                    assertArrayEquals(expected, ints);
+                    assertArrayEquals(expectedLongs, longs);
+                    assertTrue(Arrays.equals(expectedDoubles, doubles));
+                }
+            }
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testDoubleSortsOrderNaNAndNegativeZero() {
+        List<Consumer<double[]>> doubleSorts = Arrays.asList(
+                Sorting::insertionSort, Sorting::quickSort,
+                Sorting::mergeSort);
+        double[] special = {0.0, Double.NaN, -0.0, -1.0, 1.0, -0.0,
+            Double.POSITIVE_INFINITY, Double.NaN, Double.NEGATIVE_INFINITY,
+            0.0, -Double.MIN_VALUE, Double.MIN_VALUE};
+        // Mostly zeros of both signs and NaN, with a few other values.
+        Random random = new Random(2110);
+        double[] many = new double[5000];
+        double[] choices = {0.0, -0.0, Double.NaN, 1.0, -1.0};
+        for (int i = 0; i < many.length; i++) {
+            many[i] = choices[random.nextInt(choices.length)];
+        }
+        double[] allNaN = {Double.NaN, Double.NaN, Double.NaN};
+        double[] allNegativeZero = {-0.0, -0.0, 0.0, -0.0};
+        for (double[] input
+                : new double[][] {special, many, allNaN, allNegativeZero}) {
+            double[] expected = input.clone();
+            Arrays.sort(expected);
+            for (Consumer<double[]> sort : doubleSorts) {
+                double[] actual = input.clone();
+                sort.accept(actual);
+                // Arrays.equals tells -0.0 from 0.0 and matches NaN.
+                assertTrue(Arrays.equals(expected, actual));
+            }
+        }
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testDualPivotQuickSort() {
+        Sorting.dualPivotQuickSort(tas, comp);
+        assertArrayEquals(tasByName, tas);
+    }
+
+    @Test(timeout = TIMEOUT)
+    public void testParallelQuickSort() {
+        Sorting.parallelQuickSort(tas, comp);
+        assertArrayEquals(tasByName, tas);
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testQuickSortsOnPatterns() {
+        for (int n : SIZES) {
+            for (int[] pattern : patterns(n)) {
+                Integer[] expected = boxed(pattern);
+                Arrays.sort(expected);
+
+                Integer[] actual = boxed(pattern);
+                Sorting.quickSort(actual, Comparator.naturalOrder(),
+                        new Random(n));
+                assertArrayEquals(expected, actual);
+
+                actual = boxed(pattern);
+                Sorting.dualPivotQuickSort(actual, Comparator.naturalOrder());
+                assertArrayEquals(expected, actual);
+
+                actual = boxed(pattern);
+                Sorting.parallelQuickSort(actual, Comparator.naturalOrder());
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test(timeout = LARGE_TIMEOUT)
+    public void testParallelQuickSortSplitsLargeArrays() {
+        // Large enough to be split into several tasks, with so few distinct
+        // values that the two pivots are often equal and the part between
+        // them is skipped.
+        int[] data = new Random(1332).ints(100000, 0, 5).toArray();
+        Integer[] expected = boxed(data);
+        Arrays.sort(expected);
+        Integer[] actual = boxed(data);
+        Sorting.parallelQuickSort(actual, Comparator.naturalOrder());
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test(timeout = TIMEOUT, expected = IllegalArgumentException.class)
+    public void testParallelQuickSortNullComparator() {
+        Sorting.parallelQuickSort(tas, null);
+    }
+
+    /**
+     * Create inputs of one length that are hard for some sorts: random,
+     * sorted, reversed, all equal, few distinct values, organ pipe and
+     * sawtooth.
+     *
+     * @param n length of every input
+     * @return the inputs
+     */
+    private static int[][] patterns(int n) {
+        Random random = new Random(n * 31L + 7);
+        int[][] patterns = new int[7][n];
+        for (int i = 0; i < n; i++) {
+            patterns[0][i] = random.nextInt();
+            patterns[1][i] = i;
+            patterns[2][i] = n - i;
+            patterns[3][i] = 42;
+            patterns[4][i] = random.nextInt(4);
+            patterns[5][i] = Math.min(i, n - i);
+            patterns[6][i] = i % 16;
+        }
+        return patterns;
+    }
+
+    /**
+     * Sort the indexes of an array by their values with adaptiveMergeSort
+     * and check that equal values kept their indexes in order.
+     *
+     * @param values the values to sort by
+     */
+    private static void assertStableSort(int[] values) {
+        Integer[] indexes = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            indexes[i] = i;
+        }
+        Integer[] expected = indexes.clone();
+        Comparator<Integer> byValue =
+                Comparator.comparingInt(i -> values[i]);
+        Arrays.sort(expected, byValue);
+        Sorting.adaptiveMergeSort(indexes, byValue);
+        assertArrayEquals(expected, indexes);
+    }
+
+    /**
+     * Create a comparator of Integers in natural order that counts its
+     * comparisons.
+     *
+     * @return the comparator
+     */
+    private static ComparatorPlus<Integer> countingComparator() {
+        return new ComparatorPlus<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                incrementCount();
+                return a.compareTo(b);
+            }
+        };
+    }
+
+    /**
+     * Box an int array.
+     *
+     * @param arr the values to box
+     * @return an Integer array holding the same values
+     */
+    private static Integer[] boxed(int[] arr) {
+        Integer[] boxed = new Integer[arr.length];
+        for (int i = 0; i < arr.length; i++) {
+            boxed[i] = arr[i];
+        }
+        return boxed;
+    }
+
     /**
      * Class for testing proper sorting.
      */